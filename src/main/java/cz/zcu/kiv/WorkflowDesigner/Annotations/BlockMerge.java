@@ -0,0 +1,17 @@
+package cz.zcu.kiv.WorkflowDesigner.Annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the method merging the results of the partitions of a parallel block:
+ *     Object merge(String name, List<Object> partitionValues)
+ * called once for every @BlockOutput name and once with EXECUTE_RESULT for the value returned by @BlockExecute.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BlockMerge {
+    String EXECUTE_RESULT = "";
+}
@@ -0,0 +1,17 @@
+package cz.zcu.kiv.WorkflowDesigner.Annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the method processing one record of a block with one RecordChannel input and one RecordChannel output:
+ *     Object process(T record)
+ * returning the record to write to the output, or null to drop it. Such blocks can be fused into the thread of
+ * the block writing to them (BlockWorkFlow.setOperatorFusion), their @BlockExecute is then not called.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BlockRecord {
+}
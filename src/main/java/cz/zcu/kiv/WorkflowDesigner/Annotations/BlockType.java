@@ -15,4 +15,12 @@ public @interface BlockType {
 
     boolean jarRMI() default false;
 
+    boolean parallel() default false;   //split the list ([]) input into partitions executed by independent block instances
+
+    int partitions() default 0;         //number of partitions of a parallel block, 0 for one per available processor
+
+    boolean isolated() default false;   //a runAsJar block always forked into its own JVM, also in the in-process jar mode
+
+    boolean deterministic() default false;  //same properties and inputs always give the same outputs, without side effects
+
 }
@@ -0,0 +1,162 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * ArrayFields
+ *
+ * Values of the array fields (int[], long[], double[], String[], File[]) of []-typed block inputs and properties.
+ * Inputs are concatenated from the components of their sources: arrays of the field's type are copied in bulk, single
+ * values, collections and arrays of other types element by element (Strings into File[] as File names); one component
+ * of the field's type is used as it is.
+ * Properties are filled from their JSON arrays, File names relative to the remote directory.
+ **********************************************************************************************************************/
+
+public final class ArrayFields {
+
+    private ArrayFields() {
+    }
+
+    public static boolean isSupported(Class<?> fieldType) {
+        return fieldType == int[].class || fieldType == long[].class || fieldType == double[].class
+                || fieldType == String[].class || fieldType == File[].class;
+    }
+
+    /**
+     * concat
+     * value of an array input from the components of its sources, in source order
+     */
+    public static Object concat(Class<?> fieldType, List<?> components) {
+        if(components.size() == 1 && fieldType.isInstance(components.get(0))) return components.get(0);
+
+        int length = 0;
+        for(Object component : components){
+            length += length(fieldType, component);
+        }
+
+        if(fieldType == int[].class){
+            int[] array = new int[length];
+            int position = 0;
+            for(Object component : components){
+                if(component instanceof int[]){
+                    System.arraycopy(component, 0, array, position, ((int[]) component).length);
+                    position += ((int[]) component).length;
+                }
+                else for(Object value : elements(component)) array[position++] = ((Number) value).intValue();
+            }
+            return array;
+        }
+        if(fieldType == long[].class){
+            long[] array = new long[length];
+            int position = 0;
+            for(Object component : components){
+                if(component instanceof long[]){
+                    System.arraycopy(component, 0, array, position, ((long[]) component).length);
+                    position += ((long[]) component).length;
+                }
+                else for(Object value : elements(component)) array[position++] = ((Number) value).longValue();
+            }
+            return array;
+        }
+        if(fieldType == double[].class){
+            double[] array = new double[length];
+            int position = 0;
+            for(Object component : components){
+                if(component instanceof double[]){
+                    System.arraycopy(component, 0, array, position, ((double[]) component).length);
+                    position += ((double[]) component).length;
+                }
+                else for(Object value : elements(component)) array[position++] = ((Number) value).doubleValue();
+            }
+            return array;
+        }
+
+        Object[] array = fieldType == File[].class ? new File[length] : new String[length];
+        int position = 0;
+        for(Object component : components){
+            if(fieldType.isInstance(component)){
+                System.arraycopy(component, 0, array, position, ((Object[]) component).length);
+                position += ((Object[]) component).length;
+            }
+            else for(Object value : elements(component)) array[position++] = fieldType == String[].class ? String.valueOf(value)
+                    : value instanceof File ? value : new File(String.valueOf(value));
+        }
+        return array;
+    }
+
+    private static int length(Class<?> fieldType, Object component) {
+        if(component == null) return 0;
+        if(component.getClass().isArray()) return Array.getLength(component);
+        if(component instanceof Collection) return ((Collection) component).size();
+        return 1;
+    }
+
+    private static Collection<?> elements(Object component) {
+        if(component == null) return Collections.emptyList();
+        if(component instanceof Collection) return (Collection<?>) component;
+        if(component.getClass().isArray()){
+            List<Object> values = new ArrayList<>(Array.getLength(component));
+            for(int i = 0; i < Array.getLength(component); i++) values.add(Array.get(component, i));
+            return values;
+        }
+        return Collections.singletonList(component);
+    }
+
+    /**
+     * fromJSON
+     * value of an array property from its JSON array
+     */
+    public static Object fromJSON(Class<?> fieldType, JSONArray values, String remoteDirectory) {
+        int length = values.length();
+        if(fieldType == int[].class){
+            int[] array = new int[length];
+            for(int i = 0; i < length; i++) array[i] = values.getInt(i);
+            return array;
+        }
+        if(fieldType == long[].class){
+            long[] array = new long[length];
+            for(int i = 0; i < length; i++) array[i] = values.getLong(i);
+            return array;
+        }
+        if(fieldType == double[].class){
+            double[] array = new double[length];
+            for(int i = 0; i < length; i++) array[i] = values.getDouble(i);
+            return array;
+        }
+        if(fieldType == File[].class){
+            File[] array = new File[length];
+            for(int i = 0; i < length; i++) array[i] = new File(remoteDirectory + File.separator + values.get(i));
+            return array;
+        }
+        String[] array = new String[length];
+        for(int i = 0; i < length; i++) array[i] = String.valueOf(values.get(i));
+        return array;
+    }
+}
@@ -39,6 +39,7 @@ public class BlockData implements Serializable {
     Map<String, Object> properties;
     Object processOutput;
     String name;
+    int streamPort;     //port of the StreamBridge of a forked piped block, 0 for none
 
     public BlockData(String name){
         this.name=name;
@@ -86,4 +87,12 @@ public class BlockData implements Serializable {
     public void setProcessOutput(Object processOutput) {
         this.processOutput = processOutput;
     }
+
+    public int getStreamPort() {
+        return streamPort;
+    }
+
+    public void setStreamPort(int streamPort) {
+        this.streamPort = streamPort;
+    }
 }
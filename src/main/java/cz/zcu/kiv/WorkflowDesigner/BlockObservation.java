@@ -4,6 +4,7 @@ import cz.zcu.kiv.WorkflowDesigner.Annotations.*;
 import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Graph;
 import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.ClassLoaderObjectInputStream;
 import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.logging.Log;
@@ -26,6 +27,11 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static cz.zcu.kiv.WorkflowDesigner.Type.STREAM;
 
@@ -56,9 +62,10 @@ import static cz.zcu.kiv.WorkflowDesigner.Type.STREAM;
  * In 2018, This file is the model for a single block in the workflow designer tool.
  * In 2019, it implements Observer Pattern design, making destination block execute
  * once they observer all its source blocks execute successfully.
+ * The observers are notified by calling sourceCompleted on them directly instead of through java.util.Observable.
  **********************************************************************************************************************/
 
-public class BlockObservation extends Observable implements Observer, Runnable {
+public class BlockObservation implements Runnable {
 
     private static Log logger = LogFactory.getLog(BlockObservation.class);
 
@@ -71,6 +78,7 @@ public class BlockObservation extends Observable implements Observer, Runnable {
     private Map<String, Data>       outputs;
     private Map<String, Property>   properties;
     private boolean jarExecutable;
+    private boolean isolated;      //forked into its own JVM even when the workflow executes jars in process
 
 
     //Fields used to denote a BlockObservation in the workFlow relationship
@@ -79,14 +87,23 @@ public class BlockObservation extends Observable implements Observer, Runnable {
     private BlockWorkFlow blockWorkFlow;
     private Map<String, List<BlockSourceOutput>> IOMap;
     private Object finalOutputObject = null;
-    private boolean complete;
+    private volatile boolean complete;
     private boolean stream = true; //set false if one of the inputs of this block is not stream in connectIO() method
 
 
     //Fields used for observer and observable
     private List<BlockObservation> destinationObservers = new ArrayList<>();
     private List<BlockObservation> sourceObservables = new ArrayList<>();
-    private int observablesCount = 0;
+    private BlockObservation[] observers = new BlockObservation[0];   //destination blocks to notify once this block is executed
+    private final AtomicInteger observablesCount = new AtomicInteger();
+    private static final Map<Class, Long> executeNanos = new WeakHashMap<>();    //moving average of the execution time of each block class, weak keys let replaced module classes unload
+    private int inlineDepth = 0;                  //blocks executed before this one on the same thread
+    private BlockObservation inlineSuccessor;     //ready destination block to execute next on this block's thread
+    private CheckpointStore.Snapshot checkpointSnapshot;   //outputs taken by blockExecute, checkpointed once the JSON result is updated
+    private final Map<String, AtomicInteger> outputReaders = new HashMap<>();  //connectIO reads of each output still to come
+    private final AtomicInteger pendingReleases = new AtomicInteger();        //outputs still to be read + the JSON summary
+    private final Map<String, Long> outputBytes = new HashMap<>();            //estimated size of each live output
+    private long processOutputBytes = 0;
     private JSONObject blockObject;
     private String outputFolder;
     private boolean[] errorFlag = new boolean[1];
@@ -96,8 +113,14 @@ public class BlockObservation extends Observable implements Observer, Runnable {
 
     //Fields for RMI
     private boolean rmiFlag;
+
+    //Fields for data-parallel blocks (@BlockType(parallel = true))
+    private static final ForkJoinPool parallelPool = new ForkJoinPool();
+    private boolean parallel;
+    private int partitions;
     private BlockData blockData;
     private IRemoteData remoteDataImpleServer;
+    private WorkerCoordinator.Worker worker;    //worker node which executed this block, if any
 
 
     //Fields for continuous stream model (no cumulative data in blocks) (pipe)
@@ -116,6 +139,9 @@ public class BlockObservation extends Observable implements Observer, Runnable {
     private Map<String, Integer> inTransitNumMap;
     private Map<String, PipedInputStream>    outTransitReadMap;        //store Map<outputName(unique annotation name): corresponding pipedInsTransit      (connect this block's output's PipedInTransit)>
     private Map<String, List<PipedOutputStream>> outTransitWriteMap;   //store Map<outputName(unique annotation name): corresponding pipedOutsTransitList (connect next blocks' input's PipeOutTransit)>
+    private final List<Runnable> finishListeners = new ArrayList<>();  //run once this block finished in a continuous workflow
+    private boolean finished = false;                                  //guarded by finishListeners
+    private static final long ERROR_CHECK_MILLIS = 1000;               //wait of awaitFinished between checks of the errorFlag
 
 
     //var for workFlow jobID: same workflow same jobID
@@ -131,24 +157,78 @@ public class BlockObservation extends Observable implements Observer, Runnable {
 
     // return error flag
     public boolean checkSourcePrepared() {
-        // check whether the previous blocks are all executed completely
-        for( BlockObservation sourceBlock: sourceObservables) {
-
-            try{
-                while((!sourceBlock.isComplete())) {
-System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId() + " is not ready.");
-                    Thread.sleep(500);
-                    if(  errorFlag[0] ) return true;
-                }
-            } catch (InterruptedException e){
-                logger.error(e);
-                errorFlag[0] = true;
+        // wait until the previous blocks are all executed, woken by their completion instead of polling
+        try{
+            for( BlockObservation sourceBlock: sourceObservables) {
+                if( !sourceBlock.awaitFinished(errorFlag) ) return true;
             }
+        } catch (InterruptedException e){
+            logger.error(e);
+            errorFlag[0] = true;
         }
 
         return errorFlag[0];
     }
 
+    /**
+     * whenFinished
+     * run the listener once this block has finished executing in a continuous workflow, completely or not;
+     * at once in the calling thread if it already has
+     */
+    public void whenFinished(Runnable listener) {
+        synchronized (finishListeners){
+            if(!finished){
+                finishListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * finished
+     * mark the execution of this block in a continuous workflow as ended, wake its waiters and run its listeners
+     */
+    public void finished() {
+        List<Runnable> listeners;
+        synchronized (finishListeners){
+            if(finished) return;
+            finished = true;
+            listeners = new ArrayList<>(finishListeners);
+            finishListeners.clear();
+            finishListeners.notifyAll();
+        }
+        for(Runnable listener : listeners){
+            listener.run();
+        }
+    }
+
+    /**
+     * awaitFinished
+     * wait until this block is finished or complete
+     * @return false if the errorFlag was raised first
+     */
+    public boolean awaitFinished(boolean[] errorFlag) throws InterruptedException {
+        synchronized (finishListeners){
+            while(!finished && !complete){
+                if(errorFlag[0]) return false;
+                finishListeners.wait(ERROR_CHECK_MILLIS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * isSourcePrepared
+     * check without waiting whether all the source blocks are executed completely
+     */
+    public boolean isSourcePrepared() {
+        for( BlockObservation sourceBlock: sourceObservables) {
+            if(!sourceBlock.isComplete()) return false;
+        }
+        return true;
+    }
+
 
     /**
      * assignPipeTransit - Yijie Huang
@@ -234,12 +314,166 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
     }
 
 
+    /**
+     * replacePipedOutput
+     * set the @BlockOutput PipedOutputStream field with the given name to another stream before the block executes
+     */
+    public void replacePipedOutput(String outputName, PipedOutputStream pipedOut) throws IllegalAccessException {
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+
+            BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+            if (blockOutput != null && blockOutput.name().equals(outputName) && "PipedOutputStream".equals(f.getType().getSimpleName())) {
+                f.set(context, pipedOut);
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * getPipedInput
+     * the @BlockInput PipedInputStream with the given name, null if there is no such field
+     */
+    public PipedInputStream getPipedInput(String inputName) throws IllegalAccessException {
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+
+            BlockInput blockInput = f.getAnnotation(BlockInput.class);
+            if (blockInput != null && blockInput.name().equals(inputName) && "PipedInputStream".equals(f.getType().getSimpleName()))
+                return (PipedInputStream) f.get(context);
+        }
+        return null;
+    }
+
+
+    /**
+     * getRecordChannel
+     * return the RecordChannel of the @BlockOutput (output = true) or @BlockInput with the given name,
+     * a new channel is assigned to the field when the block left it null; null if there is no such channel field
+     */
+    public RecordChannel getRecordChannel(String name, boolean output) throws IllegalAccessException {
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            if (!isRecordChannel(f)) continue;
+
+            String fieldName = null;
+            if (output && f.getAnnotation(BlockOutput.class) != null)
+                fieldName = f.getAnnotation(BlockOutput.class).name();
+            else if (!output && f.getAnnotation(BlockInput.class) != null)
+                fieldName = f.getAnnotation(BlockInput.class).name();
+
+            if (name.equals(fieldName)) {
+                RecordChannel channel = (RecordChannel) f.get(context);
+                if (channel == null) {
+                    channel = new RecordChannel();
+                    f.set(context, channel);
+                }
+                return channel;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * getInputRecordChannels
+     * all the @BlockInput RecordChannels of this block
+     */
+    public List<RecordChannel> getInputRecordChannels() throws IllegalAccessException {
+        List<RecordChannel> channels = new ArrayList<>();
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            if (isRecordChannel(f) && f.getAnnotation(BlockInput.class) != null)
+                channels.add(getRecordChannel(f.getAnnotation(BlockInput.class).name(), false));
+        }
+        return channels;
+    }
+
+    /**
+     * replaceRecordChannel
+     * set the @BlockOutput RecordChannel field with the given name to another channel before the block executes
+     */
+    public void replaceRecordChannel(String outputName, RecordChannel channel) throws IllegalAccessException {
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+
+            BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+            if (blockOutput != null && blockOutput.name().equals(outputName) && isRecordChannel(f)) {
+                f.set(context, channel);
+                return;
+            }
+        }
+    }
+
+    /**
+     * getRecordMethod
+     * the @BlockRecord method of this block, null if it has none
+     */
+    public Method getRecordMethod() {
+        for (Method method : context.getClass().getDeclaredMethods()) {
+            if (method.getAnnotation(BlockRecord.class) != null && method.getParameterTypes().length == 1) {
+                method.setAccessible(true);
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * isFusible
+     * whether this block can be executed record by record in the thread of the block writing to it:
+     * it has a @BlockRecord method, one @BlockInput and one @BlockOutput, both RecordChannels
+     */
+    public boolean isFusible() {
+        if (getRecordMethod() == null) return false;
+
+        int channelInputs = 0, channelOutputs = 0, others = 0;
+        for (Field f : context.getClass().getDeclaredFields()) {
+            boolean input = f.getAnnotation(BlockInput.class) != null, output = f.getAnnotation(BlockOutput.class) != null;
+            if (!input && !output) continue;
+            if (!isRecordChannel(f)) others++;
+            else if (input) channelInputs++;
+            else channelOutputs++;
+        }
+        return channelInputs == 1 && channelOutputs == 1 && others == 0;
+    }
+
+    /**
+     * closeOutputChannels
+     * signal the end of stream on all the @BlockOutput RecordChannels the block has left open (e.g. after an error),
+     * so its destination blocks do not wait for records forever
+     */
+    public void closeOutputChannels() throws IllegalAccessException, InterruptedException {
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            if (isRecordChannel(f) && f.getAnnotation(BlockOutput.class) != null && f.get(context) != null)
+                ((RecordChannel) f.get(context)).close();
+        }
+    }
+
+    static boolean isRecordChannel(Field f) {
+        return RecordChannel.class.isAssignableFrom(f.getType());
+    }
+
+
     /**
      * run - Yijie Huang
      * Blocks connect IO and execute in thread
      */
     @Override
     public void run() {
+        BlockObservation block = this;
+        while(block != null){
+            block = block.executeInThread();
+        }
+    }
+
+    /**
+     * executeInThread
+     * connect IO, execute and report this block in the current thread,
+     * return the ready destination block to execute next on the same thread, if any
+     */
+    private BlockObservation executeInThread() {
         logger.info(" Start thread run for  —— id = "+getId()+", name = "+getName()+":  count[0] = "+count[0]+", in jobID "+jobID);
 
         boolean error = false;
@@ -261,15 +495,26 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
             logger.error("Error update JSON File of id = "+ getId()+", name = "+ getName()+" Block"+", in jobID "+jobID, e);
         }
 
-        synchronized (count){  count[0]--; }
+        CheckpointStore checkpointStore = blockWorkFlow.getCheckpointStore();
+        if(!error && checkpointStore != null && checkpointSnapshot != null){
+            checkpointStore.checkpoint(this, checkpointSnapshot);
+        }
+        checkpointSnapshot = null;
 
+        //the JSON summary no longer needs the results
+        if(!outputReaders.isEmpty() && pendingReleases.decrementAndGet() == 0) releaseResults();
 
+        synchronized (count){  count[0]--; }
+
+        BlockObservation next = inlineSuccessor;
+        inlineSuccessor = null;
+        return next;
     }
 
 
 
     /**
-     * update - Yijie Huang
+     * sourceCompleted - Yijie Huang
      *
      * Destination blocks(Observers) will update the observablesCount,
      * once they receive notification from their source blocks(Observables).
@@ -277,19 +522,55 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
      * And when the observablesCount is equal to the number of their sourceBlocks,
      * destination blocks start their thread to execute.
      */
-    @Override
-    public void update(Observable o, Object arg) {
-        logger.info("Observer Id = "+ getId()+", receives the notification from its Observable "+((BlockObservation) o).id+", in jobID "+jobID);
-        //—————————— for observers  (  destination blocks )  ————update—————————
-        observablesCount ++;
+    public void sourceCompleted(BlockObservation source) {
+        if(sourceReady(source)) blockWorkFlow.startBlock(this);
+    }
 
-        if(observablesCount == sourceObservables.size()){
-            if(errorFlag[0]) return;
+    /**
+     * sourceReady
+     * count the notification of the source block, true when it was the last one this block waited for
+     */
+    private boolean sourceReady(BlockObservation source) {
+        logger.info("Observer Id = "+ getId()+", receives the notification from its Observable "+source.id+", in jobID "+jobID);
+        //—————————— for observers  (  destination blocks )  ————update—————————
+        if(observablesCount.incrementAndGet() == sourceObservables.size()){
+            if(errorFlag[0]) return false;
 
             logger.info(" —————— Observation update ready for block id = "+getId()+", name = "+getName()+" —————— "+", in jobID "+jobID);
-            Thread myExecuteThread = new Thread(this);
-            myExecuteThread.start();
+            return true;
+        }
+        return false;
+    }
 
+    /**
+     * canInline
+     * whether the ready destination block may execute on this block's thread: the workflow's inline depth is not
+     * reached yet and the block's class executed in at most the workflow's inline runtime so far
+     */
+    private boolean canInline(BlockObservation successor) {
+        if(inlineDepth >= blockWorkFlow.getInlineDepth()) return false;
+
+        Long nanos;
+        synchronized (executeNanos){
+            nanos = executeNanos.get(successor.getContext().getClass());
+        }
+        return nanos != null && nanos <= blockWorkFlow.getInlineRuntimeMicros() * 1000;
+    }
+
+    private void recordExecuteNanos(long nanos) {
+        synchronized (executeNanos){
+            Long average = executeNanos.get(context.getClass());
+            executeNanos.put(context.getClass(), average == null ? nanos : (3 * average + nanos) / 4);
+        }
+    }
+
+    /**
+     * getAverageExecuteNanos
+     * moving average of the execution time of the blocks of the class, null before the first one executed
+     */
+    public static Long getAverageExecuteNanos(Class blockClass) {
+        synchronized (executeNanos){
+            return executeNanos.get(blockClass);
         }
     }
 
@@ -308,9 +589,22 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
     public Object blockExecute(StringBuilder stdOut, StringBuilder stdErr) throws Exception {
         logger.info("Executing block id = "+ getId() +", name = "+getName()+", in jobID "+jobID);
 
+        long start = System.nanoTime();
         Object output;
 
-        if(isJarExecutable() && blockWorkFlow.getJarDirectory()!=null && !stream){
+        if(isParallelSplit()){
+            //Execute independent instances of the block on partitions of its list input
+            output = executeParallel(stdOut, stdErr);
+        }
+        else if(blockWorkFlow.getWorkerCoordinator()!=null && blockModel == NORMAL){
+            //Execute block on a remote worker node
+            output = executeOnWorker(stdOut, stdErr);
+        }
+        else if(isJarExecutable() && blockWorkFlow.getJarDirectory()!=null && !stream && isInProcessJar()){
+            //Execute block from its JAR file in this JVM, in the cached class loader of the module
+            output = executeInModule(stdOut, stdErr);
+        }
+        else if(isJarExecutable() && blockWorkFlow.getJarDirectory()!=null && !stream){
             //Execute block as an external JAR file for normal data
             output = executeAsJar(stdOut, stdErr);
         }
@@ -330,21 +624,170 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
             }
         }
 
+        recordExecuteNanos(System.nanoTime() - start);
+
         setFinalOutputObject(output);
         setComplete(true);
 
+        //the outputs as executed, before the destinations read them and the fields may be released or spilled
+        CheckpointStore checkpointStore = blockWorkFlow.getCheckpointStore();
+        if(checkpointStore != null) checkpointSnapshot = checkpointStore.snapshot(this);
+
+        accountOutputs();
+
         //—————————— for observables  (  source blocks )  ———— notify —————————
         // observable tells all its observers that it has finished execute method
-        // and after notify all, just delete all its observers
-        setChanged();
-        notifyObservers();
-        this.deleteObservers();
+        // and after notify all, just delete all its observers;
+        // a single ready observer which executes quickly runs next on this thread (run) instead of a new one
+        BlockObservation[] notified = observers;
+        observers = new BlockObservation[0];
+        List<BlockObservation> ready = new ArrayList<>();
+        for(BlockObservation observer : notified){
+            if(observer.sourceReady(this)) ready.add(observer);
+        }
+        if(ready.size() == 1 && canInline(ready.get(0))){
+            inlineSuccessor = ready.get(0);
+            inlineSuccessor.inlineDepth = inlineDepth + 1;
+            blockWorkFlow.blockInlined();
+        }
+        else {
+            for(BlockObservation observer : ready){
+                blockWorkFlow.startBlock(observer);
+            }
+        }
 
         logger.info("Execution block id = "+ getId() +", name = "+getName()+ " block completed successfully, now notify its Observers"+", in jobID "+jobID);
         return output;
     }
 
 
+    /**
+     * addOutputReader
+     * count one more connectIO read of the output with the given name, its value is released after the last one
+     */
+    public void addOutputReader(String outputName) {
+        if(outputReaders.isEmpty()) pendingReleases.set(1);  //the JSON summary
+        AtomicInteger readers = outputReaders.get(outputName);
+        if(readers == null){
+            outputReaders.put(outputName, new AtomicInteger(1));
+            pendingReleases.incrementAndGet();
+        }
+        else readers.incrementAndGet();
+    }
+
+    /**
+     * accountOutputs
+     * add the estimated size of the outputs of the executed block to the live bytes of the workflow,
+     * only measured when the outputs are released or the JobMemoryManager spills them
+     */
+    private void accountOutputs() throws IllegalAccessException {
+        JobMemoryManager memoryManager = blockWorkFlow.getMemoryManager();
+        if(!blockWorkFlow.isReleaseOutputs() && memoryManager == null) return;
+
+        long total = 0;
+        boolean processOutputIsField = false;
+        Map<Field, String> readOutputs = new HashMap<>();   //outputs with readers, by their field
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+            if (blockOutput == null || STREAM.equals(blockOutput.type())) continue;
+
+            Object value = f.get(context);
+            long bytes = SizeEstimator.estimateField(f.getType(), value);
+            synchronized (outputBytes){ outputBytes.put(blockOutput.name(), bytes); }
+            total += bytes;
+            if(value == finalOutputObject && value != null) processOutputIsField = true;
+            else if(outputReaders.containsKey(blockOutput.name())) readOutputs.put(f, blockOutput.name());
+        }
+        processOutputBytes = processOutputIsField ? 0 : SizeEstimator.estimate(finalOutputObject);
+        blockWorkFlow.outputsAllocated(total + processOutputBytes);
+
+        if(memoryManager == null) return;
+        for(Map.Entry<Field, String> output : readOutputs.entrySet()){
+            Long bytes;
+            synchronized (outputBytes){ bytes = outputBytes.get(output.getValue()); }
+            memoryManager.register(this, output.getValue(), output.getKey(), bytes);
+        }
+    }
+
+    /**
+     * outputRead
+     * called by connectIO of a destination block once it has read the output with the given name,
+     * after the last read the output field is cleared, and once all the outputs and the JSON summary are done
+     * the block's results are released too
+     */
+    public void outputRead(String outputName) throws IllegalAccessException {
+        AtomicInteger readers = outputReaders.get(outputName);
+        if(readers == null || readers.decrementAndGet() != 0) return;
+
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+            if (blockOutput != null && blockOutput.name().equals(outputName) && !f.getType().isPrimitive()) {
+                f.set(context, null);
+                break;
+            }
+        }
+        Long bytes;
+        synchronized (outputBytes){ bytes = outputBytes.remove(outputName); }
+        if(bytes != null) blockWorkFlow.outputsReleased(bytes);
+        JobMemoryManager memoryManager = blockWorkFlow.getMemoryManager();
+        if(memoryManager != null) memoryManager.release(this, outputName);
+        logger.debug("Released output "+outputName+" of block id = "+getId()+", in jobID "+jobID);
+
+        if(pendingReleases.decrementAndGet() == 0) releaseResults();
+    }
+
+    /**
+     * outputSpilled
+     * the JobMemoryManager has written the output to disk and cleared its field
+     */
+    void outputSpilled(String outputName) {
+        Long bytes;
+        synchronized (outputBytes){ bytes = outputBytes.remove(outputName); }
+        if(bytes != null) blockWorkFlow.outputsReleased(bytes);
+    }
+
+    void outputReloaded(String outputName, long bytes) {
+        synchronized (outputBytes){ outputBytes.put(outputName, bytes); }
+        blockWorkFlow.outputsAllocated(bytes);
+    }
+
+    private void releaseResults() {
+        finalOutputObject = null;
+        blockData = null;
+        blockWorkFlow.outputsReleased(processOutputBytes);
+        processOutputBytes = 0;
+    }
+
+
+    /**
+     * executeOnWorker
+     * send the blockData to a WorkerNode chosen by the workflow's WorkerCoordinator
+     * and set the outputs it returns to the context
+     */
+    public Object executeOnWorker(StringBuilder stdOut, StringBuilder stdErr) throws Exception {
+        try {
+            blockData = blockWorkFlow.getWorkerCoordinator().execute(this, blockData);
+            stdOut.append("Executed on worker ").append(worker.getAddress()).append(" \n");
+
+            for (Field f : context.getClass().getDeclaredFields()) {
+                f.setAccessible(true);
+                BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+                if (blockOutput != null) {
+                    f.set(context, blockData.getOutput().get(blockOutput.name()));
+                }
+            }
+            return blockData.getProcessOutput();
+        }
+        catch (Exception e) {
+            stdErr.append(ExceptionUtils.getStackTrace(e));
+            logger.error("Error executing block " + id + " " + name + " on a worker, in jobID " + jobID, e);
+            throw e;
+        }
+    }
+
+
     /**
      * executeInNative() - Joey Pinto
      * block execute natively(without execute Jar)
@@ -398,6 +841,92 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
         return port;
     }
 
+    /**
+     * isForkedStream
+     * whether this block with piped inputs or outputs executes in a forked JVM (BlockWorkFlow.setForkStreams):
+     * it runs as a JAR and has no RecordChannels, which cannot leave this JVM
+     */
+    public boolean isForkedStream() {
+        if(blockModel == NORMAL || !blockWorkFlow.isForkStreams() || !isJarExecutable() || blockWorkFlow.getJarDirectory() == null) return false;
+        for (Field f : context.getClass().getDeclaredFields()) {
+            if (isRecordChannel(f) && (f.getAnnotation(BlockInput.class) != null || f.getAnnotation(BlockOutput.class) != null)) return false;
+        }
+        return true;
+    }
+
+    private boolean isInProcessJar() {
+        return blockWorkFlow.isInProcessJars() && !isolated;
+    }
+
+    /**
+     * executeInModule
+     * execute the block class of the module JAR in this JVM, the outputs are set to the context
+     */
+    public Object executeInModule(StringBuilder stdOut, StringBuilder stdErr) throws Exception {
+        logger.info("Executing id = " + getId() + ", name = " + getName() + " in process from its JAR, in jobID " + jobID);
+        try {
+            blockData = executeInModule(blockData);
+            for (Field f : context.getClass().getDeclaredFields()) {
+                f.setAccessible(true);
+                BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+                if (blockOutput != null) {
+                    f.set(context, moduleValue(blockData.getOutput().get(blockOutput.name()), f.getType(), context.getClass().getClassLoader()));
+                }
+            }
+            return blockData.getProcessOutput();
+        } catch (Exception e) {
+            stdErr.append(ExceptionUtils.getStackTrace(e));
+            logger.error("Error executing id = " + getId() + ", name = " + getName() + " in process from its JAR, in jobID " + jobID, e);
+            throw e;
+        }
+    }
+
+    /**
+     * executeInModule
+     * execute a new instance of the block class loaded by the module's ModuleClassLoader with the given BlockData,
+     * the inputs are handed over by reference, or copied when the module sees their classes differently
+     */
+    private BlockData executeInModule(BlockData data) throws Exception {
+        File jarFile = new File(blockWorkFlow.getJarDirectory(), getModule().split(":")[0]);
+        ModuleClassLoader loader = ModuleClassLoader.forJar(jarFile);
+        Class type = loader.blockType(getModule().split(":")[1], getName());
+        if (type == null) throw new Exception("Error Finding Annotated Class " + getName() + " in " + jarFile);
+
+        for (Field f : type.getDeclaredFields()) {
+            BlockInput blockInput = f.getAnnotation(BlockInput.class);
+            if (blockInput != null && data.getInput().containsKey(blockInput.name()))
+                data.getInput().put(blockInput.name(), moduleValue(data.getInput().get(blockInput.name()), f.getType(), loader));
+        }
+
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            return executeBlockData(type, data);
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    /**
+     * moduleValue
+     * the value itself if the field can hold it, otherwise a copy serialized in memory and read with the classes
+     * of the given loader
+     */
+    private static Object moduleValue(Object value, Class<?> fieldType, ClassLoader loader) throws IOException, ClassNotFoundException {
+        if (value == null || fieldType.isPrimitive() || fieldType.isInstance(value) || value.getClass().getClassLoader() == loader)
+            return value;
+        if (!(value instanceof Serializable)) return value;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ClassLoaderObjectInputStream(loader, new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+
     /**
      * Execute block externally as a JAR - Joey Pinto
      * transfer data through RMI or FILE
@@ -427,15 +956,25 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
         vmargs = vmargs != null ? vmargs : defaultVmArgs;
         String[] args;
         String blockIdName = id + " " + name;
+        List<File> stagedVectors = new ArrayList<>();   //NumericVector inputs passed as mapped files
+        ClassDataSharing.Launch launch = null;
+        StreamBridge bridge = null;     //piped inputs and outputs of a block of a continuous workflow
 
         try {
+            NumericVector.stageAll(blockData.getInput(), jarDirectory, stagedVectors);
+            if (blockModel != NORMAL) {
+                bridge = StreamBridge.open(this);
+                blockData.setStreamPort(bridge.getPort());
+            }
+            launch = ClassDataSharing.launch(jarFile, blockWorkFlow.isClassDataSharing());
+
             // execute as jar and fetch blockData through RMI, otherwise through FILE
             if (rmiFlag) {
 
                 int port = generatePort();//set an unique port number
                 remoteObj = this.prepareRMI(port);
 
-                args = new String[]{"java", vmargs, "-cp", jarFile.getAbsolutePath(), "cz.zcu.kiv.WorkflowDesigner.BlockObservation", blockIdName,    String.valueOf(port),   getModule().split(":")[1],   "RMI"};
+                args = launch.command(vmargs, "-cp", jarFile.getAbsolutePath(), "cz.zcu.kiv.WorkflowDesigner.BlockObservation", blockIdName,    String.valueOf(port),   getModule().split(":")[1],   "RMI");
             }
             //if transfer data through FILE instead of RMI
             else {
@@ -450,7 +989,7 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
                 oos.writeObject(blockData);
                 oos.close();
 
-                args = new String[]{"java", vmargs, "-cp", jarFile.getAbsolutePath(), "cz.zcu.kiv.WorkflowDesigner.BlockObservation", inputFile.getAbsolutePath(), outputFile.getAbsolutePath(), getModule().split(":")[1], "FILE"};
+                args = launch.command(vmargs, "-cp", jarFile.getAbsolutePath(), "cz.zcu.kiv.WorkflowDesigner.BlockObservation", inputFile.getAbsolutePath(), outputFile.getAbsolutePath(), getModule().split(":")[1], "FILE");
             }
 
             logger.info("Passing arguments" + Arrays.toString(args) + ", in jobID " + jobID);
@@ -463,6 +1002,11 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
             pb.redirectError(stdErrFile);
             Process ps = pb.start();
             ps.waitFor();
+            launch.finished(ps.exitValue() == 0);
+            if (bridge != null) {
+                bridge.awaitOutputs();
+                logger.info("Block " + id + " " + name + " streamed " + bridge.getTransferredBytes() + " bytes through its bridge, in jobID " + jobID);
+            }
             stdOut.append(FileUtils.readFileToString(stdOutFile, Charset.defaultCharset()));
             String processErr = FileUtils.readFileToString(stdErrFile, Charset.defaultCharset());
             stdErr.append(processErr);
@@ -510,10 +1054,15 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
                 }
             }
 
+            for (Object value : blockData.getOutput().values()) {
+                NumericVector.unlinkStaged(value);
+            }
+            NumericVector.unlinkStaged(output);
+
             for (Field f : context.getClass().getDeclaredFields()) {
                 f.setAccessible(true);
                 BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
-                if (blockOutput != null) {
+                if (blockOutput != null && !(bridge != null && StreamBridge.isPiped(f))) {
                     f.set(context, blockData.getOutput().get(blockOutput.name()));
                 }
             }
@@ -525,6 +1074,13 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
             logger.error("Error executing Jar file for block " + id + " " + name + ", in jobID " + jobID, e);
             throw e;
         }
+        finally {
+            for (File stagedVector : stagedVectors) {
+                FileUtils.deleteQuietly(stagedVector);
+            }
+            if (launch != null) launch.close();
+            if (bridge != null) bridge.close();
+        }
 
         return output;
     }
@@ -532,6 +1088,173 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
 
 
 
+    /**
+     * isParallelSplit
+     * whether this block is executed as partitions: it is declared parallel and its list input has more than one element
+     */
+    public boolean isParallelSplit() {
+        if(!parallel || blockData == null) return false;
+        String splitInput = parallelInput();
+        return splitInput != null && ((List) blockData.getInput().get(splitInput)).size() > 1;
+    }
+
+    /**
+     * parallelInput
+     * name of the list ([]) input a parallel block is split on, the other inputs are given whole to every partition
+     */
+    private String parallelInput() {
+        for (Field f : context.getClass().getDeclaredFields()) {
+            BlockInput blockInput = f.getAnnotation(BlockInput.class);
+            if (blockInput != null && blockInput.type().endsWith("[]") && blockData.getInput().get(blockInput.name()) instanceof List)
+                return blockInput.name();
+        }
+        return null;
+    }
+
+    /**
+     * executeParallel
+     * split the list input into partitions, execute an independent instance of the block on each of them in the
+     * fork-join pool (natively or as a JAR with FILE transport) and merge the outputs of the partitions:
+     * by the block's @BlockMerge method if it has one, otherwise Lists are concatenated in partition order
+     */
+    @SuppressWarnings("unchecked")
+    public Object executeParallel(StringBuilder stdOut, StringBuilder stdErr) throws Exception {
+        final String splitInput = parallelInput();
+        List<Object> items = (List<Object>) blockData.getInput().get(splitInput);
+        int parts = Math.min(items.size(), partitions > 0 ? partitions : parallelPool.getParallelism());
+        final boolean asJar = isJarExecutable() && blockWorkFlow.getJarDirectory() != null;
+        logger.info("Executing id = " + getId() + ", name = " + getName() + " in " + parts + " partitions of input " + splitInput + (asJar ? " as JARs" : " natively") + ", in jobID " + jobID);
+
+        List<ForkJoinTask<BlockData>> tasks = new ArrayList<>();
+        final List<StringBuilder> partitionOuts = new ArrayList<>();
+        final List<StringBuilder> partitionErrs = new ArrayList<>();
+        for (int p = 0; p < parts; p++) {
+            final BlockData partition = new BlockData(getName());
+            partition.getProperties().putAll(blockData.getProperties());
+            partition.getInput().putAll(blockData.getInput());
+            partition.getInput().put(splitInput, new ArrayList<>(items.subList(p * items.size() / parts, (p + 1) * items.size() / parts)));
+
+            final int index = p;
+            final StringBuilder partitionOut = new StringBuilder();
+            final StringBuilder partitionErr = new StringBuilder();
+            partitionOuts.add(partitionOut);
+            partitionErrs.add(partitionErr);
+            tasks.add(parallelPool.submit(new Callable<BlockData>() {
+                @Override
+                public BlockData call() throws Exception {
+                    if (asJar && isInProcessJar()) return executeInModule(partition);
+                    if (asJar) return executePartitionAsJar(partition, index, partitionOut, partitionErr);
+                    return executeBlockData(context.getClass(), partition);
+                }
+            }));
+        }
+
+        List<BlockData> results = new ArrayList<>();
+        Exception failure = null;
+        for (int p = 0; p < parts; p++) {
+            try {
+                results.add(tasks.get(p).get());
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            stdOut.append(partitionOuts.get(p));
+            stdErr.append(partitionErrs.get(p));
+        }
+        if (failure != null) {
+            stdErr.append(ExceptionUtils.getRootCauseMessage(failure)).append(" \n");
+            logger.error("Error executing a partition of id = " + getId() + ", name = " + getName() + ", in jobID " + jobID, failure);
+            throw failure;
+        }
+
+        //merge the outputs and the returned values of the partitions
+        Method mergeMethod = null;
+        for (Method m : context.getClass().getDeclaredMethods()) {
+            if (m.getAnnotation(BlockMerge.class) != null) {
+                m.setAccessible(true);
+                mergeMethod = m;
+                break;
+            }
+        }
+        blockData.setOutput(new HashMap<String, Object>());
+        for (Field f : context.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+            if (blockOutput == null) continue;
+            List<Object> values = new ArrayList<>();
+            for (BlockData result : results) values.add(result.getOutput().get(blockOutput.name()));
+            Object merged = mergePartitions(mergeMethod, blockOutput.name(), values);
+            f.set(context, merged);
+            blockData.getOutput().put(blockOutput.name(), merged);
+        }
+        List<Object> returned = new ArrayList<>();
+        for (BlockData result : results) returned.add(result.getProcessOutput());
+        Object output = mergePartitions(mergeMethod, BlockMerge.EXECUTE_RESULT, returned);
+        blockData.setProcessOutput(output);
+        return output;
+    }
+
+    private Object mergePartitions(Method mergeMethod, String name, List<Object> values) throws Exception {
+        if (mergeMethod != null) return mergeMethod.invoke(context, name, values);
+
+        List<Object> concatenated = new ArrayList<>();
+        Object single = null;
+        boolean lists = true, same = true, first = true;
+        for (Object value : values) {
+            if (value == null) continue;
+            if (value instanceof List) concatenated.addAll((List) value);
+            else lists = false;
+            if (first) single = value;
+            else if (!value.equals(single)) same = false;
+            first = false;
+        }
+        if (first) return null;
+        if (lists) return concatenated;
+        if (same) return single;
+        throw new IllegalStateException("Partitions of block " + id + " " + getName() + " returned different values for '" + name + "', add a @BlockMerge method to merge them");
+    }
+
+    /**
+     * executePartitionAsJar
+     * execute one partition of a parallel block in an external JAR, transferring its BlockData through FILE
+     */
+    private BlockData executePartitionAsJar(BlockData partition, int index, StringBuilder stdOut, StringBuilder stdErr) throws Exception {
+        File jarDirectory = new File(blockWorkFlow.getJarDirectory());
+        jarDirectory.mkdirs();
+        File jarFile = new File(jarDirectory.getAbsolutePath() + File.separator + getModule().split(":")[0]);
+        String vmargs = System.getProperty("workflow.designer.vm.args");
+        vmargs = vmargs != null ? vmargs : "-Xmx1G";
+
+        String fileName = "jobID_" + jobID + "_bID_" + id + "_part" + index + "_";
+        File inputFile  = File.createTempFile(fileName, ".in", jarDirectory);
+        File outputFile = File.createTempFile(fileName, ".out", jarDirectory);
+        File stdOutFile = File.createTempFile(fileName, ".stdout", jarDirectory);
+        File stdErrFile = File.createTempFile(fileName, ".stderr", jarDirectory);
+        try (ClassDataSharing.Launch launch = ClassDataSharing.launch(jarFile, blockWorkFlow.isClassDataSharing())) {
+            FileOutputStream fos = new FileOutputStream(inputFile);
+            SerializationUtils.serialize(partition, fos);
+            fos.close();
+
+            String[] args = launch.command(vmargs, "-cp", jarFile.getAbsolutePath(), "cz.zcu.kiv.WorkflowDesigner.BlockObservation", inputFile.getAbsolutePath(), outputFile.getAbsolutePath(), getModule().split(":")[1], "FILE");
+            ProcessBuilder pb = new ProcessBuilder(args);
+            pb.redirectOutput(stdOutFile);
+            pb.redirectError(stdErrFile);
+            launch.finished(pb.start().waitFor() == 0);
+            stdOut.append(FileUtils.readFileToString(stdOutFile, Charset.defaultCharset()));
+            String processErr = FileUtils.readFileToString(stdErrFile, Charset.defaultCharset());
+            stdErr.append(processErr);
+
+            if (outputFile.length() == 0)
+                throw new Exception("Output file does not exist for partition " + index + " of block " + id + " " + getName() + ", in jobID " + jobID + ". " + processErr);
+            return SerializationUtils.deserialize(FileUtils.readFileToByteArray(outputFile));
+        } finally {
+            FileUtils.deleteQuietly(inputFile);
+            FileUtils.deleteQuietly(outputFile);
+            FileUtils.deleteQuietly(stdOutFile);
+            FileUtils.deleteQuietly(stdErrFile);
+        }
+    }
+
+
     /**
      * updateJSON - Joey Pinto, Yijie Huang
      * update the JSON file of "blocks"
@@ -620,6 +1343,35 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
     }
 
 
+    /**
+     * adoptResult
+     * take over the result of the same block already executed in another run of this workflow instead of executing it:
+     * its context (read only from now on, it may be shared by several runs), output and JSON result.
+     * Return whether that execution failed.
+     */
+    public boolean adoptResult(BlockObservation completed) throws IOException {
+        logger.info("Adopt the result of block id = "+ getId() +", name = "+ getName()+" from jobID "+completed.getJobID()+", in jobID "+jobID);
+
+        context = completed.getContext();
+        finalOutputObject = completed.getFinalOutputObject();
+        complete = true;
+        observers = new BlockObservation[0];
+        outputReaders.clear();      //the adopted outputs may be shared with other runs, they are never released
+
+        JSONObject completedObject = completed.getBlockObject();
+        synchronized (blocksArray){
+            for(String key : new String[]{"error", "stderr", "stdout", "completed", "output"}){
+                if(completedObject.has(key)) blockObject.put(key, completedObject.get(key));
+            }
+            if(workflowOutputFile!=null){
+                File workflowOutput = new File(workflowOutputFile);
+                FileUtils.writeStringToFile(workflowOutput, blocksArray.toString(4), Charset.defaultCharset());
+            }
+        }
+        return completedObject.optBoolean("error", false);
+    }
+
+
 
     /**
      * connectIO() - Joey Pinto, Yijie Huang
@@ -654,6 +1406,7 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
             //get O
             for(BlockSourceOutput sourceOutput: sourceOutputs) {
                 Object sourceOut = null;
+                boolean read = false;   //piped outputs and RecordChannels are not read here, nor released
 
                 int sourceBlockID = sourceOutput.getSourceBlockID();
                 String sourceParam = sourceOutput.getSourceParam();
@@ -666,16 +1419,19 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
                     BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
                     if (blockOutput != null) {
 
-                        if("PipedOutputStream".equals(f.getType().getSimpleName()) ){
+                        if("PipedOutputStream".equals(f.getType().getSimpleName()) || isRecordChannel(f) ){
                             continue;
                         }
                         if (blockOutput.name().equals(sourceParam)) {
-                            sourceOut = f.get(sourceBlock.getContext());
+                            JobMemoryManager memoryManager = blockWorkFlow.getMemoryManager();
+                            sourceOut = memoryManager != null ? memoryManager.read(sourceBlock, sourceParam, f) : f.get(sourceBlock.getContext());
+                            read = true;
                             break;
                         }
                     }
                 }
                 components.add(sourceOut);
+                if(read) sourceBlock.outputRead(sourceParam);
             }
 
             //get I
@@ -687,23 +1443,14 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
 
                 if (blockInput != null) {
 
-                    if("PipedInputStream".equals(f.getType().getSimpleName()) ){
+                    if("PipedInputStream".equals(f.getType().getSimpleName()) || isRecordChannel(f) ){
                         continue;
                     }
 
                     if (blockInput.name().equals(destinationParam)) {
-                        if(!blockInput.type().endsWith("[]")){ // input not comes from multiple outputs
-                            f.set(this.context, components.get(0));
-                            blockData.getInput().put(destinationParam, components.get(0));
-
-                        } else {// input comes from multiple outputs
-                            if(f.getType().isArray()){
-                                throw new IllegalAccessException("Arrays not supported, Use Lists Instead");
-                            }
-                            f.set(context,f.getType().cast(components));
-                            blockData.getInput().put(destinationParam, components);
-
-                        }
+                        Object value = inputValue(f, blockInput, components);
+                        f.set(this.context, value);
+                        blockData.getInput().put(destinationParam, value);
                         break;
                     }
                 }
@@ -712,6 +1459,27 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
 
     }
 
+    /**
+     * inputValue
+     * value of the @BlockInput field from the outputs of its sources, in source order
+     */
+    static Object inputValue(Field f, BlockInput blockInput, List<Object> components) throws IllegalAccessException {
+        if(!blockInput.type().endsWith("[]")) // input not comes from multiple outputs
+            return components.get(0);
+
+        // input comes from multiple outputs
+        if(f.getType().equals(NumericVector.class)){
+            //handed over by reference, concatenated only for several sources
+            return NumericVector.of(components);
+        }
+        if(f.getType().isArray()){
+            if(!ArrayFields.isSupported(f.getType()))
+                throw new IllegalAccessException("Arrays of "+f.getType().getComponentType().getSimpleName()+" not supported, Use Lists Instead");
+            return ArrayFields.concat(f.getType(), components);
+        }
+        return f.getType().cast(components);
+    }
+
 
 
 
@@ -750,7 +1518,7 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
                 }
 
                 //if this block wants to deal with the stream data in a continuous way through pipe In and Out transfer(PipedOutPutStream To PipedInputStream)
-                if( workFlowFlag &&  "PipedInputStream".equals(f.getType().getSimpleName()) ){
+                if( workFlowFlag && ( "PipedInputStream".equals(f.getType().getSimpleName()) || isRecordChannel(f) ) ){
                     tmpFlag = true;
                     inNum++;
                 }
@@ -772,7 +1540,7 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
                     this.setStream(false);
                 }
 
-                if( workFlowFlag && "PipedOutputStream".equals(f.getType().getSimpleName()) ){
+                if( workFlowFlag && ( "PipedOutputStream".equals(f.getType().getSimpleName()) || isRecordChannel(f) ) ){
                     tmpFlag = true;
                     outNum++;
                 }
@@ -828,10 +1596,12 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
                             //Assign object attributes from properties
                             if(blockProperty.type().endsWith("[]")){
 
-                                //Dealing with List properties
+                                //Dealing with array and List properties
                                 if(f.getType().isArray()){
-                                    //Unsupported by reflection
-                                    throw new IllegalAccessException("Arrays Not supported, Use List instead");
+                                    if(!ArrayFields.isSupported(f.getType()))
+                                        throw new IllegalAccessException("Arrays of "+f.getType().getComponentType().getSimpleName()+" Not supported, Use List instead");
+                                    f.set(context, ArrayFields.fromJSON(f.getType(), values.getJSONArray(key), blockWorkFlow.getRemoteDirectory()));
+                                    break;
                                 }
                                 List<Object> components = new ArrayList<>();
                                 JSONArray array = values.getJSONArray(key);
@@ -943,6 +1713,62 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
 
 
 
+    /**
+     * executeBlockData
+     * execute a new instance of the block class with the properties and inputs of blockData,
+     * the value returned by @BlockExecute and the outputs are put back into blockData
+     */
+    public static BlockData executeBlockData(Class type, BlockData blockData) throws Exception {
+        Object obj = type.newInstance();
+        StreamBridge bridge = null;
+
+        //fetch block properties and inputs
+        for(Field field:type.getDeclaredFields()){
+            field.setAccessible(true);
+            if(field.getAnnotation(BlockInput.class)!=null){
+                field.set(obj,blockData.getInput().get(field.getAnnotation(BlockInput.class).name()));
+            }
+            else if(field.getAnnotation(BlockProperty.class)!=null){
+                field.set(obj,blockData.getProperties().get(field.getAnnotation(BlockProperty.class).name()));
+            }
+        }
+
+        //get block execute method and execute
+        Method executeMethod = null;
+        for(Method m:type.getDeclaredMethods()){
+            m.setAccessible(true);
+            if(m.getAnnotation(BlockExecute.class)!=null){
+                executeMethod=m;
+                break;
+            }
+        }
+        if(executeMethod!=null){
+            //piped inputs and outputs are carried from and to the engine JVM
+            if(blockData.getStreamPort() != 0) bridge = StreamBridge.connect(obj, blockData.getStreamPort());
+            try {
+                Object outputObj=executeMethod.invoke(obj);
+                blockData.setProcessOutput(outputObj);
+            } finally {
+                if(bridge != null) bridge.finish();
+            }
+        } else{
+            logger.error("No method annotated with Workflow Designer BlockExecute was found");
+            throw new Exception("Error finding Execute Method");
+        }
+
+        //assign block execution return output and outputs
+        blockData.setOutput(new HashMap<String, Object>());
+        for(Field field:type.getDeclaredFields()){
+            field.setAccessible(true);
+            if(field.getAnnotation(BlockOutput.class)!=null){
+                if(bridge != null && StreamBridge.isPiped(field)) continue;
+                blockData.getOutput().put(field.getAnnotation(BlockOutput.class).name(),field.get(obj));
+            }
+        }
+        return blockData;
+    }
+
+
     /**
      * main - Joey Pinto, Yijie Huang
      *
@@ -986,50 +1812,19 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
                     break;
                 }
             }
-            Object obj;
-            if(type!=null){
-                obj=type.newInstance();
-            } else{
+            if(type==null){
                 logger.error("No classes with Workflow Designer BlockType Annotations were found!");
                 throw new Exception("Error Finding Annotated Class");
             }
 
-            //fetch block properties and inputs
-            for(Field field:type.getDeclaredFields()){
-                field.setAccessible(true);
-                if(field.getAnnotation(BlockInput.class)!=null){
-                    field.set(obj,blockData.getInput().get(field.getAnnotation(BlockInput.class).name()));
-                }
-                else if(field.getAnnotation(BlockProperty.class)!=null){
-                    field.set(obj,blockData.getProperties().get(field.getAnnotation(BlockProperty.class).name()));
-                }
-            }
+            ClassDataSharing.reportStartup();
+            executeBlockData(type, blockData);
 
-            //get block execute method and execute
-            Method executeMethod = null;
-            for(Method m:type.getDeclaredMethods()){
-                m.setAccessible(true);
-                if(m.getAnnotation(BlockExecute.class)!=null){
-                    executeMethod=m;
-                    break;
-                }
-            }
-            if(executeMethod!=null){
-                Object outputObj=executeMethod.invoke(obj);
-                blockData.setProcessOutput(outputObj);
-            } else{
-                logger.error("No method annotated with Workflow Designer BlockExecute was found");
-                throw new Exception("Error finding Execute Method");
-            }
-
-            //assign block execution return output and outputs
-            blockData.setOutput(new HashMap<String, Object>());
-            for(Field field:type.getDeclaredFields()){
-                field.setAccessible(true);
-                if(field.getAnnotation(BlockOutput.class)!=null){
-                    blockData.getOutput().put(field.getAnnotation(BlockOutput.class).name(),field.get(obj));
-                }
-            }
+            //NumericVector outputs go back as mapped files next to the output file
+            File vectorDirectory = "FILE".equals(rmiOrFile) ? new File(args[1]).getAbsoluteFile().getParentFile() : new File(System.getProperty("java.io.tmpdir"));
+            List<File> stagedVectors = new ArrayList<>();
+            NumericVector.stageAll(blockData.getOutput(), vectorDirectory, stagedVectors);
+            blockData.setProcessOutput(NumericVector.stage(blockData.getProcessOutput(), vectorDirectory, stagedVectors));
 
             if("RMI".equals(rmiOrFile)) {
                 //set output object to remote blockData
@@ -1169,7 +1964,16 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
     }
 
     public void setComplete(boolean complete) {
-        this.complete = complete;
+        synchronized (finishListeners){
+            this.complete = complete;
+            if(complete) finishListeners.notifyAll();
+        }
+    }
+
+    public boolean isFinished() {
+        synchronized (finishListeners){
+            return finished;
+        }
     }
 
     public boolean isStream() {
@@ -1189,11 +1993,19 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
     }
 
     public int getObservablesCount() {
-        return observablesCount;
+        return observablesCount.get();
     }
 
     public void setObservablesCount(int observablesCount) {
-        this.observablesCount = observablesCount;
+        this.observablesCount.set(observablesCount);
+    }
+
+    public BlockObservation[] getObservers() {
+        return observers;
+    }
+
+    public void setObservers(BlockObservation[] observers) {
+        this.observers = observers;
     }
 
     public List<BlockObservation> getSourceObservables() {
@@ -1212,6 +2024,14 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
         this.blockObject = blockObject;
     }
 
+    public Map<String, AtomicInteger> getOutputReaders() {
+        return outputReaders;
+    }
+
+    public JSONArray getBlocksArray() {
+        return blocksArray;
+    }
+
     public String getOutputFolder() {
         return outputFolder;
     }
@@ -1244,6 +2064,38 @@ System.out.println("for blockID: "+ id + "source BlockId" + sourceBlock.getId()
         this.jobID = jobID;
     }
 
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public boolean isIsolated() {
+        return isolated;
+    }
+
+    public void setIsolated(boolean isolated) {
+        this.isolated = isolated;
+    }
+
+    public WorkerCoordinator.Worker getWorker() {
+        return worker;
+    }
+
+    public void setWorker(WorkerCoordinator.Worker worker) {
+        this.worker = worker;
+    }
+
     public boolean isRmiFlag() {
         return rmiFlag;
     }
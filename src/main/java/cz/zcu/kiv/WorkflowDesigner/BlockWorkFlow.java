@@ -1,22 +1,32 @@
 package cz.zcu.kiv.WorkflowDesigner;
 
 import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.reflections.Reflections;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static cz.zcu.kiv.WorkflowDesigner.BlockObservation.NORMAL;
 
@@ -61,6 +71,8 @@ public class BlockWorkFlow {
     private List<BlockObservation> blockDefinitions;// all the blocks from one module only used for front end
 
     private Map<Integer,  BlockObservation> indexBlocksMap;
+    private ExecutionPlan executionPlan;    //validated structure of the workflow being executed, shared through the plan cache
+    private BlockObservation[] planBlocks;  //blocks of this execution by their index in the executionPlan
     private boolean[] errorFlag = new boolean[1]; //denote whether the whole workFlow completed successfully or not
     private Set<Integer> startBlocksSet;
     private int[] count = new int[1];
@@ -70,6 +82,39 @@ public class BlockWorkFlow {
 
 
     private boolean[] continuousFlag = new boolean[1];
+    private boolean directPipes = false; //connect piped outputs to their destinations without PipeTransitThread
+    private Executor blockExecutor;      //executor shared with other workflows running the blocks, null starts a thread per block
+    private int channelBatchSize = 0;       //records in one RecordChannel batch, 0 keeps the channels' own
+    private long channelLingerMillis = -1;  //longest wait of a record for its batch to fill, -1 keeps the channels' own
+    private int spillThreshold = SpillBuffer.DEFAULT_THRESHOLD; //bytes of a stream held in memory for MIX blocks before spilling to file
+    private boolean operatorFusion = false; //run chains of @BlockRecord blocks in the thread of the block feeding them
+    private boolean bufferDiamonds = true;  //give the streamed inputs of fan-in blocks of diamonds elastic buffers (StreamDiamonds)
+    private long stallThreshold = 10000;    //millis an edge may stay full or empty before StallDetector reports it, 0 disables
+    private Set<Integer> diamondEdges = new HashSet<>();    //indices of the edges needing elastic buffers
+    private List<PipeEdge> pipeEdges = new ArrayList<>();   //piped edges of the continuous workflow being executed
+    private List<String> elasticEdges = new ArrayList<>();
+    private StallDetector stallDetector;
+    private Set<Integer> fusedBlocks = new HashSet<>();  //blocks running inside the thread of another block
+    private WorkerCoordinator workerCoordinator; //places the cumulative blocks on worker nodes, null executes them in this JVM
+    private String checkpointDirectory;          //root of the per-job checkpoint directories, null disables checkpoints
+    private CheckpointStore checkpointStore;     //checkpoints of the cumulative job being executed
+    private boolean inProcessJars = false;       //execute runAsJar blocks in this JVM in cached module class loaders
+    private boolean classDataSharing = false;    //launch forked runAsJar blocks with a class data sharing archive of their jar
+    private boolean forkStreams = false;         //execute piped runAsJar blocks of continuous workflows in forked JVMs (StreamBridge)
+    private int inlineDepth = 0;                 //ready successors executed in a row on the thread of the completed block, 0 starts a thread for each
+    private long inlineRuntimeMicros = 1000;     //longest average execution time of a block class executed inline
+    private boolean generateCode = false;        //compiled workflows execute their blocks by a generated class
+    private boolean optimizePlan = false;        //eliminate dead blocks and merge duplicated ones before creating the blocks
+    private PlanOptimizer planOptimizer;         //optimization of the workflow being executed, null when not optimized
+    private JSONObject preparedWorkflow;         //workflow whose blocks were created, the optimized one if any
+    private final AtomicInteger inlinedBlocks = new AtomicInteger();  //blocks executed on the thread of their source
+    private boolean releaseOutputs = true;       //release the outputs of cumulative blocks once all their destinations read them
+    private final AtomicLong liveOutputBytes = new AtomicLong();      //estimated size of the block outputs still referenced
+    private final AtomicLong peakLiveOutputBytes = new AtomicLong();
+    private long memoryBudget = 0;               //estimated bytes of read-pending outputs kept in memory before spilling, 0 for no budget
+    private double memoryThreshold = 0;          //old generation usage after a collection (fraction of max) which spills outputs, 0 off
+    private String spillDirectory;               //root of the per-job spill directories, null for java.io.tmpdir
+    private JobMemoryManager memoryManager;      //spills the outputs of the cumulative job being executed
 
     /**
      * Constructor for building BlockTrees for front-End  -- (Front-End call: initializeBlocks)
@@ -149,6 +194,9 @@ public class BlockWorkFlow {
         String description = (String)blockType.getDeclaredMethod("description").invoke(annotation);
         Boolean jarExecutable = (Boolean) blockType.getDeclaredMethod("runAsJar").invoke(annotation);
         Boolean jarRMI = (Boolean) blockType.getDeclaredMethod("jarRMI").invoke(annotation);
+        Boolean parallel = (Boolean) blockType.getDeclaredMethod("parallel").invoke(annotation);
+        Integer partitions = (Integer) blockType.getDeclaredMethod("partitions").invoke(annotation);
+        Boolean isolated = (Boolean) blockType.getDeclaredMethod("isolated").invoke(annotation);
 
         currBlock.setName(blockTypeName);
         currBlock.setFamily(blockTypeFamily);
@@ -157,6 +205,31 @@ public class BlockWorkFlow {
         currBlock.setJarExecutable(jarExecutable);
         currBlock.setJobID(jobID);
         currBlock.setRmiFlag(jarRMI);
+        currBlock.setParallel(parallel);
+        currBlock.setPartitions(partitions);
+        currBlock.setIsolated(isolated);
+
+        return currBlock;
+    }
+
+    /**
+     * createBlockInstance
+     * initializes a block of an ExecutionPlan, whose @BlockType values are already resolved
+     */
+    private BlockObservation createBlockInstance(ExecutionPlan.BlockDescriptor descriptor, JSONArray blocksArray, String workflowOutputFile) throws InstantiationException, IllegalAccessException {
+        BlockObservation currBlock = new  BlockObservation(descriptor.getBlockClass().newInstance(), this, blocksArray, workflowOutputFile );
+
+        currBlock.setName(descriptor.getType());
+        currBlock.setFamily(descriptor.getFamily());
+        currBlock.setModule(descriptor.getModule());
+        currBlock.setDescription(descriptor.getDescription());
+        currBlock.setJarExecutable(descriptor.isJarExecutable());
+        currBlock.setJobID(jobID);
+        currBlock.setRmiFlag(descriptor.isJarRMI());
+        currBlock.setParallel(descriptor.isParallel());
+        currBlock.setPartitions(descriptor.getPartitions());
+        currBlock.setIsolated(descriptor.isIsolated());
+        currBlock.setId(descriptor.getId());
 
         return currBlock;
     }
@@ -167,7 +240,7 @@ public class BlockWorkFlow {
      * assign each source block's  Map<String, List<PipedOutputStream>> outTransitWriteMap,
      * connect source block's output with all its next destination blocks' inputs
      */
-    public void assignOutputWrites(JSONArray edgesArray){
+    public void assignOutputWrites(JSONArray edgesArray) throws IllegalAccessException {
         logger.info("put entity into outputWriteMap for each source block");
 
         for(int i = 0; i<edgesArray.length(); i++){
@@ -197,11 +270,139 @@ public class BlockWorkFlow {
                 outTransitWriteMap.put(sourceParam, new ArrayList<PipedOutputStream>());
 
             PipedOutputStream outTransit = inTransitsMap.get(destinationParam);
-            outTransitWriteMap.get(sourceParam).add(outTransit);
+            PipedInputStream  pipedIn    = block2.getPipedInput(destinationParam);
+            PipeEdge pipeEdge = diamondEdges.contains(i)
+                    ? new PipeEdge(edgeName(edge), outTransit, pipedIn, spillThreshold, "JID"+jobID+"_ID"+block2ID+"_"+destinationParam+"_")
+                    : new PipeEdge(edgeName(edge), outTransit, pipedIn);
+            pipeEdges.add(pipeEdge);
+            outTransitWriteMap.get(sourceParam).add(pipeEdge);
+        }
+
+    }
+
+    /**
+     * findDiamonds
+     * indices in edgesArray of the streamed edges (piped outputs and RecordChannels) into the fan-in block of a diamond,
+     * see StreamDiamonds; the inputs of MIX blocks are left out as they buffer their whole streams anyway
+     */
+    public Set<Integer> findDiamonds(JSONArray edgesArray) throws IllegalAccessException {
+        List<Integer> streamed = new ArrayList<>();
+        for(int i = 0; i<edgesArray.length(); i++){
+            JSONObject edge = edgesArray.getJSONObject(i);
+            BlockObservation block1 = indexBlocksMap.get(edge.getInt("block1"));
+            String sourceParam = edge.getJSONArray("connector1").getString(0);
+
+            boolean piped = block1.getOutTransitReadMap() != null && block1.getOutTransitReadMap().containsKey(sourceParam);
+            if(piped || block1.getRecordChannel(sourceParam, true) != null) streamed.add(i);
+        }
+
+        int[] sources      = new int[streamed.size()];
+        int[] destinations = new int[streamed.size()];
+        for(int e = 0; e<streamed.size(); e++){
+            JSONObject edge = edgesArray.getJSONObject(streamed.get(e));
+            sources[e]      = edge.getInt("block1");
+            destinations[e] = edge.getInt("block2");
+        }
+
+        Set<Integer> diamonds = new HashSet<>();
+        for(int e : StreamDiamonds.find(sources, destinations)){
+            if(indexBlocksMap.get(destinations[e]).getBlockModel() != BlockObservation.MIX) diamonds.add(streamed.get(e));
+        }
+        return diamonds;
+    }
+
+    private static String edgeName(JSONObject edge) {
+        return edge.getInt("block1")+"."+edge.getJSONArray("connector1").getString(0)+" -> "
+                +edge.getInt("block2")+"."+edge.getJSONArray("connector2").getString(0);
+    }
+
+
+    /**
+     * assignChannels
+     * connect each @BlockOutput RecordChannel with the @BlockInput RecordChannels of its destination blocks,
+     * the output channels get the workflow's batch size and linger time when they are set,
+     * inputs read by MIX blocks are not bounded as MIX blocks only start reading once all their sources are complete,
+     * neither are the inputs of the fan-in blocks of diamonds (findDiamonds),
+     * inputs without any source are closed so their blocks read an empty stream.
+     */
+    @SuppressWarnings("unchecked")
+    public void assignChannels(JSONArray edgesArray) throws IllegalAccessException, InterruptedException {
+        logger.info("connect RecordChannels of source blocks and destination blocks");
+
+        for(int i = 0; i<edgesArray.length(); i++){
+            JSONObject edge = edgesArray.getJSONObject(i);
+            if(fusedBlocks.contains(edge.getInt("block2"))) continue;   //records are passed by the FusedChannel
+
+            BlockObservation block1 = indexBlocksMap.get(edge.getInt("block1"));
+            RecordChannel sourceChannel = block1.getRecordChannel(edge.getJSONArray("connector1").getString(0), true);
+            if(sourceChannel == null) continue;
+
+            BlockObservation block2 = indexBlocksMap.get(edge.getInt("block2"));
+            RecordChannel destinationChannel = block2.getRecordChannel(edge.getJSONArray("connector2").getString(0), false);
+            if(destinationChannel == null)
+                throw new IllegalAccessException("RecordChannel output "+block1.getId()+" "+edge.getJSONArray("connector1").getString(0)+" is not connected to a RecordChannel input");
+
+            if(channelBatchSize > 0) sourceChannel.setBatchSize(channelBatchSize);
+            if(channelLingerMillis >= 0) sourceChannel.setLingerMillis(channelLingerMillis);
+            if((block2.getBlockModel() == BlockObservation.MIX || diamondEdges.contains(i)) && destinationChannel.getWritersNum() == 0)
+                destinationChannel.setCapacity(Integer.MAX_VALUE);
+            sourceChannel.connect(destinationChannel);
         }
 
+        for(int id: indexBlocksMap.keySet()){
+            for(RecordChannel inputChannel : indexBlocksMap.get(id).getInputRecordChannels()){
+                inputChannel.closeIfUnconnected();
+            }
+        }
     }
 
+
+    /**
+     * fuseChains
+     * find the chains of fusible blocks (BlockObservation.isFusible) where each block is fed by the only outgoing edge
+     * of the block before it, a RecordChannel. The output of the block before the chain is replaced by a FusedChannel
+     * calling the @BlockRecord methods of the chain in its thread, so the chain blocks need no thread of their own.
+     */
+    @SuppressWarnings("unchecked")
+    public void fuseChains() throws IllegalAccessException {
+        WorkflowGraph graph = executionPlan.getGraph();
+        int[] outEdgesNum = new int[planBlocks.length];
+        int[] inEdgesNum  = new int[planBlocks.length];
+        int[] outEdge     = new int[planBlocks.length];
+        for(int e = 0; e<graph.getEdgesNum(); e++){
+            outEdgesNum[graph.getEdgeSource(e)]++;
+            outEdge[graph.getEdgeSource(e)] = e;
+            inEdgesNum[graph.getEdgeDestination(e)]++;
+        }
+
+        fusedBlocks = new HashSet<>();
+        for(int head = 0; head<planBlocks.length; head++){   //plan blocks are in topological order
+            if(fusedBlocks.contains(planBlocks[head].getId())) continue;
+
+            List<BlockObservation> chain = new ArrayList<>();
+            String headOutput = null;
+            int current = head;
+            while(outEdgesNum[current] == 1){
+                int e = outEdge[current];
+                int next = graph.getEdgeDestination(e);
+                if(inEdgesNum[next] != 1 || !planBlocks[next].isFusible()) break;
+                if(planBlocks[current].getRecordChannel(graph.getEdgeSourcePort(e), true) == null) break;
+
+                if(current == head) headOutput = graph.getEdgeSourcePort(e);
+                chain.add(planBlocks[next]);
+                fusedBlocks.add(planBlocks[next].getId());
+                current = next;
+            }
+            if(chain.isEmpty()) continue;
+
+            BlockObservation tail = chain.get(chain.size() - 1);
+            RecordChannel tailChannel = tail.getRecordChannel(tail.getOutputs().keySet().iterator().next(), true);
+            planBlocks[head].replaceRecordChannel(headOutput, new FusedChannel(planBlocks[head].getId(), chain, tailChannel));
+            logger.info("Fused "+chain.size()+" blocks into the thread of block "+planBlocks[head].getId()+", in jobID "+jobID);
+        }
+    }
+
+
     /**
      * emptyPipedIn -Yijie Huang
      * deal with the problem when input is PipedInputStream and No BlockOutput is connected with it
@@ -253,6 +454,22 @@ public class BlockWorkFlow {
     }
 
 
+    /**
+     * hasMixDestination
+     * check whether one of the blocks connected to the given piped output is a MIX block
+     */
+    private boolean hasMixDestination(BlockObservation block, String outputName, JSONArray edgesArray){
+        for(int i = 0; i<edgesArray.length(); i++){
+            JSONObject edge = edgesArray.getJSONObject(i);
+            if(edge.getInt("block1") != block.getId() || !outputName.equals(edge.getJSONArray("connector1").getString(0))) continue;
+
+            BlockObservation destBlock = indexBlocksMap.get(edge.getInt("block2"));
+            if(destBlock != null && destBlock.getBlockModel() == BlockObservation.MIX) return true;
+        }
+        return false;
+    }
+
+
     /**
      * executeContinuous - Yijie Huang
      *
@@ -261,6 +478,13 @@ public class BlockWorkFlow {
      *  if all the @BlockType's continuousFlag are true, then execute in a continuous stream way:
      *   execute the whole workflow, using pipedInputStream and pipedOutputStream to connect all the blocks' @BlockInput and @BlockOutput
      *  if all these flags are false:  execute the workFlow in a cumulative data way
+     *
+     *  with directPipes, the piped outputs which are not connected to MIX blocks write straight into the inputs of their
+     *  destination blocks (PipeFanOut), so only the blocks and the MIX transits need a thread.
+     *
+     *  with bufferDiamonds, the streamed inputs of the fan-in blocks of diamonds get elastic buffers, drained by their
+     *  own threads, so a block reading one input to its end before the other cannot stall the shared source block;
+     *  with a stallThreshold, a StallDetector reports the piped edges staying full or empty for longer.
      */
     public JSONArray executeContinuous(JSONObject jObject) throws IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException, InterruptedException {
         logger.info("  Start Continuous WorkFlow Execution …………………… ");
@@ -273,14 +497,27 @@ public class BlockWorkFlow {
         int pipesOutputsNum = assignPipes();
         System.out.println("pipesOutputsNum = "+pipesOutputsNum);
 
+        diamondEdges = bufferDiamonds ? findDiamonds(edgesArray) : new HashSet<Integer>();
+        elasticEdges = new ArrayList<>();
+        for(int i : diamondEdges){
+            elasticEdges.add(edgeName(edgesArray.getJSONObject(i)));
+        }
+        if(!elasticEdges.isEmpty()) logger.info("Elastic buffers for the diamond edges "+elasticEdges+", in jobID "+jobID);
+
+        pipeEdges = new ArrayList<>();
         assignOutputWrites(edgesArray);
 
+        if(operatorFusion) fuseChains();
+        assignChannels(edgesArray);
+
         emptyPipedIn();
 
-        int poolSize  = blocksArray.length() + pipesOutputsNum;
-        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(poolSize*2, poolSize*2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(poolSize), new ThreadPoolExecutor.AbortPolicy());
+        List<Runnable> tasks = new ArrayList<>();
+        for(PipeEdge pipeEdge : pipeEdges){
+            if(pipeEdge.isElastic()) tasks.add(pipeEdge);
+        }
 
-        logger.info("……………………………………………………………………   Submit PipeTransitThread to threadPool:  ………………………………………………………………………………");
+        logger.info("……………………………………………………………………   Prepare PipeTransitThread for the piped outputs:  ………………………………………………………………………………");
         for(int id: indexBlocksMap.keySet()){
             BlockObservation block = indexBlocksMap.get(id);
             if( block.getOutNum() == 0 || block.getBlockModel()==NORMAL) continue; // skip blocks without outputs(the last blocks in the workFlows)
@@ -297,27 +534,76 @@ public class BlockWorkFlow {
 
                 PipedInputStream pipedInTransit = outTransitReadMap.get(outputName);
                 List<PipedOutputStream> pipedOutTransitsList = outTransitWriteMap.get(outputName);
+                if(pipedOutTransitsList == null) pipedOutTransitsList = new ArrayList<>();
+
+                // MIX destinations still need the transit thread to buffer the stream until they are prepared
+                if(directPipes && !hasMixDestination(block, outputName, edgesArray)){
+                    block.replacePipedOutput(outputName, new PipeFanOut(pipedOutTransitsList));
+                    continue;
+                }
 
-                threadPool.execute(  new PipeTransitThread(block, outputName,  pipedInTransit,  pipedOutTransitsList)  );
+                PipeTransitThread transit = new PipeTransitThread(block, outputName,  pipedInTransit,  pipedOutTransitsList);
+                transit.setSpillThreshold(spillThreshold);
+                tasks.add(transit);
 
             }
         }
-        logger.info("……………………………………………………………………   Submit all the blocks to threadPool directly :  ……………………………………………………………………");
+        logger.info("……………………………………………………………………   Prepare all the blocks :  ……………………………………………………………………");
+        List<ContinuousBlockThread> deferred = new ArrayList<>();   //NORMAL and MIX blocks waiting for their sources
+        final CountDownLatch blocksFinished = new CountDownLatch(indexBlocksMap.size() - fusedBlocks.size());
+        Runnable blockFinished = new Runnable() {
+            @Override
+            public void run() {
+                blocksFinished.countDown();
+            }
+        };
         for(int id: indexBlocksMap.keySet()){
+            if(fusedBlocks.contains(id)) continue;
             BlockObservation currBlock = indexBlocksMap.get(id);
+            currBlock.whenFinished(blockFinished);
+            ContinuousBlockThread blockThread = new ContinuousBlockThread(id, currBlock, errorFlag);
+            if(currBlock.getBlockModel() != BlockObservation.PIPE && !currBlock.getSourceObservables().isEmpty()) deferred.add(blockThread);
+            else tasks.add(blockThread);
+        }
 
-            ContinuousBlockThread currTask = new ContinuousBlockThread(id, currBlock, errorFlag);
-            threadPool.execute(currTask);
+        // every running task may block on a pipe until the whole workflow finishes, so each one gets its own thread;
+        // idle threads are reused by the blocks submitted once their sources finished.
+        // On a shared block executor the threads come from its bounded pool, which the WorkflowEngine only shares
+        // between jobs whose estimated threads fit into it together
+        logger.info("Submit "+tasks.size()+" tasks to threadPool, "+deferred.size()+" blocks once their sources finish, "+pipesOutputsNum+" piped outputs, directPipes = "+directPipes);
+        ExecutorService threadPool = blockExecutor != null ? new TaskGroup(blockExecutor)
+                : new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        for(Runnable task : tasks){
+            threadPool.execute(task);
+        }
+        for(ContinuousBlockThread blockThread : deferred){
+            submitWhenSourcesFinished(threadPool, blockThread);
         }
 
-        threadPool.shutdown();
-        boolean loop;
-        do {
-            loop = !threadPool.awaitTermination(2, TimeUnit.SECONDS);
-        } while(loop && !errorFlag[0]);
+        stallDetector = new StallDetector(pipeEdges, stallThreshold, jobID);
+        ScheduledThreadPoolExecutor stallScheduler = null;
+        if(stallThreshold > 0 && !pipeEdges.isEmpty()){
+            long period = Math.max(stallThreshold / 4, 1);
+            stallScheduler = new ScheduledThreadPoolExecutor(1);
+            stallScheduler.scheduleWithFixedDelay(stallDetector, period, period, TimeUnit.MILLISECONDS);
+        }
+        try {
+            boolean loop;
+            do {
+                loop = !blocksFinished.await(2, TimeUnit.SECONDS);
+            } while(loop && !errorFlag[0]);
+
+            threadPool.shutdown();      //the transits may still be delivering the last bytes
+            do {
+                loop = !threadPool.awaitTermination(2, TimeUnit.SECONDS);
+            } while(loop && !errorFlag[0]);
+        } finally {
+            if(stallScheduler != null) stallScheduler.shutdownNow();
+        }
 
         threadPool.shutdownNow();
-        logger.info("………………………………………………………………………………………  ShutDown threadPool  …………………………………………………………………………………………………………………… ");
+        int largestPoolSize = threadPool instanceof TaskGroup ? ((TaskGroup) threadPool).getLargestSize() : ((ThreadPoolExecutor) threadPool).getLargestPoolSize();
+        logger.info("………………………………………………………………………………………  ShutDown threadPool, at most "+largestPoolSize+" threads  ………………………………………………………… ");
 
 
 
@@ -332,6 +618,41 @@ public class BlockWorkFlow {
     }
 
 
+    /**
+     * startBlock
+     * run the thread of a cumulative block on the shared block executor, or on a new thread without one
+     */
+    void startBlock(Runnable block) {
+        if(blockExecutor != null) blockExecutor.execute(block);
+        else new Thread(block).start();
+    }
+
+
+    /**
+     * submitWhenSourcesFinished
+     * submit the thread of a NORMAL or MIX block once all its source blocks finished, so it holds no pool thread while
+     * it waits; after an error the pool is shut down and the block runs in the finishing thread, only to skip itself
+     */
+    private void submitWhenSourcesFinished(final ExecutorService threadPool, final ContinuousBlockThread blockThread) {
+        List<BlockObservation> sources = blockThread.getBlock().getSourceObservables();
+        final AtomicInteger pending = new AtomicInteger(sources.size());
+        Runnable sourceFinished = new Runnable() {
+            @Override
+            public void run() {
+                if(pending.decrementAndGet() != 0) return;
+                try {
+                    threadPool.execute(blockThread);
+                } catch (RejectedExecutionException e){
+                    blockThread.run();
+                }
+            }
+        };
+        for(BlockObservation source : sources){
+            source.whenFinished(sourceFinished);
+        }
+    }
+
+
     /**
      * executeCumulative - Yijie Huang, Joey Pinto
      *
@@ -342,26 +663,43 @@ public class BlockWorkFlow {
      *                                  -- > File to put the Blocks JSONArray info with the output info, stdout, stderr, error info after the execution
      */
     public JSONArray execute(JSONObject jObject, String outputFolder, String workflowOutputFile) throws WrongTypeException, IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException, InterruptedException {
+        return execute(jObject, outputFolder, workflowOutputFile, new HashMap<Integer, BlockObservation>());
+    }
 
-        JSONArray blocksArray = jObject.getJSONArray("blocks");
-        JSONArray edgesArray  = jObject.getJSONArray("edges");
+    /**
+     * execute
+     * execute the workflow, the blocks in completedBlocks (by block id) are not executed again but take over the
+     * result of the given block executed in another run (see BlockObservation.adoptResult), only for cumulative workflows
+     */
+    public JSONArray execute(JSONObject jObject, String outputFolder, String workflowOutputFile, Map<Integer, BlockObservation> completedBlocks) throws WrongTypeException, IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException, InterruptedException {
 
-        //initialize  and  set  map<ID,  BlockObservation> indexBlocksMap(config I/Os and assign properties)
-        mapIndexBlock(blocksArray, outputFolder, workflowOutputFile);
+        JSONArray blocksArray = jObject.getJSONArray("blocks");
 
-        count[0] = blocksArray.length();
-        errorFlag[0] = false;
+        prepare(jObject, outputFolder, workflowOutputFile);
 
-        //initialize IO map and block start list for thread
-        mapBlocksIO(edgesArray);
+        if(continuousFlag[0]){
+            if(!completedBlocks.isEmpty())
+                throw new IllegalArgumentException("Results of completed blocks can only be reused in a cumulative workflow");
+            executeContinuous(preparedWorkflow);
+            annotateOptimizations(blocksArray, workflowOutputFile);
+            return blocksArray;
+        }
 
-        //add observers to their corresponding observables (add destination blocks to their corresponding source blocks)
-        registerObservers();
+        logger.info("  Start Cumulative WorkFlow Execution …………………… ");
 
-        if(continuousFlag[0])
-            return executeContinuous(jObject);
+        if(!completedBlocks.isEmpty() && !adoptCompletedBlocks(completedBlocks)){
+            logger.error("Workflow Execution failed in the completed blocks!");
+            return blocksArray;
+        }
 
-        logger.info("  Start Cumulative WorkFlow Execution …………………… ");
+        if(checkpointDirectory != null){
+            checkpointStore = new CheckpointStore(jobCheckpointDirectory(jobID));
+            checkpointStore.saveWorkflow(jObject);
+        }
+        if(memoryBudget > 0 || memoryThreshold > 0){
+            File spillRoot = new File(spillDirectory != null ? spillDirectory : System.getProperty("java.io.tmpdir"));
+            memoryManager = new JobMemoryManager(new File(spillRoot, "spill_" + jobID), memoryBudget, memoryThreshold);
+        }
 
 
         logger.info("………………………………………………………………………………………………  Start the threads for blocks in the start list:  ………………………………………………………………………………………………………………… ");
@@ -369,8 +707,7 @@ public class BlockWorkFlow {
             //count[0]++;
             BlockObservation startBlock = indexBlocksMap.get(startBlockId);
             logger.info("Start the execution of Blocks in the startBlocksSet - id "+startBlock.getId()+", name "+startBlock.getName()+ "in the start list");
-            Thread myExecuteThread = new Thread(startBlock);
-            myExecuteThread.start();
+            startBlock(startBlock);
         }
         logger.info(" ………………… Submitted all the block threads in the start list ………………………");
 
@@ -378,16 +715,185 @@ public class BlockWorkFlow {
             Thread.sleep(2000);
         }while(count[0]!= 0 && !errorFlag[0]);
 
+        if(checkpointStore != null){
+            checkpointStore.close();
+            checkpointStore = null;
+        }
+        if(memoryManager != null){
+            memoryManager.close();
+            logger.info("Spilled "+memoryManager.getSpilledOutputs()+" outputs ("+memoryManager.getWrittenBytes()+" bytes written), reloaded "
+                    +memoryManager.getReloadedOutputs()+" in jobID "+jobID);
+        }
+        logger.info("Peak live output bytes of jobID "+jobID+" = "+peakLiveOutputBytes.get());
 
         logger.info("……………………………………………………………………………………………………………………………………… All the threads finished …………………………………………………………………………………………………………………………………………………  ");
         if(!errorFlag[0])  logger.info( "Workflow Execution completed successfully!");
         else logger.error("Workflow Execution failed!");
 
+        annotateOptimizations(blocksArray, workflowOutputFile);
         return blocksArray;
     }
 
 
 
+    /**
+     * resume
+     * execute a cumulative job again from its checkpoint directory: the blocks checkpointed as completed get their
+     * outputs back from their checkpoints, only the other blocks are executed
+     */
+    public JSONArray resume(long jobID, String outputFolder, String workflowOutputFile) throws WrongTypeException, IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException, InterruptedException {
+        if(checkpointDirectory == null) throw new IllegalStateException("No checkpoint directory set to resume jobID "+jobID);
+        this.jobID = jobID;
+
+        CheckpointStore store = new CheckpointStore(jobCheckpointDirectory(jobID));
+        JSONObject jObject = store.loadWorkflow();
+        ExecutionPlan plan = ExecutionPlan.compile(jObject, moduleSource);
+
+        Map<Integer, BlockObservation> completedBlocks = new HashMap<>();
+        for(Map.Entry<Integer, CheckpointStore.BlockCheckpoint> checkpoint : store.load().entrySet()){
+            int index = plan.indexOf(checkpoint.getKey());
+            if(index < 0) continue;
+
+            BlockObservation completed = createBlockInstance(plan.getBlock(index), null, null);
+            checkpoint.getValue().restore(completed);
+            completedBlocks.put(checkpoint.getKey(), completed);
+        }
+        logger.info("Resume jobID "+jobID+", "+completedBlocks.size()+" of "+plan.getBlocksNum()+" blocks restored from checkpoints");
+
+        return execute(jObject, outputFolder, workflowOutputFile, completedBlocks);
+    }
+
+    private File jobCheckpointDirectory(long jobID) {
+        return new File(checkpointDirectory, "job_" + jobID);
+    }
+
+
+    /**
+     * compile
+     * prepare the cumulative workflow once into a CompiledWorkflow, which executes it in memory for every invocation
+     * without creating the blocks again nor writing a workflowOutputFile; with setGenerateCode its blocks are
+     * executed by a class generated for the plan when they all execute natively
+     */
+    public CompiledWorkflow compile(JSONObject jObject) throws WrongTypeException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException {
+        prepare(jObject, null, null);
+        if(continuousFlag[0])
+            throw new IllegalArgumentException("Continuous workflows cannot be compiled, their blocks stream their data");
+        boolean nativeBlocks = true;
+        for(BlockObservation block : planBlocks){
+            if(block.isJarExecutable() && jarDirectory != null){
+                logger.info("No code generated for jobID "+jobID+", block "+block.getId()+" "+block.getName()+" executes from its jar");
+                nativeBlocks = false;
+                break;
+            }
+        }
+        return new CompiledWorkflow(executionPlan, planBlocks, generateCode && nativeBlocks);
+    }
+
+
+    /**
+     * prepare
+     * compile (or take from the cache) the ExecutionPlan of the workflow, create its blocks
+     * and connect them, everything execute does before the blocks are started
+     */
+    public void prepare(JSONObject jObject, String outputFolder, String workflowOutputFile) throws WrongTypeException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException {
+        JSONArray blocksArray = jObject.getJSONArray("blocks");
+
+        //validated blocks and edges of this workflow structure, compiled once and cached
+        executionPlan = ExecutionPlan.compile(jObject, moduleSource);
+        preparedWorkflow = jObject;
+        planOptimizer = null;
+        if(optimizePlan){
+            planOptimizer = new PlanOptimizer(executionPlan, jObject);
+            if(planOptimizer.isOptimized()){
+                preparedWorkflow = planOptimizer.getWorkflow();
+                blocksArray = preparedWorkflow.getJSONArray("blocks");
+                executionPlan = ExecutionPlan.compile(preparedWorkflow, moduleSource);
+            }
+        }
+
+        //initialize  and  set  map<ID,  BlockObservation> indexBlocksMap(config I/Os and assign properties)
+        mapIndexBlock(executionPlan, blocksArray, outputFolder, workflowOutputFile);
+        fusedBlocks = new HashSet<>();
+        memoryManager = null;
+
+        count[0] = blocksArray.length();
+        errorFlag[0] = false;
+        liveOutputBytes.set(0);
+        peakLiveOutputBytes.set(0);
+
+        //initialize IO map and block start list for thread
+        mapBlocksIO();
+
+        //add observers to their corresponding observables (add destination blocks to their corresponding source blocks)
+        registerObservers();
+    }
+
+
+    /**
+     * annotateOptimizations
+     * report the blocks the PlanOptimizer eliminated or merged in the blocks of the executed workflow
+     */
+    private void annotateOptimizations(JSONArray blocksArray, String workflowOutputFile) throws IOException {
+        if(planOptimizer == null || !planOptimizer.isOptimized()) return;
+
+        synchronized (blocksArray){
+            planOptimizer.annotate(blocksArray);
+            if(workflowOutputFile != null)
+                FileUtils.writeStringToFile(new File(workflowOutputFile), blocksArray.toString(4), Charset.defaultCharset());
+        }
+    }
+
+
+    /**
+     * adoptCompletedBlocks
+     * give the blocks of completedBlocks their results, count them as finished and start the rest of the workflow
+     * from the blocks whose sources are all completed, return false if one of the completed blocks failed
+     */
+    private boolean adoptCompletedBlocks(Map<Integer, BlockObservation> completedBlocks) throws IOException {
+        boolean[] adopted = new boolean[planBlocks.length];
+        for(int i = 0; i<planBlocks.length; i++){
+            BlockObservation completed = completedBlocks.get(planBlocks[i].getId());
+            if(completed == null) continue;
+
+            adopted[i] = true;
+            count[0]--;
+            if(planBlocks[i].adoptResult(completed)) errorFlag[0] = true;
+        }
+        if(errorFlag[0]) return false;
+
+        WorkflowGraph graph = executionPlan.getGraph();
+        startBlocksSet = new LinkedHashSet<>();
+        for(int i = 0; i<planBlocks.length; i++){
+            if(adopted[i]) continue;
+
+            int adoptedSources = 0;
+            for(int k = 0; k<graph.getPredecessorsNum(i); k++){
+                if(adopted[graph.getPredecessor(i, k)]) adoptedSources++;
+            }
+            planBlocks[i].setObservablesCount(adoptedSources);
+            if(adoptedSources == graph.getPredecessorsNum(i)) startBlocksSet.add(planBlocks[i].getId());
+        }
+        return true;
+    }
+
+
+    /**
+     * outputsAllocated
+     * the outputs of an executed block add the given estimated bytes to the live bytes of this job
+     */
+    public void outputsAllocated(long bytes) {
+        long live = liveOutputBytes.addAndGet(bytes);
+        long peak;
+        do {
+            peak = peakLiveOutputBytes.get();
+        } while(live > peak && !peakLiveOutputBytes.compareAndSet(peak, live));
+    }
+
+    public void outputsReleased(long bytes) {
+        liveOutputBytes.addAndGet(-bytes);
+    }
+
+
     /**
      * mapBlockIndex - Yijie Huang, Joey Pinto
      *
@@ -395,52 +901,34 @@ public class BlockWorkFlow {
      * initialize Map<Integer,  BlockObservation> indexMap
      * initialize all the properties
      * set continuousFlag to decide whether this workFlow should be executed in a continuous way or cumulative way.
+     * The blocks are resolved by a plan compiled from the given blocksArray alone, without edges.
      */
     public void mapIndexBlock(JSONArray blocksArray, String outputFolder, String workflowOutputFile) throws WrongTypeException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException {
+        executionPlan = ExecutionPlan.compile(new JSONObject().put("blocks", blocksArray).put("edges", new JSONArray()), moduleSource);
+        mapIndexBlock(executionPlan, blocksArray, outputFolder, workflowOutputFile);
+    }
+
+    private void mapIndexBlock(ExecutionPlan plan, JSONArray blocksArray, String outputFolder, String workflowOutputFile) throws WrongTypeException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException {
         logger.info("initialize all the related ContinuousBlocks(including I/O/properties initialization) in this workFlow and set the idBlocksMap");
         Map<Integer, BlockObservation> idBlocksMap = new HashMap<>();
 
         continuousFlag[0] = false;
-        for(int i = 0; i<blocksArray.length(); i++){
-            BlockObservation currBlock = null;
-
-            JSONObject blockObject = blocksArray.getJSONObject(i);
-            String blockTypeStr = blockObject.getString("type");
-            int id = blockObject.getInt("id");
-            String module = blockObject.getString("module");
-
-            // get class from Constructor:  Map<Class, String> moduleSource,
-            // when execute, moduleSource map is initialized not module string
-            Set<Class> blockClasses = moduleSource.keySet();
-            for(Class blockClass : blockClasses){
-
-                Annotation annotation = blockClass.getAnnotation(BlockType.class);
-                if(annotation == null) continue;
-                Class<? extends Annotation> blockType = annotation.annotationType();
-                String blockTypeName = (String)blockType.getDeclaredMethod("type").invoke(annotation);
+        for(int i = 0; i<plan.getBlocksNum(); i++){
+            ExecutionPlan.BlockDescriptor descriptor = plan.getBlock(i);
+            JSONObject blockObject = blocksArray.getJSONObject(descriptor.getJsonIndex());
 
-                if(blockTypeName.equals(blockTypeStr)){
-                    currBlock = createBlockInstance(blockClass, module, blocksArray, workflowOutputFile);
-                    currBlock.setId(id);
-
-                    break;
-                }
-            }
-            if(currBlock == null){
-                logger.error("No class for "+blockObject.getString("type") + " block type found");
-                throw new FieldMismatchException(blockObject.getString("type"),"block type");
-            }
+            BlockObservation currBlock = createBlockInstance(descriptor, blocksArray, workflowOutputFile);
 
             //Initialize the block I/O/properties and configurations
 
-            currBlock.initializeIO(continuousFlag, i, true);
+            currBlock.initializeIO(continuousFlag, descriptor.getJsonIndex(), true);
             currBlock.assignProperties(blockObject);
             currBlock.setBlockObject(blockObject);
             currBlock.setOutputFolder(outputFolder);
             currBlock.setErrorFlag(errorFlag);
             currBlock.setCount(count);
 
-            idBlocksMap.put(id, currBlock);
+            idBlocksMap.put(descriptor.getId(), currBlock);
         }
         setIndexBlocksMap(idBlocksMap);
     }
@@ -452,64 +940,59 @@ public class BlockWorkFlow {
      * assign destinationObservers and sourceObservables for each block for Observer Pattern design;
      * initialize the startBlocksSet(): BlockObservations with no source blocks
      */
-    public void mapBlocksIO(JSONArray edgesArray){
+    public void mapBlocksIO(){
         logger.info("Set IOMap for each destination Blocks ");
 
-        startBlocksSet = new HashSet<>(indexBlocksMap.keySet());
-
-        for(int i = 0; i<edgesArray.length(); i++){
-            JSONObject edge = edgesArray.getJSONObject(i);
-
-            int block1ID = edge.getInt("block1");
-            BlockObservation block1 = indexBlocksMap.get(block1ID);
-            String sourceParam = edge.getJSONArray("connector1").getString(0);
-            BlockSourceOutput sourceOutput = new BlockSourceOutput(block1ID, block1, sourceParam);
+        WorkflowGraph graph = executionPlan.getGraph();
+        planBlocks = new BlockObservation[executionPlan.getBlocksNum()];
+        for(int i = 0; i<planBlocks.length; i++){
+            planBlocks[i] = indexBlocksMap.get(executionPlan.getBlock(i).getId());
+        }
 
-            int block2ID = edge.getInt("block2");
-            BlockObservation block2 = this.indexBlocksMap.get(block2ID);
-            String destinationParam = edge.getJSONArray("connector2").getString(0);
+        for(int e = 0; e<graph.getEdgesNum(); e++){
+            BlockObservation block1 = planBlocks[graph.getEdgeSource(e)];
+            BlockSourceOutput sourceOutput = new BlockSourceOutput(block1.getId(), block1, graph.getEdgeSourcePort(e));
+            if(releaseOutputs) block1.addOutputReader(graph.getEdgeSourcePort(e));
 
+            BlockObservation block2 = planBlocks[graph.getEdgeDestination(e)];
+            String destinationParam = graph.getEdgeDestinationPort(e);
             Map<String, List<BlockSourceOutput>> IOMap =block2.getIOMap();
             if(!IOMap.containsKey(destinationParam))
                 IOMap.put(destinationParam, new ArrayList<BlockSourceOutput>());
             IOMap.get(destinationParam).add(sourceOutput);
-            block2.setIOMap(IOMap);
-
-
-            // Set destinationObservers and sourceObservables for Observer Pattern
-            List<BlockObservation> destinationObservers = block1.getDestinationObservers();
-            if(!destinationObservers.contains(block2))
-                destinationObservers.add(block2);
-            block1.setDestinationObservers(destinationObservers);
+        }
 
-            List<BlockObservation>  sourceObservables   = block2.getSourceObservables();
-            if(!sourceObservables.contains(block1))
-                sourceObservables.add(block1);
-            block2.setSourceObservables(sourceObservables);
+        // Set destinationObservers and sourceObservables for Observer Pattern, the graph holds them without duplicates
+        for(int i = 0; i<planBlocks.length; i++){
+            List<BlockObservation> destinationObservers = new ArrayList<>(graph.getSuccessorsNum(i));
+            for(int k = 0; k<graph.getSuccessorsNum(i); k++) destinationObservers.add(planBlocks[graph.getSuccessor(i, k)]);
+            planBlocks[i].setDestinationObservers(destinationObservers);
 
-            // Deal with the start lists
-            if(startBlocksSet.contains(block2ID)) startBlocksSet.remove(block2ID);
+            List<BlockObservation> sourceObservables = new ArrayList<>(graph.getPredecessorsNum(i));
+            for(int k = 0; k<graph.getPredecessorsNum(i); k++) sourceObservables.add(planBlocks[graph.getPredecessor(i, k)]);
+            planBlocks[i].setSourceObservables(sourceObservables);
         }
 
-        for(int id: indexBlocksMap.keySet()){
-            BlockObservation currBlock = indexBlocksMap.get(id);
-            logger.info("current block id"+currBlock.getId()+", name "+currBlock.getName()+", sourceObservables size = "+currBlock.getSourceObservables().size());
+        startBlocksSet = new LinkedHashSet<>();
+        for(int startBlock : executionPlan.getStartBlocks()){
+            startBlocksSet.add(planBlocks[startBlock].getId());
         }
 
+        if(logger.isDebugEnabled()){
+            for(BlockObservation currBlock : planBlocks){
+                logger.debug("current block id"+currBlock.getId()+", name "+currBlock.getName()+", sourceObservables size = "+currBlock.getSourceObservables().size());
+            }
+        }
     }
 
     /**
      * registerObservers() - Yijie Huang
-     * add all the corresponding observers(dest BlockObservations) to the observables(source BlockObservations)
+     * give all the observables(source BlockObservations) the observers(dest BlockObservations) they notify once executed
      */
     public void registerObservers(){
-        for(int blockID : indexBlocksMap.keySet()){
-            BlockObservation sourceBlock = indexBlocksMap.get(blockID);
-            for(BlockObservation destinationBlock: sourceBlock.getDestinationObservers()){
-                //add destinationBlock as observer to the sourceBlock observable
-                sourceBlock.addObserver(destinationBlock);
-
-            }
+        for(BlockObservation sourceBlock : planBlocks){
+            List<BlockObservation> destinationObservers = sourceBlock.getDestinationObservers();
+            sourceBlock.setObservers(destinationObservers.toArray(new BlockObservation[destinationObservers.size()]));
         }
     }
 
@@ -563,6 +1046,10 @@ public class BlockWorkFlow {
         this.indexBlocksMap = indexBlocksMap;
     }
 
+    public ExecutionPlan getExecutionPlan() {
+        return executionPlan;
+    }
+
     public String getJarDirectory() {
         return jarDirectory;
     }
@@ -571,6 +1058,243 @@ public class BlockWorkFlow {
         this.jarDirectory = jarDirectory;
     }
 
+    public boolean isDirectPipes() {
+        return directPipes;
+    }
+
+    public void setDirectPipes(boolean directPipes) {
+        this.directPipes = directPipes;
+    }
+
+    public Executor getBlockExecutor() {
+        return blockExecutor;
+    }
+
+    /**
+     * setBlockExecutor
+     * run the blocks on the given executor instead of a thread of their own; the blocks of a continuous workflow
+     * wait for each other through their pipes, so the executor needs a free thread for every one of them
+     * (the WorkflowEngine only starts the jobs whose estimated threads fit into its pool)
+     */
+    public void setBlockExecutor(Executor blockExecutor) {
+        this.blockExecutor = blockExecutor;
+    }
+
+    public int getChannelBatchSize() {
+        return channelBatchSize;
+    }
+
+    public void setChannelBatchSize(int channelBatchSize) {
+        this.channelBatchSize = channelBatchSize;
+    }
+
+    public long getChannelLingerMillis() {
+        return channelLingerMillis;
+    }
+
+    public void setChannelLingerMillis(long channelLingerMillis) {
+        this.channelLingerMillis = channelLingerMillis;
+    }
+
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public int getInlineDepth() {
+        return inlineDepth;
+    }
+
+    /**
+     * setInlineDepth
+     * in cumulative workflows, a block with exactly one destination becoming ready through it executes that
+     * destination on its own thread, when the destination's block class executed in at most inlineRuntimeMicros on
+     * average so far; at most inlineDepth blocks in a row, then the next one gets a thread again
+     */
+    public void setInlineDepth(int inlineDepth) {
+        this.inlineDepth = inlineDepth;
+    }
+
+    void blockInlined() {
+        inlinedBlocks.incrementAndGet();
+    }
+
+    public int getInlinedBlocks() {
+        return inlinedBlocks.get();
+    }
+
+    public boolean isOptimizePlan() {
+        return optimizePlan;
+    }
+
+    /**
+     * setOptimizePlan
+     * workflows executed or compiled afterwards run without the blocks the PlanOptimizer eliminates or merges,
+     * the blocks JSON reports them as "eliminated" or "mergedInto" the block whose results they share
+     */
+    public void setOptimizePlan(boolean optimizePlan) {
+        this.optimizePlan = optimizePlan;
+    }
+
+    public PlanOptimizer getPlanOptimizer() {
+        return planOptimizer;
+    }
+
+    public boolean isGenerateCode() {
+        return generateCode;
+    }
+
+    /**
+     * setGenerateCode
+     * workflows compiled afterwards execute their blocks by a GeneratedPlan, see WorkflowCodeGenerator
+     */
+    public void setGenerateCode(boolean generateCode) {
+        this.generateCode = generateCode;
+    }
+
+    public long getInlineRuntimeMicros() {
+        return inlineRuntimeMicros;
+    }
+
+    public void setInlineRuntimeMicros(long inlineRuntimeMicros) {
+        this.inlineRuntimeMicros = inlineRuntimeMicros;
+    }
+
+    public boolean isBufferDiamonds() {
+        return bufferDiamonds;
+    }
+
+    public void setBufferDiamonds(boolean bufferDiamonds) {
+        this.bufferDiamonds = bufferDiamonds;
+    }
+
+    public long getStallThreshold() {
+        return stallThreshold;
+    }
+
+    public void setStallThreshold(long stallThreshold) {
+        this.stallThreshold = stallThreshold;
+    }
+
+    /**
+     * getElasticEdges
+     * edges ("block.output -> block.input") buffered elastically in the last continuous execution
+     */
+    public List<String> getElasticEdges() {
+        return elasticEdges;
+    }
+
+    /**
+     * getStallReports
+     * stalled edges reported by the StallDetector of the last continuous execution
+     */
+    public List<String> getStallReports() {
+        return stallDetector == null ? new ArrayList<String>() : stallDetector.getReports();
+    }
+
+    public WorkerCoordinator getWorkerCoordinator() {
+        return workerCoordinator;
+    }
+
+    public void setWorkerCoordinator(WorkerCoordinator workerCoordinator) {
+        this.workerCoordinator = workerCoordinator;
+    }
+
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public void setCheckpointDirectory(String checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    public boolean isOperatorFusion() {
+        return operatorFusion;
+    }
+
+    public void setOperatorFusion(boolean operatorFusion) {
+        this.operatorFusion = operatorFusion;
+    }
+
+    public Set<Integer> getFusedBlocks() {
+        return fusedBlocks;
+    }
+
+    public boolean isInProcessJars() {
+        return inProcessJars;
+    }
+
+    public void setInProcessJars(boolean inProcessJars) {
+        this.inProcessJars = inProcessJars;
+    }
+
+    public boolean isClassDataSharing() {
+        return classDataSharing;
+    }
+
+    public void setClassDataSharing(boolean classDataSharing) {
+        this.classDataSharing = classDataSharing;
+    }
+
+    public boolean isForkStreams() {
+        return forkStreams;
+    }
+
+    public void setForkStreams(boolean forkStreams) {
+        this.forkStreams = forkStreams;
+    }
+
+    public boolean isReleaseOutputs() {
+        return releaseOutputs;
+    }
+
+    public void setReleaseOutputs(boolean releaseOutputs) {
+        this.releaseOutputs = releaseOutputs;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public double getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public void setMemoryThreshold(double memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public JobMemoryManager getMemoryManager() {
+        return memoryManager;
+    }
+
+    public long getLiveOutputBytes() {
+        return liveOutputBytes.get();
+    }
+
+    public long getPeakLiveOutputBytes() {
+        return peakLiveOutputBytes.get();
+    }
+
     public Set<Integer> getStartBlocksSet() {
         return startBlocksSet;
     }
@@ -0,0 +1,324 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * CheckpointStore
+ *
+ * Checkpoint directory of one cumulative job: the workflow JSON (workflow.json) and for every successfully
+ * completed block a block_<id>.ckpt file with a BlockData snapshot of its @BlockOutput values and its JSON result.
+ * The snapshot is serialized into memory by the block's thread before its destinations read the values, so later
+ * changes of the values do not reach the checkpoint, and written by a background thread so the blocks do not wait for
+ * the disk; File values are copied into the files sub directory. A checkpoint is written to a temp file and renamed, so a job
+ * interrupted while writing never leaves a partial checkpoint. Blocks whose outputs are not Serializable are not
+ * checkpointed and are executed again on resume.
+ **********************************************************************************************************************/
+
+public class CheckpointStore {
+
+    private static Log logger = LogFactory.getLog(CheckpointStore.class);
+
+    public static final String WORKFLOW_FILE = "workflow.json";
+    public static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    private final File directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CheckpointStore-writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public CheckpointStore(File directory) {
+        this.directory = directory;
+        new File(directory, "files").mkdirs();
+    }
+
+    public void saveWorkflow(JSONObject jObject) throws IOException {
+        FileUtils.writeStringToFile(new File(directory, WORKFLOW_FILE), jObject.toString(), Charset.defaultCharset());
+    }
+
+    public JSONObject loadWorkflow() throws IOException {
+        File workflowFile = new File(directory, WORKFLOW_FILE);
+        if(!workflowFile.exists()) throw new IOException("No checkpointed workflow in " + directory.getAbsolutePath());
+        return new JSONObject(FileUtils.readFileToString(workflowFile, Charset.defaultCharset()));
+    }
+
+    /**
+     * snapshot
+     * serialized copy of the @BlockOutput values of the block which has just executed, taken before its destinations
+     * read them and before outputRead or the JobMemoryManager may clear the fields; null if they are not Serializable
+     */
+    public Snapshot snapshot(BlockObservation block) throws IllegalAccessException {
+        BlockData blockData = new BlockData(block.getName());
+        for(Field f : block.getContext().getClass().getDeclaredFields()){
+            f.setAccessible(true);
+            BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+            if(blockOutput != null && !Type.STREAM.equals(blockOutput.type()))
+                blockData.getOutput().put(blockOutput.name(), f.get(block.getContext()));
+        }
+
+        Snapshot snapshot = new Snapshot(block.getId());
+        try {
+            snapshot.blockData = snapshot.serialize(blockData);
+        } catch (IOException | RuntimeException e){
+            logger.warn("Block id = " + block.getId() + " cannot be checkpointed, it will be executed again on resume", e);
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * checkpoint
+     * add the result of the completed block to the snapshot of its outputs and write them in the background
+     */
+    public void checkpoint(BlockObservation block, final Snapshot snapshot) {
+        final JSONObject result;
+        synchronized (block.getBlocksArray()){
+            result = new JSONObject(block.getBlockObject().toString());
+        }
+        //updateJSON has moved a File result to the output folder
+        Object processOutput = block.getFinalOutputObject();
+        JSONObject output = result.optJSONObject("output");
+        if(processOutput instanceof File && output != null && "FILE".equals(output.optString("type")))
+            processOutput = new File(block.getOutputFolder(), output.getJSONObject("value").getString("filename"));
+        try {
+            snapshot.processOutput = snapshot.serialize(processOutput);
+        } catch (IOException | RuntimeException e){
+            logger.warn("Block id = " + snapshot.id + " cannot be checkpointed, it will be executed again on resume", e);
+            return;
+        }
+
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(snapshot, result);
+            }
+        });
+    }
+
+    private void write(Snapshot snapshot, JSONObject result) {
+        File tmp = new File(directory, "block_" + snapshot.id + ".tmp");
+        try {
+            for(Map.Entry<File, File> file : snapshot.files.entrySet()){
+                FileUtils.copyFile(file.getKey(), file.getValue());
+            }
+
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeObject(snapshot.blockData);
+                out.writeObject(snapshot.processOutput);
+                out.writeObject(result.toString());
+            }
+            Files.move(tmp.toPath(), new File(directory, "block_" + snapshot.id + CHECKPOINT_SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Checkpointed block id = " + snapshot.id + " in " + directory.getAbsolutePath());
+        } catch (IOException | RuntimeException e){
+            FileUtils.deleteQuietly(tmp);
+            logger.warn("Block id = " + snapshot.id + " cannot be checkpointed, it will be executed again on resume", e);
+        }
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * load
+     * checkpoints of the completed blocks by block id
+     */
+    public Map<Integer, BlockCheckpoint> load() throws IOException {
+        Map<Integer, BlockCheckpoint> checkpoints = new HashMap<>();
+        File[] files = directory.listFiles();
+        if(files == null) return checkpoints;
+
+        for(File file : files){
+            String fileName = file.getName();
+            if(!fileName.startsWith("block_") || !fileName.endsWith(CHECKPOINT_SUFFIX)) continue;
+
+            int id = Integer.parseInt(fileName.substring("block_".length(), fileName.length() - CHECKPOINT_SUFFIX.length()));
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                BlockData blockData = (BlockData) deserialize((byte[]) in.readObject());
+                blockData.setProcessOutput(deserialize((byte[]) in.readObject()));
+                JSONObject result = new JSONObject((String) in.readObject());
+                checkpoints.put(id, new BlockCheckpoint(blockData, result));
+            } catch (ClassNotFoundException e){
+                throw new IOException("Cannot read checkpoint " + file.getAbsolutePath(), e);
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * close
+     * wait until all the checkpoints submitted so far are written
+     */
+    public void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Snapshot
+     * outputs and result of one block serialized by its thread, with the files to copy into the files sub directory;
+     * File values are serialized as their copies and mapped NumericVectors as handles to their copies
+     */
+    public final class Snapshot {
+        private final int id;
+        private final Map<File, File> files = new LinkedHashMap<>();   //file to its copy
+        private byte[] blockData;
+        private byte[] processOutput;
+
+        private Snapshot(int id) {
+            this.id = id;
+        }
+
+        private byte[] serialize(Object value) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes) {
+                {
+                    enableReplaceObject(true);
+                }
+
+                @Override
+                protected Object replaceObject(Object object) {
+                    if(object instanceof File && ((File) object).exists())
+                        return copy((File) object);
+                    if(object instanceof NumericVector && ((NumericVector) object).isMapped() && ((NumericVector) object).getFile().exists())
+                        return new MappedCopy(copy(((NumericVector) object).getFile()));
+                    return object;
+                }
+            }) {
+                out.writeObject(value);
+            }
+            return bytes.toByteArray();
+        }
+
+        private File copy(File file) {
+            File copy = files.get(file);
+            if(copy == null){
+                copy = new File(new File(directory, "files"), id + "_" + file.getName());
+                files.put(file, copy);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * MappedCopy
+     * mapped NumericVector in a checkpoint, mapped again from the copy of its file when the checkpoint is loaded
+     */
+    private static final class MappedCopy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+
+        private MappedCopy(File file) {
+            this.path = file.getAbsolutePath();
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            try {
+                return NumericVector.map(new File(path));
+            } catch (IOException e){
+                InvalidObjectException invalid = new InvalidObjectException("Cannot map " + path);
+                invalid.initCause(e);
+                throw invalid;
+            }
+        }
+    }
+
+    /**
+     * BlockCheckpoint
+     * outputs and JSON result of one checkpointed block
+     */
+    public static final class BlockCheckpoint {
+        private final BlockData blockData;
+        private final JSONObject result;
+
+        private BlockCheckpoint(BlockData blockData, JSONObject result) {
+            this.blockData = blockData;
+            this.result = result;
+        }
+
+        /**
+         * restore
+         * give the block the checkpointed outputs and result, as if it was executed
+         */
+        public void restore(BlockObservation block) throws IllegalAccessException {
+            for(Field f : block.getContext().getClass().getDeclaredFields()){
+                f.setAccessible(true);
+                BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+                if(blockOutput != null && blockData.getOutput().containsKey(blockOutput.name()))
+                    f.set(block.getContext(), blockData.getOutput().get(blockOutput.name()));
+            }
+            block.setFinalOutputObject(blockData.getProcessOutput());
+            block.setBlockObject(result);
+            block.setComplete(true);
+        }
+
+        public BlockData getBlockData() {
+            return blockData;
+        }
+
+        public JSONObject getResult() {
+            return result;
+        }
+    }
+}
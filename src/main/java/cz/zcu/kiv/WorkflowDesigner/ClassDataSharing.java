@@ -0,0 +1,335 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * ClassDataSharing
+ *
+ * Dynamic class data sharing archives of the JVMs forked for runAsJar blocks (BlockWorkFlow.setClassDataSharing).
+ * The first launch of a module jar dumps the classes it loaded (-XX:ArchiveClassesAtExit), later launches map them
+ * (-XX:SharedArchiveFile) instead of loading and verifying them again. The archive is kept next to the jar and named
+ * by the jar's CRC32 checksum, so a replaced jar gets a new archive and the stale ones are deleted. Dynamic archives
+ * need Java 13 or newer; on older JVMs the blocks are launched without one.
+ * Every launch reports the JVM uptime at which the block was about to execute, kept per jar in StartupStatistics.
+ **********************************************************************************************************************/
+
+public final class ClassDataSharing {
+
+    private static Log logger = LogFactory.getLog(ClassDataSharing.class);
+
+    public static final String STARTUP_PROPERTY = "workflow.designer.startup.file";
+    public static final String ARCHIVE_SUFFIX = ".jsa";
+    public static final int MINIMUM_JAVA_VERSION = 13;
+
+    private static final Set<String> archiving = new HashSet<>();                         //archives being dumped
+    private static final Map<String, StartupStatistics> statistics = new HashMap<>();      //by jar path
+    private static boolean unsupportedLogged = false;
+
+    private ClassDataSharing() {
+    }
+
+    public static boolean isSupported() {
+        return javaVersion(System.getProperty("java.specification.version")) >= MINIMUM_JAVA_VERSION;
+    }
+
+    static int javaVersion(String specificationVersion) {
+        if(specificationVersion == null) return 0;
+        String version = specificationVersion.startsWith("1.") ? specificationVersion.substring(2) : specificationVersion;
+        int dot = version.indexOf('.');
+        try {
+            return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+        } catch (NumberFormatException e){
+            return 0;
+        }
+    }
+
+    /**
+     * archiveFile
+     * archive of the current version of the jar, in the jar's directory
+     */
+    public static File archiveFile(File jarFile) throws IOException {
+        File jar = jarFile.getAbsoluteFile();
+        return new File(jar.getParentFile(), jar.getName() + "-" + Long.toHexString(ModuleClassLoader.checksum(jar)) + ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * launch
+     * JVM options of the next launch of a block from the jar: the archive if it exists, dumping it if no other
+     * launch does, and the startup report file
+     * @param share false to only report the startup time
+     */
+    public static Launch launch(File jarFile, boolean share) throws IOException {
+        File jar = jarFile.getAbsoluteFile();
+        Launch launch = new Launch(jar, File.createTempFile("startup_", ".ms", jar.getParentFile()));
+
+        if(share && !isSupported()){
+            synchronized (archiving){
+                if(!unsupportedLogged) logger.warn("Class data sharing archives need Java " + MINIMUM_JAVA_VERSION + " or newer, blocks are launched without them");
+                unsupportedLogged = true;
+            }
+        }
+        else if(share){
+            File archive = archiveFile(jar);
+            synchronized (archiving){
+                if(archive.isFile()){
+                    launch.archive = archive;
+                    launch.options.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+                }
+                else if(archiving.add(archive.getPath())){
+                    launch.archive = archive;
+                    launch.dumpFile = new File(archive.getPath() + ".dump");
+                    FileUtils.deleteQuietly(launch.dumpFile);
+                    launch.options.add("-XX:ArchiveClassesAtExit=" + launch.dumpFile.getAbsolutePath());
+                }
+            }
+        }
+        launch.options.add("-D" + STARTUP_PROPERTY + "=" + launch.startupFile.getAbsolutePath());
+        return launch;
+    }
+
+    /**
+     * reportStartup
+     * called in the forked JVM before the block executes, writes its uptime to the file of the startup property
+     */
+    static void reportStartup() {
+        String startupFile = System.getProperty(STARTUP_PROPERTY);
+        if(startupFile == null) return;
+        try {
+            FileUtils.writeStringToFile(new File(startupFile), String.valueOf(ManagementFactory.getRuntimeMXBean().getUptime()), Charset.defaultCharset());
+        } catch (IOException e){
+            logger.debug("Startup time cannot be reported to " + startupFile, e);
+        }
+    }
+
+    /**
+     * getStatistics
+     * startup times of the blocks launched from the jar, null if none was launched yet
+     */
+    public static StartupStatistics getStatistics(File jarFile) {
+        synchronized (statistics){
+            StartupStatistics jarStatistics = statistics.get(jarFile.getAbsolutePath());
+            return jarStatistics == null ? null : new StartupStatistics(jarStatistics);
+        }
+    }
+
+    private static void deleteStaleArchives(File archive, File jar) {
+        File[] archives = archive.getParentFile().listFiles();
+        if(archives == null) return;
+        for(File stale : archives){
+            if(!stale.equals(archive) && stale.getName().startsWith(jar.getName() + "-") && stale.getName().endsWith(ARCHIVE_SUFFIX)){
+                FileUtils.deleteQuietly(stale);
+                logger.info("Deleted stale class data sharing archive " + stale);
+            }
+        }
+    }
+
+    /**
+     * Launch
+     * one launch of a block JVM; finished after the process ended records its startup time and installs a dumped
+     * archive, close releases it otherwise
+     */
+    public static final class Launch implements Closeable {
+        private final File jar;
+        private final File startupFile;
+        private final List<String> options = new ArrayList<>();
+        private File archive;         //used or dumped archive, null when launched without one
+        private File dumpFile;        //set when this launch dumps the archive
+        private boolean finished = false;
+
+        private Launch(File jar, File startupFile) {
+            this.jar = jar;
+            this.startupFile = startupFile;
+        }
+
+        /**
+         * command
+         * java command line with the options of this launch after the VM arguments
+         */
+        public String[] command(String vmArgs, String... arguments) {
+            List<String> command = new ArrayList<>();
+            command.add("java");
+            command.add(vmArgs);
+            command.addAll(options);
+            Collections.addAll(command, arguments);
+            return command.toArray(new String[command.size()]);
+        }
+
+        /**
+         * finished
+         * @param succeeded whether the process exited normally, only then its archive is installed
+         * @return startup time in milliseconds, -1 if not reported
+         */
+        public long finished(boolean succeeded) {
+            if(finished) return -1;
+            finished = true;
+
+            long startupMillis = -1;
+            try {
+                String reported = FileUtils.readFileToString(startupFile, Charset.defaultCharset()).trim();
+                if(!reported.isEmpty()) startupMillis = Long.parseLong(reported);
+            } catch (IOException | NumberFormatException e){
+                logger.debug("No startup time reported by block JVM of " + jar, e);
+            }
+            FileUtils.deleteQuietly(startupFile);
+
+            if(startupMillis >= 0){
+                boolean shared = isShared();
+                synchronized (statistics){
+                    StartupStatistics jarStatistics = statistics.get(jar.getPath());
+                    if(jarStatistics == null){
+                        jarStatistics = new StartupStatistics();
+                        statistics.put(jar.getPath(), jarStatistics);
+                    }
+                    jarStatistics.record(startupMillis, shared);
+                }
+                logger.info("Block JVM of " + jar.getName() + " started in " + startupMillis + " ms "
+                        + (shared ? "with class data sharing archive " + archive.getName() : "without class data sharing archive"));
+            }
+
+            if(dumpFile != null){
+                try {
+                    if(succeeded && dumpFile.isFile() && dumpFile.length() > 0){
+                        synchronized (archiving){
+                            deleteStaleArchives(archive, jar);
+                            Files.move(dumpFile.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        logger.info("Created class data sharing archive " + archive + " of " + archive.length() + " bytes");
+                    }
+                    else logger.warn("Block JVM of " + jar.getName() + " did not dump a class data sharing archive");
+                } catch (IOException e){
+                    logger.warn("Class data sharing archive " + archive + " cannot be installed", e);
+                } finally {
+                    FileUtils.deleteQuietly(dumpFile);
+                    synchronized (archiving){
+                        archiving.remove(archive.getPath());
+                    }
+                }
+            }
+            return startupMillis;
+        }
+
+        /**
+         * close
+         * release a launch which did not finish, its dumped archive is discarded
+         */
+        @Override
+        public void close() {
+            finished(false);
+        }
+
+        public boolean isShared() {
+            return archive != null && dumpFile == null;
+        }
+
+        public boolean isDumping() {
+            return dumpFile != null;
+        }
+
+        public File getArchive() {
+            return archive;
+        }
+
+        public File getDumpFile() {
+            return dumpFile;
+        }
+
+        public File getStartupFile() {
+            return startupFile;
+        }
+
+        public List<String> getOptions() {
+            return Collections.unmodifiableList(options);
+        }
+    }
+
+    /**
+     * StartupStatistics
+     * number and mean startup time of the block JVMs of one jar launched without and with an archive
+     */
+    public static final class StartupStatistics {
+        private long launches;
+        private long totalMillis;
+        private long sharedLaunches;
+        private long sharedTotalMillis;
+
+        private StartupStatistics() {
+        }
+
+        private StartupStatistics(StartupStatistics other) {
+            this.launches = other.launches;
+            this.totalMillis = other.totalMillis;
+            this.sharedLaunches = other.sharedLaunches;
+            this.sharedTotalMillis = other.sharedTotalMillis;
+        }
+
+        private void record(long startupMillis, boolean shared) {
+            if(shared){
+                sharedLaunches++;
+                sharedTotalMillis += startupMillis;
+            }
+            else {
+                launches++;
+                totalMillis += startupMillis;
+            }
+        }
+
+        public long getLaunches() {
+            return launches;
+        }
+
+        public long getSharedLaunches() {
+            return sharedLaunches;
+        }
+
+        public double getMeanStartupMillis() {
+            return launches == 0 ? 0 : (double) totalMillis / launches;
+        }
+
+        public double getMeanSharedStartupMillis() {
+            return sharedLaunches == 0 ? 0 : (double) sharedTotalMillis / sharedLaunches;
+        }
+
+        @Override
+        public String toString() {
+            return "without archive: " + launches + " launches, mean " + getMeanStartupMillis() + " ms; with archive: "
+                    + sharedLaunches + " launches, mean " + getMeanSharedStartupMillis() + " ms";
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * CompiledWorkflow
+ *
+ * A cumulative workflow prepared once (BlockWorkFlow.compile) and invoked in memory for every request, as a handler.
+ * The fields, @BlockExecute methods, property values and connections of the blocks are resolved when compiling; an
+ * invocation takes a pooled set of block instances, resets their properties and unconnected inputs to the compiled
+ * values, assigns the given parameters, executes the blocks natively in plan order on the calling thread and returns
+ * the outputs of the last blocks. No JSON or output file is written. Compiled with code generation, the blocks are
+ * executed by the GeneratedPlan of the workflow instead, whose independent branches run on the branch executor when
+ * one is set. Invocations are thread safe, each one uses its own block instances; their outputs are cleared before
+ * they return to the pool, so no data of one invocation is seen by the next.
+ **********************************************************************************************************************/
+
+public final class CompiledWorkflow {
+
+    private final ExecutionPlan plan;
+    private final int[] blockIds;
+    private final Class[] blockClasses;
+    private final Method[] executeMethods;
+    private final Field[][] blockOutputs;                      //output fields of each block, cleared after each invocation
+    private final InputBinding[][] bindings;                   //connected inputs of each block
+    private final Map<String, Parameter> parameters = new LinkedHashMap<>();   //"id.name" of properties and unconnected inputs
+    private final Map<String, Field> resultFields = new LinkedHashMap<>();     //"id.name" of the outputs of the last blocks
+    private final int[] resultBlocks;                          //plan index of the block of each result field, then the last blocks
+    private final GeneratedPlan generated;                     //null when the blocks are executed reflectively
+    private final GeneratedPlan.Connector connector = new GeneratedPlan.Connector() {
+        @Override
+        public void connect(int block, Object[] contexts) throws IllegalAccessException {
+            connectInputs(block, contexts);
+        }
+    };
+    private volatile Executor branchExecutor;
+
+    private final ConcurrentLinkedQueue<Object[]> instances = new ConcurrentLinkedQueue<>();
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong createdInstances = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param generateCode execute the blocks by a GeneratedPlan, when WorkflowCodeGenerator can generate one
+     */
+    CompiledWorkflow(ExecutionPlan plan, BlockObservation[] planBlocks, boolean generateCode) throws IllegalAccessException {
+        this.plan = plan;
+        int blocksNum = planBlocks.length;
+        blockIds = new int[blocksNum];
+        blockClasses = new Class[blocksNum];
+        executeMethods = new Method[blocksNum];
+        blockOutputs = new Field[blocksNum][];
+        bindings = new InputBinding[blocksNum][];
+
+        List<Map<String, Field>> inputFields  = new ArrayList<>();
+        List<Map<String, Field>> outputFields = new ArrayList<>();
+        Object[] templates = new Object[blocksNum];
+        for(int i = 0; i < blocksNum; i++){
+            BlockObservation block = planBlocks[i];
+            if(block.getBlockModel() != BlockObservation.NORMAL)
+                throw new IllegalArgumentException("Block "+block.getId()+" "+block.getName()+" streams its data, only cumulative workflows can be compiled");
+
+            blockIds[i] = block.getId();
+            templates[i] = block.getContext();
+            blockClasses[i] = templates[i].getClass();
+
+            Map<String, Field> inputs = new HashMap<>();
+            Map<String, Field> outputs = new LinkedHashMap<>();
+            for(Field f : blockClasses[i].getDeclaredFields()){
+                f.setAccessible(true);
+                if(f.getAnnotation(BlockProperty.class) != null){
+                    parameters.put(blockIds[i]+"."+f.getAnnotation(BlockProperty.class).name(), new Parameter(i, f, f.get(templates[i])));
+                }
+                else if(f.getAnnotation(BlockInput.class) != null) inputs.put(f.getAnnotation(BlockInput.class).name(), f);
+                else if(f.getAnnotation(BlockOutput.class) != null) outputs.put(f.getAnnotation(BlockOutput.class).name(), f);
+            }
+            blockOutputs[i] = outputs.values().toArray(new Field[outputs.size()]);
+            inputFields.add(inputs);
+            outputFields.add(outputs);
+
+            for(Method method : blockClasses[i].getDeclaredMethods()){
+                if(method.getAnnotation(BlockExecute.class) != null){
+                    method.setAccessible(true);
+                    executeMethods[i] = method;
+                    break;
+                }
+            }
+        }
+
+        //sources of each connected input, in edge order as connectIO reads them
+        WorkflowGraph graph = plan.getGraph();
+        List<Map<String, List<Integer>>> inputEdges = new ArrayList<>();
+        for(int i = 0; i < blocksNum; i++) inputEdges.add(new LinkedHashMap<String, List<Integer>>());
+        for(int e = 0; e < graph.getEdgesNum(); e++){
+            Map<String, List<Integer>> edges = inputEdges.get(graph.getEdgeDestination(e));
+            List<Integer> inputSources = edges.get(graph.getEdgeDestinationPort(e));
+            if(inputSources == null){
+                inputSources = new ArrayList<>();
+                edges.put(graph.getEdgeDestinationPort(e), inputSources);
+            }
+            inputSources.add(e);
+        }
+
+        for(int i = 0; i < blocksNum; i++){
+            List<InputBinding> blockBindings = new ArrayList<>();
+            for(Map.Entry<String, List<Integer>> input : inputEdges.get(i).entrySet()){
+                Field field = inputFields.get(i).get(input.getKey());
+                if(field == null) continue;
+                int[] sources = new int[input.getValue().size()];
+                Field[] sourceFields = new Field[sources.length];
+                for(int k = 0; k < sources.length; k++){
+                    int e = input.getValue().get(k);
+                    sources[k] = graph.getEdgeSource(e);
+                    sourceFields[k] = outputFields.get(sources[k]).get(graph.getEdgeSourcePort(e));
+                }
+                blockBindings.add(new InputBinding(field, sources, sourceFields));
+            }
+            bindings[i] = blockBindings.toArray(new InputBinding[blockBindings.size()]);
+
+            for(Map.Entry<String, Field> input : inputFields.get(i).entrySet()){
+                if(!inputEdges.get(i).containsKey(input.getKey()))
+                    parameters.put(blockIds[i]+"."+input.getKey(), new Parameter(i, input.getValue(), input.getValue().get(templates[i])));
+            }
+        }
+
+        List<Integer> results = new ArrayList<>();
+        List<Integer> lastBlocks = new ArrayList<>();
+        for(int i = 0; i < blocksNum; i++){
+            if(graph.getSuccessorsNum(i) != 0) continue;
+            lastBlocks.add(i);
+            for(Map.Entry<String, Field> output : outputFields.get(i).entrySet()){
+                resultFields.put(blockIds[i]+"."+output.getKey(), output.getValue());
+                results.add(i);
+            }
+        }
+        results.addAll(lastBlocks);
+        resultBlocks = new int[results.size()];
+        for(int r = 0; r < resultBlocks.length; r++) resultBlocks[r] = results.get(r);
+
+        generated = generateCode ? WorkflowCodeGenerator.generate(plan, blockClasses, executeMethods, bindings) : null;
+        instances.offer(templates);
+    }
+
+    /**
+     * invoke
+     * execute the workflow once
+     * @param parameters values of properties and unconnected inputs by "blockId.name", replacing the compiled
+     *                   property values for this invocation only
+     * @return the outputs of the blocks without destinations by "blockId.outputName", and the values returned by
+     *         their @BlockExecute methods by "blockId" when not null
+     */
+    public Map<String, Object> invoke(Map<String, ?> parameters) throws IllegalAccessException, InvocationTargetException, InstantiationException {
+        Object[] contexts = instances.poll();
+        if(contexts == null) contexts = newInstances();
+
+        Object[] returned = new Object[blockIds.length];
+        for(Parameter parameter : this.parameters.values()){
+            parameter.field.set(contexts[parameter.block], parameter.value);
+        }
+        for(Map.Entry<String, ?> parameter : parameters.entrySet()){
+            Parameter target = this.parameters.get(parameter.getKey());
+            if(target == null) throw new IllegalArgumentException("Unknown parameter "+parameter.getKey()+", expected one of "+this.parameters.keySet());
+            target.field.set(contexts[target.block], coerce(target.field.getType(), parameter.getValue()));
+        }
+
+        if(generated != null){
+            try {
+                generated.execute(contexts, returned, connector, branchExecutor);
+            } catch (IllegalAccessException e){
+                throw e;
+            } catch (Throwable t){
+                throw new InvocationTargetException(t);
+            }
+        }
+        else {
+            for(int i = 0; i < blockIds.length; i++){
+                connectInputs(i, contexts);
+                if(executeMethods[i] != null) returned[i] = executeMethods[i].invoke(contexts[i]);
+            }
+        }
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        int r = 0;
+        for(Map.Entry<String, Field> result : resultFields.entrySet()){
+            results.put(result.getKey(), result.getValue().get(contexts[resultBlocks[r++]]));
+        }
+        for(; r < resultBlocks.length; r++){
+            Object value = returned[resultBlocks[r]];
+            if(value != null) results.put(String.valueOf(blockIds[resultBlocks[r]]), value);
+        }
+
+        invocations.incrementAndGet();
+        clearOutputs(contexts);
+        instances.offer(contexts);    //a block which failed leaves its instances out of the pool
+        return results;
+    }
+
+    private void connectInputs(int block, Object[] contexts) throws IllegalAccessException {
+        for(InputBinding binding : bindings[block]){
+            List<Object> components = new ArrayList<>(binding.sources.length);
+            for(int k = 0; k < binding.sources.length; k++){
+                components.add(binding.sourceFields[k] == null ? null : binding.sourceFields[k].get(contexts[binding.sources[k]]));
+            }
+            binding.field.set(contexts[block], BlockObservation.inputValue(binding.field, binding.input, components));
+        }
+    }
+
+    private void clearOutputs(Object[] contexts) throws IllegalAccessException {
+        for(int i = 0; i < contexts.length; i++){
+            for(Field output : blockOutputs[i]){
+                output.set(contexts[i], output.getType().isPrimitive() ? Array.get(Array.newInstance(output.getType(), 1), 0) : null);
+            }
+        }
+    }
+
+    private Object[] newInstances() throws IllegalAccessException, InstantiationException {
+        Object[] contexts = new Object[blockClasses.length];
+        for(int i = 0; i < contexts.length; i++){
+            contexts[i] = blockClasses[i].newInstance();
+        }
+        createdInstances.incrementAndGet();
+        return contexts;
+    }
+
+    /**
+     * coerce
+     * numbers to the numeric type of the field, anything to a String field by its string value
+     */
+    private static Object coerce(Class<?> type, Object value) {
+        if(value instanceof Number){
+            Number number = (Number) value;
+            if(type == int.class || type == Integer.class) return number.intValue();
+            if(type == long.class || type == Long.class) return number.longValue();
+            if(type == double.class || type == Double.class) return number.doubleValue();
+            if(type == float.class || type == Float.class) return number.floatValue();
+        }
+        if(type == String.class && value != null && !(value instanceof String)) return String.valueOf(value);
+        return value;
+    }
+
+    public ExecutionPlan getPlan() {
+        return plan;
+    }
+
+    public Set<String> getParameterNames() {
+        return Collections.unmodifiableSet(parameters.keySet());
+    }
+
+    public Set<String> getResultNames() {
+        return Collections.unmodifiableSet(resultFields.keySet());
+    }
+
+    /**
+     * getGeneratedPlan
+     * the generated class executing the blocks, null when they are executed reflectively
+     */
+    public GeneratedPlan getGeneratedPlan() {
+        return generated;
+    }
+
+    public Executor getBranchExecutor() {
+        return branchExecutor;
+    }
+
+    /**
+     * setBranchExecutor
+     * executor of the blocks of a GeneratedPlan which do not depend on each other, null executes them all on the
+     * invoking thread; a branch the executor has not started yet when the invocation needs it runs on the invoking
+     * thread too
+     */
+    public void setBranchExecutor(Executor branchExecutor) {
+        this.branchExecutor = branchExecutor;
+    }
+
+    public long getInvocations() {
+        return invocations.get();
+    }
+
+    /**
+     * getInstanceSets
+     * sets of block instances created for concurrent invocations, besides the one the workflow was compiled with
+     */
+    public long getInstanceSets() {
+        return createdInstances.get();
+    }
+
+    /**
+     * InputBinding
+     * a connected input of a block with the output fields of its sources
+     */
+    static final class InputBinding {
+        final Field field;
+        final BlockInput input;
+        final int[] sources;
+        final Field[] sourceFields;   //null where the source has no such output field
+
+        private InputBinding(Field field, int[] sources, Field[] sourceFields) {
+            this.field = field;
+            this.input = field.getAnnotation(BlockInput.class);
+            this.sources = sources;
+            this.sourceFields = sourceFields;
+        }
+    }
+
+    /**
+     * Parameter
+     * property or unconnected input of a block assigned per invocation, reset to its compiled value first
+     */
+    private static final class Parameter {
+        private final int block;
+        private final Field field;
+        private final Object value;
+
+        private Parameter(int block, Field field, Object value) {
+            this.block = block;
+            this.field = field;
+            this.value = value;
+        }
+    }
+}
@@ -29,6 +29,14 @@ public class ContinuousBlockThread implements Runnable {
 
     @Override
     public void run() {
+        try {
+            executeBlock();
+        } finally {
+            block.finished();            // wakes the blocks waiting for this one
+        }
+    }
+
+    private void executeBlock() {
 
         if (block.getBlockModel() == NORMAL) {
             logger.info("JID: "+block.getJobID()+", block id: "+id+" "+block.getName()+", execute in NORMAL");
@@ -38,11 +46,21 @@ public class ContinuousBlockThread implements Runnable {
             logger.info("JID: "+block.getJobID()+", block id: "+id+" "+block.getName()+", execute in MIX");
             executeModel(MIX);
         }
+        else if (block.getBlockModel() == PIPE && block.isForkedStream()){
+            logger.info("JID: "+block.getJobID()+", block id: "+id+" "+block.getName()+", execute in PIPE as a JAR");
+            executeForked(true);         // no sources to wait for, its streams are bridged to the forked JVM
+        }
         else if (block.getBlockModel() == PIPE){
             logger.info("JID: "+block.getJobID()+", block id: "+id+" "+block.getName()+", execute in PIPE");
             executeNative();             // execute in native directly for those PIPE blocks
         }
 
+        try {
+            block.closeOutputChannels();
+        } catch (Exception e){
+            logger.error("Error closing RecordChannels of id = "+ block.getId()+", name = "+ block.getName()+" Block"+", in jobID "+block.getJobID(), e);
+        }
+
         block.setComplete(complete);
         System.out.println("Complete: blockID: "+id+" "+block.getName());
 
@@ -54,14 +72,11 @@ public class ContinuousBlockThread implements Runnable {
     }
 
     private void checkPrepared() {
-        // check whether the previous blocks are all executed completely
+        // BlockWorkFlow submits NORMAL and MIX blocks once their sources finished, this only waits when run on its own
         for( BlockObservation sourceBlock: block.getSourceObservables()) {
 
             try{
-                while((!sourceBlock.isComplete())) {
-                    Thread.sleep(100);
-                    if(  errorFlag[0] ) return;
-                }
+                if( !sourceBlock.awaitFinished(errorFlag) ) return;
             } catch (InterruptedException e){
                 logger.error(e);
                 error = true;
@@ -78,11 +93,19 @@ public class ContinuousBlockThread implements Runnable {
         try{
             block.connectIO();// connect IO and assign blockData
 
-            if(blockModel == NORMAL && block.isJarExecutable() && block.getBlockWorkFlow().getJarDirectory()!=null && !block.isStream() ){
+            if(blockModel == NORMAL && block.isParallelSplit()){
+                Object output = block.executeParallel(stdOut, stdErr);
+                block.setFinalOutputObject(output);
+                complete = true;
+            }
+            else if(blockModel == NORMAL && block.isJarExecutable() && block.getBlockWorkFlow().getJarDirectory()!=null && !block.isStream() ){
                 Object output = block.executeAsJar(stdOut, stdErr);
                 block.setFinalOutputObject(output);
                 complete = true;
             }
+            else if(block.isForkedStream()){
+                executeForked(false);
+            }
             else{
                 executeNative();
             }
@@ -96,6 +119,22 @@ public class ContinuousBlockThread implements Runnable {
     }
 
 
+    private void executeForked(boolean connectIO) {
+        try{
+            if(connectIO) block.connectIO();   // BlockData with the properties of a PIPE block
+            Object output = block.executeAsJar(stdOut, stdErr);
+            block.setFinalOutputObject(output);
+            complete = true;
+
+        } catch (Exception e){
+            logger.error("Execute as JAR ERROR --> block: id="+block.getId()+", name="+block.getName()+", jobID="+block.getJobID()+ ".  Exception: "+e);
+            complete = true;
+            error    = true;
+            errorFlag[0] = true;
+        }
+    }
+
+
     private void executeNative() {
         try{
             Object output = block.executeInNative();
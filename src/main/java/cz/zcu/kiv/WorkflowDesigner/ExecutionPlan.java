@@ -0,0 +1,448 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * ExecutionPlan
+ *
+ * Immutable, validated structure of one workflow: the blocks with their resolved classes and @BlockType values in
+ * topological order and the WorkflowGraph of the edges between them, indexed by the block's position in the plan.
+ * The block properties are not part of the plan.
+ *
+ * Plans are cached by the structural hash of the blocks (id, type, module) and edges, so submitting the same
+ * workflow again with other property values only creates the block instances and binds the new properties.
+ **********************************************************************************************************************/
+
+public final class ExecutionPlan {
+
+    private static Log logger = LogFactory.getLog(ExecutionPlan.class);
+
+    public static final int CACHE_SIZE = 256;
+
+    private static final Map<String, ExecutionPlan> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, ExecutionPlan>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ExecutionPlan> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+    private static final AtomicLong cacheHits   = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+
+    private final String structuralHash;
+    private final BlockDescriptor[] blocks;     //in topological order
+    private final WorkflowGraph graph;          //edges in the order of the edges JSONArray, between plan indices
+    private final int[] startBlocks;            //blocks without any source block
+    private final Map<Integer, Integer> idIndex;
+
+    private ExecutionPlan(String structuralHash, BlockDescriptor[] blocks, WorkflowGraph graph,
+                          int[] startBlocks, Map<Integer, Integer> idIndex) {
+        this.structuralHash = structuralHash;
+        this.blocks = blocks;
+        this.graph = graph;
+        this.startBlocks = startBlocks;
+        this.idIndex = idIndex;
+    }
+
+    /**
+     * compile
+     * return the cached plan of this workflow structure or build, validate and cache a new one
+     * @throws FieldMismatchException   when a block type has no class or an edge uses a connector its block does not have
+     * @throws IllegalArgumentException when an edge refers to an unknown block or the blocks form a cycle
+     */
+    public static ExecutionPlan compile(JSONObject jObject, Map<Class, String> moduleSource) throws FieldMismatchException {
+        JSONArray blocksArray = jObject.getJSONArray("blocks");
+        JSONArray edgesArray  = jObject.getJSONArray("edges");
+
+        String hash = structuralHash(blocksArray, edgesArray);
+        ExecutionPlan plan = cache.get(hash);
+        if(plan != null && plan.isResolvedBy(moduleSource)){
+            cacheHits.incrementAndGet();
+            return plan;
+        }
+        cacheMisses.incrementAndGet();
+        plan = build(hash, blocksArray, edgesArray, moduleSource);
+        cache.put(hash, plan);
+        return plan;
+    }
+
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * structuralHash
+     * SHA-256 of the block ids, types, modules and of the edges, in their JSON order
+     */
+    public static String structuralHash(JSONArray blocksArray, JSONArray edgesArray) {
+        StringBuilder structure = new StringBuilder();
+        for(int i = 0; i < blocksArray.length(); i++){
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            structure.append('B').append(blockObject.getInt("id")).append('\u0000')
+                    .append(blockObject.getString("type")).append('\u0000')
+                    .append(blockObject.optString("module")).append('\n');
+        }
+        for(int i = 0; i < edgesArray.length(); i++){
+            JSONObject edge = edgesArray.getJSONObject(i);
+            structure.append('E').append(edge.getInt("block1")).append('\u0000')
+                    .append(edge.getJSONArray("connector1").getString(0)).append('\u0000')
+                    .append(edge.getInt("block2")).append('\u0000')
+                    .append(edge.getJSONArray("connector2").getString(0)).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(structure.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * isResolvedBy
+     * whether every block type of the plan resolves to the same class in moduleSource, a module deployed again
+     * has new classes for its types and needs a new plan
+     */
+    private boolean isResolvedBy(Map<Class, String> moduleSource) {
+        Map<String, Class> typeClasses = typeClasses(moduleSource);
+        for(BlockDescriptor block : blocks){
+            if(typeClasses.get(block.type) != block.blockClass) return false;
+        }
+        return true;
+    }
+
+    private static Map<String, Class> typeClasses(Map<Class, String> moduleSource) {
+        Map<String, Class> typeClasses = new HashMap<>();
+        for(Class blockClass : moduleSource.keySet()){
+            BlockType blockType = (BlockType) blockClass.getAnnotation(BlockType.class);
+            if(blockType != null) typeClasses.put(blockType.type(), blockClass);
+        }
+        return typeClasses;
+    }
+
+    private static ExecutionPlan build(String hash, JSONArray blocksArray, JSONArray edgesArray, Map<Class, String> moduleSource) throws FieldMismatchException {
+        Map<String, Class> typeClasses = typeClasses(moduleSource);
+
+        //resolve the blocks in JSON order
+        int n = blocksArray.length();
+        BlockDescriptor[] jsonBlocks = new BlockDescriptor[n];
+        Map<Integer, Integer> jsonIndex = new HashMap<>();
+        Map<Class, BlockDescriptor> classDescriptors = new HashMap<>();    //annotations are read once per class
+        for(int i = 0; i < n; i++){
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            Class blockClass = typeClasses.get(blockObject.getString("type"));
+            if(blockClass == null){
+                logger.error("No class for "+blockObject.getString("type") + " block type found");
+                throw new FieldMismatchException(blockObject.getString("type"), "block type");
+            }
+            int id = blockObject.getInt("id");
+            if(jsonIndex.put(id, i) != null)
+                throw new IllegalArgumentException("Duplicate block id "+id);
+            BlockDescriptor classDescriptor = classDescriptors.get(blockClass);
+            if(classDescriptor == null){
+                classDescriptor = new BlockDescriptor(blockClass);
+                classDescriptors.put(blockClass, classDescriptor);
+            }
+            jsonBlocks[i] = new BlockDescriptor(id, i, blockObject.getString("module"), classDescriptor);
+        }
+
+        //validate the edges, ports are kept as indices into one table of names
+        int edgesNum = edgesArray.length();
+        int[] sources = new int[edgesNum], destinations = new int[edgesNum];
+        int[] sourcePorts = new int[edgesNum], destinationPorts = new int[edgesNum];
+        Map<String, Integer> portIndex = new HashMap<>();
+        List<String> portNames = new ArrayList<>();
+        for(int i = 0; i < edgesNum; i++){
+            JSONObject edge = edgesArray.getJSONObject(i);
+            Integer source = jsonIndex.get(edge.getInt("block1"));
+            Integer destination = jsonIndex.get(edge.getInt("block2"));
+            if(source == null || destination == null)
+                throw new IllegalArgumentException("Edge "+i+" connects unknown block "+(source == null ? edge.getInt("block1") : edge.getInt("block2")));
+
+            String sourceParam = edge.getJSONArray("connector1").getString(0);
+            String destinationParam = edge.getJSONArray("connector2").getString(0);
+            if(!jsonBlocks[source].outputNames.contains(sourceParam))
+                throw new FieldMismatchException(sourceParam, "output of block "+jsonBlocks[source].id);
+            if(!jsonBlocks[destination].inputNames.contains(destinationParam))
+                throw new FieldMismatchException(destinationParam, "input of block "+jsonBlocks[destination].id);
+
+            sources[i] = source;
+            destinations[i] = destination;
+            sourcePorts[i] = portIndex(sourceParam, portIndex, portNames);
+            destinationPorts[i] = portIndex(destinationParam, portIndex, portNames);
+        }
+        WorkflowGraph jsonGraph = WorkflowGraph.build(n, sources, destinations, sourcePorts, destinationPorts,
+                portNames.toArray(new String[0]));
+
+        //topological order, blocks which are ready at the same time keep their JSON order
+        int[] order = jsonGraph.topologicalOrder();
+        if(order == null){
+            throw new IllegalArgumentException("Workflow contains a cycle through blocks "+cycleBlocks(jsonGraph, jsonBlocks));
+        }
+
+        int[] planIndex = new int[n];
+        BlockDescriptor[] blocks = new BlockDescriptor[n];
+        Map<Integer, Integer> idIndex = new HashMap<>();
+        for(int i = 0; i < n; i++){
+            planIndex[order[i]] = i;
+            blocks[i] = jsonBlocks[order[i]];
+            idIndex.put(blocks[i].id, i);
+        }
+        WorkflowGraph graph = jsonGraph.relabel(planIndex);
+
+        int startsNum = 0;
+        for(int i = 0; i < n; i++){
+            if(graph.getPredecessorsNum(i) == 0) startsNum++;
+        }
+        int[] starts = new int[startsNum];
+        for(int i = 0, k = 0; i < n; i++){
+            if(graph.getPredecessorsNum(i) == 0) starts[k++] = i;
+        }
+
+        logger.info("Compiled execution plan "+hash+" with "+n+" blocks and "+edgesNum+" edges");
+        return new ExecutionPlan(hash, blocks, graph, starts, Collections.unmodifiableMap(idIndex));
+    }
+
+    private static int portIndex(String portName, Map<String, Integer> portIndex, List<String> portNames) {
+        Integer index = portIndex.get(portName);
+        if(index == null){
+            index = portNames.size();
+            portIndex.put(portName, index);
+            portNames.add(portName);
+        }
+        return index;
+    }
+
+    /**
+     * cycleBlocks
+     * ids of the blocks left over by the topological sort, i.e. on a cycle or behind one
+     */
+    private static List<Integer> cycleBlocks(WorkflowGraph graph, BlockDescriptor[] jsonBlocks) {
+        int n = graph.getBlocksNum();
+        int[] inDegree = new int[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for(int i = 0; i < n; i++){
+            inDegree[i] = graph.getPredecessorsNum(i);
+            if(inDegree[i] == 0) queue[tail++] = i;
+        }
+        while(head < tail){
+            int current = queue[head++];
+            for(int k = 0; k < graph.getSuccessorsNum(current); k++){
+                int successor = graph.getSuccessor(current, k);
+                if(--inDegree[successor] == 0) queue[tail++] = successor;
+            }
+        }
+        List<Integer> cycle = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            if(inDegree[i] > 0) cycle.add(jsonBlocks[i].id);
+        }
+        return cycle;
+    }
+
+    public String getStructuralHash() {
+        return structuralHash;
+    }
+
+    public int getBlocksNum() {
+        return blocks.length;
+    }
+
+    public BlockDescriptor getBlock(int index) {
+        return blocks[index];
+    }
+
+    /**
+     * indexOf
+     * position of the block with the given id in the plan, -1 for an unknown id
+     */
+    public int indexOf(int blockID) {
+        Integer index = idIndex.get(blockID);
+        return index == null ? -1 : index;
+    }
+
+    public WorkflowGraph getGraph() {
+        return graph;
+    }
+
+    public int[] getStartBlocks() {
+        return startBlocks.clone();
+    }
+
+
+    /**
+     * BlockDescriptor
+     * block class and @BlockType values of one block, resolved once per plan
+     */
+    public static final class BlockDescriptor {
+        private final int id;
+        private final int jsonIndex;
+        private final Class blockClass;
+        private final String module;
+        private final String type;
+        private final String family;
+        private final String description;
+        private final boolean jarExecutable;
+        private final boolean jarRMI;
+        private final boolean parallel;
+        private final int partitions;
+        private final boolean isolated;
+        private final boolean deterministic;
+        private final Set<String> inputNames;
+        private final Set<String> outputNames;
+
+        private BlockDescriptor(Class blockClass) {
+            this.id = -1;
+            this.jsonIndex = -1;
+            this.blockClass = blockClass;
+            this.module = null;
+
+            BlockType blockType = (BlockType) blockClass.getAnnotation(BlockType.class);
+            this.type = blockType.type();
+            this.family = blockType.family();
+            this.description = blockType.description();
+            this.jarExecutable = blockType.runAsJar();
+            this.jarRMI = blockType.jarRMI();
+            this.parallel = blockType.parallel();
+            this.partitions = blockType.partitions();
+            this.isolated = blockType.isolated();
+            this.deterministic = blockType.deterministic();
+
+            Set<String> inputs = new HashSet<>();
+            Set<String> outputs = new HashSet<>();
+            for(Field f : blockClass.getDeclaredFields()){
+                if(f.getAnnotation(BlockInput.class) != null) inputs.add(f.getAnnotation(BlockInput.class).name());
+                if(f.getAnnotation(BlockOutput.class) != null) outputs.add(f.getAnnotation(BlockOutput.class).name());
+            }
+            this.inputNames = Collections.unmodifiableSet(inputs);
+            this.outputNames = Collections.unmodifiableSet(outputs);
+        }
+
+        private BlockDescriptor(int id, int jsonIndex, String module, BlockDescriptor classDescriptor) {
+            this.id = id;
+            this.jsonIndex = jsonIndex;
+            this.module = module;
+            this.blockClass = classDescriptor.blockClass;
+            this.type = classDescriptor.type;
+            this.family = classDescriptor.family;
+            this.description = classDescriptor.description;
+            this.jarExecutable = classDescriptor.jarExecutable;
+            this.jarRMI = classDescriptor.jarRMI;
+            this.parallel = classDescriptor.parallel;
+            this.partitions = classDescriptor.partitions;
+            this.isolated = classDescriptor.isolated;
+            this.deterministic = classDescriptor.deterministic;
+            this.inputNames = classDescriptor.inputNames;
+            this.outputNames = classDescriptor.outputNames;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getJsonIndex() {
+            return jsonIndex;
+        }
+
+        public Class getBlockClass() {
+            return blockClass;
+        }
+
+        public String getModule() {
+            return module;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getFamily() {
+            return family;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public boolean isJarExecutable() {
+            return jarExecutable;
+        }
+
+        public boolean isJarRMI() {
+            return jarRMI;
+        }
+
+        public boolean isParallel() {
+            return parallel;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public boolean isIsolated() {
+            return isolated;
+        }
+
+        public boolean isDeterministic() {
+            return deterministic;
+        }
+
+        public Set<String> getInputNames() {
+            return inputNames;
+        }
+
+        public Set<String> getOutputNames() {
+            return outputNames;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * FusedChannel
+ *
+ * Output RecordChannel of the first block of a fused chain. Every record written to it is passed by direct calls
+ * through the @BlockRecord methods of the fused blocks, in the writer's thread, and what is left of it is written to
+ * the output channel of the last fused block. Closing it closes that channel and completes the fused blocks.
+ **********************************************************************************************************************/
+
+public class FusedChannel<T> extends RecordChannel<T> {
+
+    private static Log logger = LogFactory.getLog(FusedChannel.class);
+
+    private final int headId;
+    private final List<BlockObservation> blocks;   //fused blocks in chain order
+    private final Method[] recordMethods;
+    private final RecordChannel<Object> tail;      //output channel of the last fused block
+
+    private BlockObservation failedBlock;
+    private String failure = "";
+    private boolean closed = false;
+
+    public FusedChannel(int headId, List<BlockObservation> blocks, RecordChannel<Object> tail) {
+        this.headId = headId;
+        this.blocks = blocks;
+        this.tail = tail;
+        this.recordMethods = new Method[blocks.size()];
+        for(int i = 0; i < recordMethods.length; i++){
+            recordMethods[i] = blocks.get(i).getRecordMethod();
+        }
+    }
+
+    @Override
+    public void write(T record) throws InterruptedException {
+        Object current = record;
+        for(int i = 0; i < recordMethods.length && current != null; i++){
+            try {
+                current = recordMethods[i].invoke(blocks.get(i).getContext(), current);
+            } catch (IllegalAccessException | InvocationTargetException e){
+                failedBlock = blocks.get(i);
+                failure = ExceptionUtils.getStackTrace(e);
+                throw new IllegalStateException("Fused block id = " + failedBlock.getId() + " failed", e);
+            }
+        }
+        if(current != null) tail.write(current);
+    }
+
+    @Override
+    public void flush() throws InterruptedException {
+        tail.flush();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if(closed) return;
+        closed = true;
+        tail.close();
+
+        for(BlockObservation block : blocks){
+            boolean error = block == failedBlock;
+            block.setComplete(true);
+            try {
+                block.updateJSON(error, error ? failure : "", "Fused into the thread of block " + headId + " \n");
+            } catch (IOException e){
+                logger.error("Error update JSON File of id = "+ block.getId()+", name = "+ block.getName()+" Block"+", in jobID "+block.getJobID(), e);
+            }
+            block.finished();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * GeneratedPlan
+ *
+ * Base class of the classes WorkflowCodeGenerator generates for the plans of compiled workflows. A generated class
+ * executes the blocks of one plan in topological order, assigning the outputs of the sources to the inputs and calling
+ * the @BlockExecute methods directly, without the reflective loop of CompiledWorkflow. Public members are accessed in
+ * plain Java; private ones through the static final method handles the generated class takes from handle(), which the
+ * JIT treats as constants. The blocks of one level, which do not depend on each other, run as branches on the
+ * executor when one is given.
+ **********************************************************************************************************************/
+
+public abstract class GeneratedPlan {
+
+    private Class[] blockClasses;
+    private String structuralHash;
+
+    /**
+     * execute
+     * execute all the blocks of the plan once
+     * @param contexts  block instances, by plan index
+     * @param returned  receives the values returned by the @BlockExecute methods, by plan index
+     * @param connector assigns the inputs the generated code does not assign itself
+     * @param executor  runs the branches of the levels with several blocks, null to run them on the calling thread
+     */
+    public abstract void execute(Object[] contexts, Object[] returned, Connector connector, Executor executor) throws Throwable;
+
+    /**
+     * executeBlock
+     * execute the block of the given plan index, the task of a branch
+     */
+    protected abstract void executeBlock(int block, Object[] contexts, Object[] returned, Connector connector) throws Throwable;
+
+    /**
+     * branch
+     * start the block on the executor
+     */
+    protected final FutureTask<Void> branch(final int block, final Object[] contexts, final Object[] returned,
+                                            final Connector connector, Executor executor) {
+        FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    executeBlock(block, contexts, returned, connector);
+                } catch (Exception | Error e){
+                    throw e;
+                } catch (Throwable t){
+                    throw new ExecutionException(t);
+                }
+                return null;
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * join
+     * wait for the branch, running it on this thread when the executor has not started it yet,
+     * so branches never wait for a busy executor
+     */
+    protected static void join(FutureTask<Void> task) throws Throwable {
+        task.run();
+        try {
+            task.get();
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            throw cause instanceof ExecutionException && cause.getCause() != null ? cause.getCause() : cause;
+        }
+    }
+
+    /**
+     * handle
+     * method handle number index of the generated class, read once by its static initializer
+     */
+    protected static MethodHandle handle(Class<?> generatedClass, int index) {
+        return ((WorkflowCodeGenerator.PlanClassLoader) generatedClass.getClassLoader()).getHandle(index);
+    }
+
+    void init(String structuralHash, Class[] blockClasses) {
+        this.structuralHash = structuralHash;
+        this.blockClasses = blockClasses;
+    }
+
+    public String getStructuralHash() {
+        return structuralHash;
+    }
+
+    public Class[] getBlockClasses() {
+        return blockClasses.clone();
+    }
+
+    /**
+     * Connector
+     * assigns the connected inputs of a block reflectively, for inputs from several sources or of other types
+     */
+    public interface Connector {
+        void connect(int block, Object[] contexts) throws IllegalAccessException;
+    }
+}
@@ -0,0 +1,378 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * JobMemoryManager
+ *
+ * Keeps the @BlockOutput values of one cumulative job which still have readers (and are at least MINIMUM_BYTES
+ * by SizeEstimator) within a heap budget. When the budget is exceeded, or the old generation is still above the usage
+ * threshold after a collection, the least recently produced or read outputs are serialized to a scratch directory and
+ * their fields cleared. BlockObservation.connectIO reads them through read, which loads a spilled value back.
+ * A value is written once: it is not modified by its readers, so spilling it again only clears the field.
+ * Values which are not Serializable stay in memory. close deletes the spill files.
+ * The usage threshold of the old generation is shared by the managers of all the jobs in the JVM (UsageThreshold).
+ **********************************************************************************************************************/
+
+public class JobMemoryManager implements Closeable {
+
+    private static Log logger = LogFactory.getLog(JobMemoryManager.class);
+
+    public static final long MINIMUM_BYTES = 1024 * 1024;   //smaller outputs are never spilled
+    public static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final long budget;                     //estimated bytes of outputs kept in memory, 0 for no budget
+    private final LinkedHashMap<String, SpillableOutput> inMemory = new LinkedHashMap<>(16, 0.75f, true); //coldest first
+    private final Map<String, SpillableOutput> spilled = new HashMap<>();
+    private long inMemoryBytes = 0;
+
+    private long spilledOutputs  = 0;
+    private long reloadedOutputs = 0;
+    private long writtenBytes    = 0;
+
+    private boolean listening = false;             //registered with the shared UsageThreshold
+
+    /**
+     * @param directory       scratch directory of the spill files
+     * @param budget          estimated bytes of outputs kept in memory, 0 for no budget
+     * @param usageThreshold  fraction of the maximum old generation size still used after a collection at which
+     *                        outputs are spilled, 0 to not listen
+     */
+    public JobMemoryManager(File directory, long budget, double usageThreshold) {
+        this.directory = directory;
+        this.budget = budget;
+        directory.mkdirs();
+        if(usageThreshold > 0) listening = UsageThreshold.register(this, usageThreshold);
+    }
+
+    /**
+     * spillHalf
+     * the old generation is still above the threshold of this job after a collection, spill the colder half of
+     * the outputs; returns the estimated bytes spilled
+     */
+    synchronized long spillHalf() {
+        long before = inMemoryBytes;
+        logger.info("Heap usage threshold exceeded, spilling block outputs of " + inMemoryBytes + " bytes to half");
+        spillTo(inMemoryBytes / 2, null);
+        return before - inMemoryBytes;
+    }
+
+    /**
+     * register
+     * track the output of an executed block which is still to be read, and spill outputs while over the budget
+     */
+    synchronized void register(BlockObservation block, String outputName, Field field, long bytes) {
+        if(bytes < MINIMUM_BYTES || !(readField(block, field) instanceof Serializable)) return;
+
+        inMemory.put(key(block, outputName), new SpillableOutput(block, outputName, field, bytes));
+        inMemoryBytes += bytes;
+        if(budget > 0) spillTo(budget, null);
+    }
+
+    /**
+     * read
+     * value of the output, loaded back first if it is spilled
+     */
+    synchronized Object read(BlockObservation block, String outputName, Field field) throws IllegalAccessException {
+        String key = key(block, outputName);
+        SpillableOutput output = spilled.remove(key);
+        if(output == null){
+            inMemory.get(key);    //most recently used
+            return field.get(block.getContext());
+        }
+
+        Object value;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(output.file), IO_BUFFER_SIZE))) {
+            value = in.readObject();
+        } catch (IOException | ClassNotFoundException e){
+            throw new IllegalStateException("Cannot load spilled output " + outputName + " of block id = " + block.getId() + " from " + output.file, e);
+        }
+        field.set(block.getContext(), value);
+        block.outputReloaded(outputName, output.bytes);
+        inMemory.put(key, output);
+        inMemoryBytes += output.bytes;
+        reloadedOutputs++;
+        logger.debug("Reloaded output " + outputName + " of block id = " + block.getId() + ", " + output.bytes + " bytes");
+
+        if(budget > 0) spillTo(budget, output);
+        return value;
+    }
+
+    /**
+     * release
+     * the output was read by all its readers and cleared, forget it and delete its spill file
+     */
+    synchronized void release(BlockObservation block, String outputName) {
+        String key = key(block, outputName);
+        SpillableOutput output = inMemory.remove(key);
+        if(output != null) inMemoryBytes -= output.bytes;
+        else output = spilled.remove(key);
+
+        if(output != null && output.file != null) FileUtils.deleteQuietly(output.file);
+    }
+
+    private void spillTo(long targetBytes, SpillableOutput keep) {
+        Iterator<SpillableOutput> coldest = inMemory.values().iterator();
+        while(inMemoryBytes > targetBytes && coldest.hasNext()){
+            SpillableOutput output = coldest.next();
+            if(output == keep) continue;
+
+            coldest.remove();
+            inMemoryBytes -= output.bytes;
+            if(spill(output)) spilled.put(key(output.block, output.outputName), output);
+        }
+    }
+
+    private boolean spill(SpillableOutput output) {
+        BlockObservation block = output.block;
+        try {
+            if(output.file == null){
+                File file = File.createTempFile("block_" + block.getId() + "_", ".spill", directory);
+                try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE))) {
+                    out.writeObject(readField(block, output.field));
+                } catch (IOException e){
+                    FileUtils.deleteQuietly(file);
+                    throw e;
+                }
+                output.file = file;
+                writtenBytes += file.length();
+            }
+            output.field.set(block.getContext(), null);
+        } catch (IOException | IllegalAccessException e){
+            logger.warn("Output " + output.outputName + " of block id = " + block.getId() + " cannot be spilled, it stays in memory", e);
+            return false;
+        }
+        block.outputSpilled(output.outputName);
+        spilledOutputs++;
+        logger.debug("Spilled output " + output.outputName + " of block id = " + block.getId() + ", " + output.bytes + " bytes");
+        return true;
+    }
+
+    private static Object readField(BlockObservation block, Field field) {
+        try {
+            return field.get(block.getContext());
+        } catch (IllegalAccessException e){
+            return null;
+        }
+    }
+
+    private static String key(BlockObservation block, String outputName) {
+        return block.getId() + ":" + outputName;
+    }
+
+    /**
+     * close
+     * stop listening to the memory pool and delete the spill files
+     */
+    @Override
+    public synchronized void close() {
+        if(listening){
+            UsageThreshold.unregister(this);
+            listening = false;
+        }
+        for(SpillableOutput output : spilled.values()){
+            FileUtils.deleteQuietly(output.file);
+        }
+        for(SpillableOutput output : inMemory.values()){
+            if(output.file != null) FileUtils.deleteQuietly(output.file);
+        }
+        spilled.clear();
+        inMemory.clear();
+        inMemoryBytes = 0;
+        directory.delete();   //only if empty
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getInMemoryBytes() {
+        return inMemoryBytes;
+    }
+
+    public synchronized long getSpilledOutputs() {
+        return spilledOutputs;
+    }
+
+    public synchronized long getReloadedOutputs() {
+        return reloadedOutputs;
+    }
+
+    public synchronized long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * UsageThreshold
+     * single owner of the collection usage threshold of the old generation and of its notification listener, shared
+     * by the managers of all the jobs. The threshold is the lowest fraction any registered manager asks for, the one
+     * the pool had before is restored when the last manager closes. A notification spills the managers whose own
+     * fraction is exceeded, the one holding the most outputs first, until the estimated excess is spilled.
+     */
+    private static final class UsageThreshold implements NotificationListener {
+
+        private static UsageThreshold shared;     //while any manager is registered, guarded by UsageThreshold.class
+
+        private final MemoryPoolMXBean pool;
+        private final long previousThreshold;
+        private final NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        private final Map<JobMemoryManager, Double> managers = new HashMap<>();
+
+        private UsageThreshold(MemoryPoolMXBean pool) {
+            this.pool = pool;
+            this.previousThreshold = pool.getCollectionUsageThreshold();
+        }
+
+        /**
+         * register
+         * listen to the threshold for the manager, false when no heap memory pool supports collection usage thresholds
+         */
+        static synchronized boolean register(JobMemoryManager manager, double usageThreshold) {
+            if(shared == null){
+                MemoryPoolMXBean oldGeneration = null;
+                for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+                    if(pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && pool.getUsage().getMax() > 0
+                            && (oldGeneration == null || pool.getUsage().getMax() > oldGeneration.getUsage().getMax()))
+                        oldGeneration = pool;
+                }
+                if(oldGeneration == null){
+                    logger.warn("No heap memory pool supports collection usage thresholds, outputs are spilled by budget only");
+                    return false;
+                }
+                shared = new UsageThreshold(oldGeneration);
+                shared.emitter.addNotificationListener(shared, null, null);
+            }
+            shared.managers.put(manager, usageThreshold);
+            shared.updateThreshold();
+            return true;
+        }
+
+        static synchronized void unregister(JobMemoryManager manager) {
+            if(shared == null || shared.managers.remove(manager) == null) return;
+            if(!shared.managers.isEmpty()){
+                shared.updateThreshold();
+                return;
+            }
+            try {
+                shared.emitter.removeNotificationListener(shared);
+            } catch (ListenerNotFoundException e){
+                //already removed
+            }
+            shared.pool.setCollectionUsageThreshold(shared.previousThreshold);
+            shared = null;
+        }
+
+        private void updateThreshold() {
+            long threshold = thresholdBytes(Collections.min(managers.values()));
+            if(threshold == pool.getCollectionUsageThreshold()) return;
+            pool.setCollectionUsageThreshold(threshold);
+            logger.info("Spill block outputs when " + pool.getName() + " is above " + threshold + " bytes after a collection");
+        }
+
+        private long thresholdBytes(double usageThreshold) {
+            return (long) (pool.getUsage().getMax() * usageThreshold);
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if(!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) return;
+            MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+            if(!pool.getName().equals(info.getPoolName())) return;
+
+            long used = info.getUsage().getUsed();
+            long excess = 0;
+            List<JobMemoryManager> exceeded = new ArrayList<>();
+            synchronized (UsageThreshold.class){
+                for(Map.Entry<JobMemoryManager, Double> manager : managers.entrySet()){
+                    long threshold = thresholdBytes(manager.getValue());
+                    if(used < threshold) continue;
+                    exceeded.add(manager.getKey());
+                    excess = Math.max(excess, used - threshold);
+                }
+            }
+            while(!exceeded.isEmpty()){
+                JobMemoryManager largest = exceeded.get(0);
+                for(JobMemoryManager manager : exceeded){
+                    if(manager.getInMemoryBytes() > largest.getInMemoryBytes()) largest = manager;
+                }
+                exceeded.remove(largest);
+                excess -= largest.spillHalf();
+                if(excess <= 0) break;
+            }
+        }
+    }
+
+    /**
+     * SpillableOutput
+     * output field of an executed block and its spill file once written
+     */
+    private static final class SpillableOutput {
+        private final BlockObservation block;
+        private final String outputName;
+        private final Field field;
+        private final long bytes;
+        private File file;
+
+        private SpillableOutput(BlockObservation block, String outputName, Field field, long bytes) {
+            this.block = block;
+            this.outputName = outputName;
+            this.field = field;
+            this.bytes = bytes;
+        }
+    }
+}
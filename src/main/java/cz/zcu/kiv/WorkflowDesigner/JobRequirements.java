@@ -0,0 +1,254 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * JobRequirements
+ *
+ * Estimated threads and memory one workflow job needs while it runs.
+ * Used by the WorkflowEngine for admission control before a job is started.
+ **********************************************************************************************************************/
+
+public class JobRequirements {
+
+    public static final long MB = 1024L * 1024L;
+
+    private int  threads;
+    private long memory;
+    private boolean continuous;
+
+    public JobRequirements(int threads, long memory, boolean continuous) {
+        this.threads = threads;
+        this.memory = memory;
+        this.continuous = continuous;
+    }
+
+    /**
+     * estimate
+     * estimate the requirements of one workflow from its blocks and edges JSON without instantiating any block.
+     *
+     * continuous workflow:  one thread for every block and every PipedOutputStream transit (see executeContinuous),
+     *                       with direct pipes only the piped outputs connected to MIX blocks still need a transit,
+     *                       and one more for every elastic piped edge into the fan-in block of a diamond
+     * cumulative workflow:  the widest level of the block graph, as only the blocks of one level can run at once
+     * one more thread is always added for the job itself, which waits for the workflow to finish.
+     *
+     * @param memoryPerBlock     heap reserved for every block executed in this JVM
+     * @param memoryPerJarBlock  memory reserved for every block forked as an external JAR
+     */
+    public static JobRequirements estimate(JSONObject jObject, Map<Class, String> moduleSource, boolean jarEnabled, boolean directPipes,
+                                           long memoryPerBlock, long memoryPerJarBlock) throws FieldMismatchException {
+        JSONArray blocksArray = jObject.getJSONArray("blocks");
+        JSONArray edgesArray  = jObject.getJSONArray("edges");
+
+        Map<String, Class> typeClasses = new HashMap<>();
+        for(Class blockClass : moduleSource.keySet()){
+            BlockType blockType = (BlockType) blockClass.getAnnotation(BlockType.class);
+            if(blockType != null) typeClasses.put(blockType.type(), blockClass);
+        }
+
+        Map<Integer, Integer> levels = new HashMap<>();
+        Map<Integer, Set<String>> pipedOutputs = new HashMap<>();
+        Map<Integer, Set<String>> channelOutputs = new HashMap<>();
+        Set<Integer> mixBlocks = new HashSet<>();
+        boolean continuous = false;
+        int transits = 0;
+        long memory = 0;
+        for(int i = 0; i < blocksArray.length(); i++){
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            Class blockClass = typeClasses.get(blockObject.getString("type"));
+            if(blockClass == null)
+                throw new FieldMismatchException(blockObject.getString("type"), "block type");
+
+            int pipeIns = 0, pipeOuts = 0, ios = 0;
+            Set<String> outputNames = new HashSet<>();
+            Set<String> channelNames = new HashSet<>();
+            for(Field f : blockClass.getDeclaredFields()){
+                BlockInput blockInput = f.getAnnotation(BlockInput.class);
+                BlockOutput blockOutput = f.getAnnotation(BlockOutput.class);
+                if(blockInput != null) ios++;
+                if(blockOutput != null) ios++;
+                boolean channel = RecordChannel.class.isAssignableFrom(f.getType());
+                if(blockInput  != null && (channel || "PipedInputStream".equals(f.getType().getSimpleName())))  pipeIns++;
+                if(blockOutput != null && channel){
+                    pipeOuts++;
+                    channelNames.add(blockOutput.name());
+                }
+                if(blockOutput != null && "PipedOutputStream".equals(f.getType().getSimpleName())){
+                    pipeOuts++;
+                    outputNames.add(blockOutput.name());
+                }
+            }
+            continuous = continuous || pipeIns + pipeOuts > 0;
+            transits += outputNames.size();  //RecordChannels do not need a transit thread
+
+            int id = blockObject.getInt("id");
+            pipedOutputs.put(id, outputNames);
+            channelOutputs.put(id, channelNames);
+            if(pipeIns + pipeOuts > 0 && pipeIns + pipeOuts != ios) mixBlocks.add(id);
+
+            BlockType blockType = (BlockType) blockClass.getAnnotation(BlockType.class);
+            boolean forked = jarEnabled && blockType.runAsJar() && pipeIns + pipeOuts == 0;
+            memory += forked ? memoryPerJarBlock : memoryPerBlock;
+
+            levels.put(id, 0);
+        }
+
+        int threads;
+        if(continuous && directPipes){
+            Set<String> mixTransits = new HashSet<>();
+            for(int i = 0; i < edgesArray.length(); i++){
+                JSONObject edge = edgesArray.getJSONObject(i);
+                Set<String> outputNames = pipedOutputs.get(edge.getInt("block1"));
+                String outputName = edge.getJSONArray("connector1").getString(0);
+                if(outputNames != null && outputNames.contains(outputName) && mixBlocks.contains(edge.getInt("block2")))
+                    mixTransits.add(edge.getInt("block1") + ":" + outputName);
+            }
+            threads = blocksArray.length() + mixTransits.size();
+        } else if(continuous){
+            threads = blocksArray.length() + transits;
+        } else {
+            threads = widestLevel(levels, edgesArray);
+        }
+        if(continuous) threads += elasticEdges(edgesArray, pipedOutputs, channelOutputs, mixBlocks);
+
+        return new JobRequirements(threads + 1, memory, continuous);
+    }
+
+    /**
+     * elasticEdges
+     * number of the piped edges into the fan-in blocks of diamonds (StreamDiamonds), each drained by its own PipeEdge
+     * task next to the blocks; like BlockWorkFlow.findDiamonds, the inputs of MIX blocks are left out
+     */
+    private static int elasticEdges(JSONArray edgesArray, Map<Integer, Set<String>> pipedOutputs,
+                                    Map<Integer, Set<String>> channelOutputs, Set<Integer> mixBlocks){
+        List<JSONObject> streamed = new ArrayList<>();
+        for(int i = 0; i < edgesArray.length(); i++){
+            JSONObject edge = edgesArray.getJSONObject(i);
+            String outputName = edge.getJSONArray("connector1").getString(0);
+            Set<String> piped    = pipedOutputs.get(edge.getInt("block1"));
+            Set<String> channels = channelOutputs.get(edge.getInt("block1"));
+            if((piped != null && piped.contains(outputName)) || (channels != null && channels.contains(outputName)))
+                streamed.add(edge);
+        }
+
+        int[] sources      = new int[streamed.size()];
+        int[] destinations = new int[streamed.size()];
+        for(int e = 0; e < streamed.size(); e++){
+            sources[e]      = streamed.get(e).getInt("block1");
+            destinations[e] = streamed.get(e).getInt("block2");
+        }
+
+        int elastic = 0;
+        for(int e : StreamDiamonds.find(sources, destinations)){
+            String outputName = streamed.get(e).getJSONArray("connector1").getString(0);
+            if(!mixBlocks.contains(destinations[e]) && pipedOutputs.get(sources[e]).contains(outputName)) elastic++;
+        }
+        return elastic;
+    }
+
+    /**
+     * widestLevel
+     * assign each block the length of the longest path leading to it and return the size of the most populated level
+     */
+    private static int widestLevel(Map<Integer, Integer> levels, JSONArray edgesArray){
+        boolean changed = true;
+        for(int pass = 0; changed && pass <= levels.size(); pass++){
+            changed = false;
+            for(int i = 0; i < edgesArray.length(); i++){
+                JSONObject edge = edgesArray.getJSONObject(i);
+                Integer sourceLevel = levels.get(edge.getInt("block1"));
+                Integer destLevel   = levels.get(edge.getInt("block2"));
+                if(sourceLevel == null || destLevel == null) continue;
+                if(destLevel <= sourceLevel){
+                    levels.put(edge.getInt("block2"), sourceLevel + 1);
+                    changed = true;
+                }
+            }
+        }
+
+        Map<Integer, Integer> levelSizes = new HashMap<>();
+        int widest = 0;
+        for(int level : levels.values()){
+            Integer size = levelSizes.get(level);
+            size = size == null ? 1 : size + 1;
+            levelSizes.put(level, size);
+            widest = Math.max(widest, size);
+        }
+        return widest;
+    }
+
+    /**
+     * forkedJvmMemory
+     * heap of a forked block JVM, read from the -Xmx of workflow.designer.vm.args (default -Xmx1G)
+     */
+    public static long forkedJvmMemory(){
+        String vmargs = System.getProperty("workflow.designer.vm.args");
+        vmargs = vmargs != null ? vmargs : "-Xmx1G";
+        for(String arg : vmargs.split("\\s+")){
+            if(!arg.startsWith("-Xmx") || arg.length() < 5) continue;
+            String size = arg.substring(4).toUpperCase();
+            long unit = 1;
+            char last = size.charAt(size.length()-1);
+            if(last == 'K') unit = 1024L;
+            else if(last == 'M') unit = MB;
+            else if(last == 'G') unit = 1024L * MB;
+            if(unit != 1) size = size.substring(0, size.length()-1);
+            try{
+                return Long.parseLong(size) * unit;
+            } catch (NumberFormatException e){
+                break;
+            }
+        }
+        return 1024L * MB;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getMemory() {
+        return memory;
+    }
+
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    @Override
+    public String toString() {
+        return "threads = " + threads + ", memory = " + memory / MB + "MB, continuous = " + continuous;
+    }
+}
@@ -0,0 +1,190 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * ModuleClassLoader
+ *
+ * Child-first class loader of one module jar, used to execute runAsJar blocks inside this JVM
+ * (BlockWorkFlow.setInProcessJars). Classes are looked up in the jar before the parent, except for the JDK and the
+ * Workflow Designer classes (annotations, BlockData, data types), which blocks and engine must share.
+ * Loaders are cached by jar path and CRC32 checksum: a jar is loaded once, a replaced jar gets a new loader and the
+ * loader of its previous version is closed.
+ * The checksum is computed again only when the size or modification time of the jar changes.
+ **********************************************************************************************************************/
+
+public class ModuleClassLoader extends URLClassLoader {
+
+    private static Log logger = LogFactory.getLog(ModuleClassLoader.class);
+
+    private static final String[] PARENT_FIRST = {"java.", "javax.", "sun.", "jdk.", "org.w3c.", "org.xml.", "cz.zcu.kiv.WorkflowDesigner."};
+
+    private static final Map<String, ModuleClassLoader> loaders = new HashMap<>();  //loader of the current version, by jar path
+    private static final Map<String, JarChecksum> checksums = new HashMap<>();      //by jar path
+
+    private final File jarFile;
+    private final long checksum;
+    private final Map<String, Map<String, Class>> packageTypes = new HashMap<>();  //block classes by package and type
+
+    private ModuleClassLoader(File jarFile, long checksum, ClassLoader parent) throws IOException {
+        super(new URL[]{jarFile.toURI().toURL()}, parent);
+        this.jarFile = jarFile;
+        this.checksum = checksum;
+    }
+
+    /**
+     * forJar
+     * the cached loader of the jar, created on the first use of the jar or of a new version of it;
+     * the loader of the previous version is closed, the classes it already loaded keep working
+     */
+    public static ModuleClassLoader forJar(File jarFile) throws IOException {
+        File jar = jarFile.getAbsoluteFile();
+        synchronized (loaders){
+            long crc = checksum(jar);
+            ModuleClassLoader loader = loaders.get(jar.getPath());
+            if(loader != null && loader.checksum == crc) return loader;
+
+            if(loader != null){
+                try {
+                    loader.close();
+                } catch (IOException e){
+                    logger.warn("Error closing the class loader of the replaced module " + jar, e);
+                }
+                logger.info("Closed the class loader of module " + jar + " (checksum " + Long.toHexString(loader.checksum) + ")");
+            }
+            loader = new ModuleClassLoader(jar, crc, ModuleClassLoader.class.getClassLoader());
+            loaders.put(jar.getPath(), loader);
+            logger.info("Loaded module " + jar + " (checksum " + Long.toHexString(crc) + ") into its class loader");
+            return loader;
+        }
+    }
+
+    /**
+     * checksum
+     * CRC32 of the jar, computed again only when its size or modification time has changed
+     */
+    static long checksum(File jarFile) throws IOException {
+        File jar = jarFile.getAbsoluteFile();
+        synchronized (checksums){
+            JarChecksum jarChecksum = checksums.get(jar.getPath());
+            if(jarChecksum == null || jarChecksum.length != jar.length() || jarChecksum.lastModified != jar.lastModified()){
+                jarChecksum = new JarChecksum(jar.length(), jar.lastModified(), FileUtils.checksumCRC32(jar));
+                checksums.put(jar.getPath(), jarChecksum);
+            }
+            return jarChecksum.crc;
+        }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        for(String prefix : PARENT_FIRST){
+            if(name.startsWith(prefix)) return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)){
+            Class<?> loaded = findLoadedClass(name);
+            if(loaded == null){
+                try {
+                    loaded = findClass(name);
+                } catch (ClassNotFoundException e){
+                    return super.loadClass(name, resolve);
+                }
+            }
+            if(resolve) resolveClass(loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * blockType
+     * block class of the given type in the package, found by the @BlockType annotation of the jar's classes
+     */
+    public Class blockType(String packageName, String typeName) throws IOException {
+        synchronized (packageTypes){
+            Map<String, Class> types = packageTypes.get(packageName);
+            if(types == null){
+                types = scanPackage(packageName);
+                packageTypes.put(packageName, types);
+            }
+            return types.get(typeName);
+        }
+    }
+
+    private Map<String, Class> scanPackage(String packageName) throws IOException {
+        Map<String, Class> types = new HashMap<>();
+        String packagePath = packageName.replace('.', '/') + "/";
+        try (JarFile jar = new JarFile(jarFile)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while(entries.hasMoreElements()){
+                String entryName = entries.nextElement().getName();
+                if(!entryName.startsWith(packagePath) || !entryName.endsWith(".class")) continue;
+
+                String className = entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+                try {
+                    Class<?> blockClass = Class.forName(className, false, this);
+                    BlockType blockType = blockClass.getAnnotation(BlockType.class);
+                    if(blockType != null) types.put(blockType.type(), blockClass);
+                } catch (ClassNotFoundException | LinkageError e){
+                    logger.debug("Skipped class " + className + " of module " + jarFile + ": " + e);
+                }
+            }
+        }
+        return types;
+    }
+
+    public File getJarFile() {
+        return jarFile;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * JarChecksum
+     * checksum of a jar with the size and modification time it was computed for
+     */
+    private static final class JarChecksum {
+        private final long length;
+        private final long lastModified;
+        private final long crc;
+
+        private JarChecksum(long length, long lastModified, long crc) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * NumericVector
+ *
+ * Vector of doubles outside of the Java heap, for large NUMBER[] block inputs and outputs: either in a direct
+ * ByteBuffer (allocate, copyOf) or in a file mapped into memory (create, map, share), in the native byte order.
+ * connectIO passes a vector to its destination blocks by reference, several sources of one input are concatenated.
+ * A mapped vector is serialized as a handle to its file (the reader maps the same file), a direct vector or one whose
+ * file was deleted (unlink) is serialized as its values.
+ **********************************************************************************************************************/
+
+public final class NumericVector implements Serializable {
+
+    public static final int DOUBLE_BYTES = 8;
+    public static final String STAGED_PREFIX = "staged_vector_";
+    public static final int MAX_LENGTH = Integer.MAX_VALUE / DOUBLE_BYTES;
+    private static final int COPY_CHUNK = 8 * 1024;    //doubles copied at once when serialized
+
+    private transient DoubleBuffer values;
+    private transient ByteBuffer buffer;
+    private transient File file;     //backing file of a mapped vector, null for a direct one
+    private int length;
+
+    private NumericVector(ByteBuffer buffer, int length, File file) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.values = this.buffer.asDoubleBuffer();
+        this.length = length;
+        this.file = file;
+    }
+
+    /**
+     * allocate
+     * direct vector of the given length filled with zeros
+     */
+    public static NumericVector allocate(int length) {
+        if(length > MAX_LENGTH) throw new IllegalArgumentException("NumericVector of " + length + " values is too long");
+        return new NumericVector(ByteBuffer.allocateDirect(length * DOUBLE_BYTES), length, null);
+    }
+
+    public static NumericVector copyOf(double[] array) {
+        NumericVector vector = allocate(array.length);
+        vector.values.put(array, 0, array.length);
+        vector.values.clear();
+        return vector;
+    }
+
+    /**
+     * create
+     * vector of the given length mapped to a new (or truncated) file
+     */
+    public static NumericVector create(File file, int length) throws IOException {
+        if(length > MAX_LENGTH) throw new IllegalArgumentException("NumericVector of " + length + " values is too long");
+        return new NumericVector(mapFile(file, length), length, file);
+    }
+
+    /**
+     * map
+     * vector of the doubles stored in an existing file
+     */
+    public static NumericVector map(File file) throws IOException {
+        long bytes = file.length();
+        if(bytes % DOUBLE_BYTES != 0 || bytes / DOUBLE_BYTES > MAX_LENGTH)
+            throw new IOException("File " + file.getAbsolutePath() + " does not hold a vector of doubles");
+        int length = (int) (bytes / DOUBLE_BYTES);
+        return new NumericVector(mapFile(file, length), length, file);
+    }
+
+    private static MappedByteBuffer mapFile(File file, int length) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength((long) length * DOUBLE_BYTES);
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) length * DOUBLE_BYTES);
+        }
+    }
+
+    /**
+     * of
+     * NUMBER[] input assembled from the components of its sources: a single vector is returned itself,
+     * otherwise vectors, double arrays, Numbers and collections of Numbers are concatenated into a direct vector
+     */
+    public static NumericVector of(List<?> components) {
+        if(components.size() == 1 && components.get(0) instanceof NumericVector) return (NumericVector) components.get(0);
+
+        int length = 0;
+        for(Object component : components){
+            length += componentLength(component);
+        }
+        NumericVector vector = allocate(length);
+        int position = 0;
+        for(Object component : components){
+            if(component instanceof NumericVector){
+                NumericVector source = (NumericVector) component;
+                vector.values.position(position);
+                vector.values.put(source.asDoubleBuffer());
+                position += source.length;
+            }
+            else if(component instanceof double[]){
+                vector.values.position(position);
+                vector.values.put((double[]) component);
+                position += ((double[]) component).length;
+            }
+            else if(component instanceof Number){
+                vector.values.put(position++, ((Number) component).doubleValue());
+            }
+            else if(component instanceof Collection){
+                for(Object value : (Collection) component){
+                    vector.values.put(position++, ((Number) value).doubleValue());
+                }
+            }
+        }
+        vector.values.clear();
+        return vector;
+    }
+
+    private static int componentLength(Object component) {
+        if(component == null) return 0;
+        if(component instanceof NumericVector) return ((NumericVector) component).length;
+        if(component instanceof double[]) return ((double[]) component).length;
+        if(component instanceof Number) return 1;
+        if(component instanceof Collection) return ((Collection) component).size();
+        throw new IllegalArgumentException("Cannot convert " + component.getClass().getName() + " to a NumericVector");
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public double get(int index) {
+        return values.get(index);
+    }
+
+    public void set(int index, double value) {
+        values.put(index, value);
+    }
+
+    /**
+     * asDoubleBuffer
+     * view of the values with its own position and limit
+     */
+    public DoubleBuffer asDoubleBuffer() {
+        return values.duplicate();
+    }
+
+    public double[] toArray() {
+        double[] array = new double[length];
+        asDoubleBuffer().get(array);
+        return array;
+    }
+
+    /**
+     * share
+     * this vector mapped to the given file, so it is serialized as a handle; a mapped vector is returned itself
+     */
+    public NumericVector share(File file) throws IOException {
+        if(isMapped()) return this;
+        NumericVector shared = create(file, length);
+        shared.values.put(asDoubleBuffer());
+        shared.values.clear();
+        return shared;
+    }
+
+    /**
+     * unlink
+     * delete the backing file of a mapped vector, the mapping itself stays valid on POSIX systems;
+     * from now on the vector is serialized as its values
+     */
+    public void unlink() {
+        if(file != null && FileUtils.deleteQuietly(file)) file = null;
+    }
+
+    /**
+     * stage
+     * a direct vector is replaced by a copy mapped to a new file in the directory, so it crosses a JVM boundary
+     * as a handle; the created file is added to staged
+     */
+    static Object stage(Object value, File directory, List<File> staged) throws IOException {
+        if(!(value instanceof NumericVector) || ((NumericVector) value).isMapped()) return value;
+        File file = File.createTempFile(STAGED_PREFIX, ".vec", directory);
+        staged.add(file);
+        return ((NumericVector) value).share(file);
+    }
+
+    static void stageAll(Map<String, Object> values, File directory, List<File> staged) throws IOException {
+        for(Map.Entry<String, Object> value : values.entrySet()){
+            value.setValue(stage(value.getValue(), directory, staged));
+        }
+    }
+
+    /**
+     * unlinkStaged
+     * unlink a vector received through a file created by stage, the receiver owns it from now on
+     */
+    static void unlinkStaged(Object value) {
+        if(value instanceof NumericVector && ((NumericVector) value).isMapped()
+                && ((NumericVector) value).getFile().getName().startsWith(STAGED_PREFIX))
+            ((NumericVector) value).unlink();
+    }
+
+    public boolean isMapped() {
+        return file != null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        boolean handle = file != null && file.exists();
+        out.writeBoolean(handle);
+        if(handle){
+            ((MappedByteBuffer) buffer).force();
+            out.writeUTF(file.getAbsolutePath());
+            return;
+        }
+        DoubleBuffer source = asDoubleBuffer();
+        ByteBuffer chunk = ByteBuffer.allocate(COPY_CHUNK * DOUBLE_BYTES).order(ByteOrder.nativeOrder());
+        while(source.hasRemaining()){
+            int doubles = Math.min(COPY_CHUNK, source.remaining());
+            DoubleBuffer slice = source.duplicate();
+            slice.limit(slice.position() + doubles);
+            chunk.asDoubleBuffer().put(slice);
+            source.position(source.position() + doubles);
+            out.write(chunk.array(), 0, doubles * DOUBLE_BYTES);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if(in.readBoolean()){
+            file = new File(in.readUTF());
+            buffer = mapFile(file, length).order(ByteOrder.nativeOrder());
+            values = buffer.asDoubleBuffer();
+            return;
+        }
+        buffer = ByteBuffer.allocateDirect(length * DOUBLE_BYTES).order(ByteOrder.nativeOrder());
+        values = buffer.asDoubleBuffer();
+        byte[] chunk = new byte[COPY_CHUNK * DOUBLE_BYTES];
+        int remaining = length * DOUBLE_BYTES;
+        while(remaining > 0){
+            int bytes = Math.min(chunk.length, remaining);
+            in.readFully(chunk, 0, bytes);
+            buffer.put(chunk, 0, bytes);
+            remaining -= bytes;
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "NumericVector[" + length + (file != null ? ", " + file.getName() : "") + "]";
+    }
+}
@@ -0,0 +1,260 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * PipeEdge
+ *
+ * One piped edge of a continuous workflow, written by the PipeTransitThread or PipeFanOut of the source output and
+ * passing the stream on to the input transit of the destination block. It records when its writer last wrote and
+ * whether a write is blocked on the destination's full pipe, which the StallDetector reports.
+ * An elastic edge (the inputs of a diamond's fan-in block, see StreamDiamonds) never blocks its writer: the stream is
+ * queued in a SpillBuffer, in memory up to the threshold and then in a spill file, and its own thread (run) drains
+ * the queue into the destination as fast as the destination block reads it.
+ **********************************************************************************************************************/
+
+public class PipeEdge extends PipedOutputStream implements Runnable {
+
+    private static Log logger = LogFactory.getLog(PipeEdge.class);
+
+    private final String name;
+    private final PipedOutputStream target;   //input transit of the destination block
+    private final PipedInputStream reader;    //@BlockInput read by the destination block, null if unknown
+    private final boolean elastic;
+    private final SpillBuffer queue;          //stream of an elastic edge written and not delivered yet, also its lock
+
+    private volatile long writeStarted = 0;   //start of the write blocked on the target, 0 when none is pending
+    private volatile long lastWrite = System.currentTimeMillis();
+    private volatile long bytes = 0;
+    private volatile boolean closed = false;
+
+    private volatile long bufferedBytes = 0;
+    private long peakBufferedBytes = 0;
+    private boolean spilled = false;
+    private IOException drainError;
+
+    public PipeEdge(String name, PipedOutputStream target, PipedInputStream reader) {
+        this(name, target, reader, false, 0, null);
+    }
+
+    /**
+     * Constructor of an elastic edge
+     * @param memoryThreshold bytes queued in memory before the stream is spilled to file
+     * @param filePrefix      prefix of the spill file
+     */
+    public PipeEdge(String name, PipedOutputStream target, PipedInputStream reader, int memoryThreshold, String filePrefix) {
+        this(name, target, reader, true, memoryThreshold, filePrefix);
+    }
+
+    private PipeEdge(String name, PipedOutputStream target, PipedInputStream reader, boolean elastic, int memoryThreshold, String filePrefix) {
+        this.name = name;
+        this.target = target;
+        this.reader = reader;
+        this.elastic = elastic;
+        this.queue = elastic ? new SpillBuffer(memoryThreshold, filePrefix) : null;
+    }
+
+    @Override
+    public void connect(PipedInputStream snk) throws IOException {
+        throw new IOException("PipeEdge " + name + " is already connected to its destination");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(closed) throw new IOException("PipeEdge " + name + " is closed");
+        if(len == 0) return;
+
+        if(elastic){
+            enqueue(b, off, len);
+        }
+        else {
+            writeStarted = System.currentTimeMillis();
+            try {
+                target.write(b, off, len);
+            } finally {
+                writeStarted = 0;
+            }
+        }
+        bytes += len;
+        lastWrite = System.currentTimeMillis();
+    }
+
+    private void enqueue(byte[] b, int off, int len) throws IOException {
+        synchronized (queue){
+            if(drainError != null) throw new IOException("PipeEdge " + name + " cannot deliver its stream", drainError);
+
+            queue.write(b, off, len);
+            if(!spilled && queue.isSpilled()){
+                spilled = true;
+                logger.info("Edge " + name + " spills its stream to a temp file");
+            }
+            bufferedBytes += len;
+            peakBufferedBytes = Math.max(peakBufferedBytes, bufferedBytes);
+            queue.notifyAll();
+        }
+    }
+
+    /**
+     * run
+     * drain thread of an elastic edge: delivers the queued stream to the destination and closes it at the end
+     */
+    @Override
+    public void run() {
+        if(!elastic) return;
+
+        byte[] chunk = new byte[SpillBuffer.IO_BUFFER_SIZE];
+        try {
+            while(true){
+                int n;
+                boolean drained;
+                synchronized (queue){
+                    while(queue.size() == 0 && !closed) queue.wait();
+                    if(queue.size() == 0) break;
+
+                    n = queue.read(chunk, 0, chunk.length);
+                    bufferedBytes -= n;
+                    drained = queue.size() == 0;
+                }
+                writeStarted = System.currentTimeMillis();
+                try {
+                    target.write(chunk, 0, n);
+                    if(drained) target.flush();
+                } finally {
+                    writeStarted = 0;
+                }
+            }
+            target.close();
+            logger.info("Edge " + name + " delivered " + bytes + " bytes, at most " + peakBufferedBytes + " buffered");
+        } catch (IOException e){
+            synchronized (queue){
+                drainError = e;
+            }
+            logger.error("Edge " + name + " cannot deliver its stream", e);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        } finally {
+            dropQueue();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(!elastic) target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(elastic){
+            synchronized (queue){
+                closed = true;
+                queue.notifyAll();
+            }
+            return;
+        }
+        if(closed) return;
+        closed = true;
+        target.close();
+    }
+
+    /**
+     * dropQueue
+     * release the rest of the queue the drain thread does not deliver and delete its spill file
+     */
+    private void dropQueue() {
+        synchronized (queue){
+            try {
+                queue.close();
+            } catch (IOException e){
+                logger.debug("Error deleting the spill file of edge " + name, e);
+            }
+            bufferedBytes = 0;
+        }
+    }
+
+    /**
+     * isFull
+     * whether the writer has been blocked on the destination's full pipe for at least thresholdMillis,
+     * never for an elastic edge whose writer does not wait for the destination
+     */
+    public boolean isFull(long now, long thresholdMillis) {
+        long started = writeStarted;
+        return !elastic && started != 0 && now - started >= thresholdMillis;
+    }
+
+    /**
+     * isEmpty
+     * whether the destination has had nothing to read from this open edge for at least thresholdMillis
+     */
+    public boolean isEmpty(long now, long thresholdMillis) {
+        if(closed || writeStarted != 0 || bufferedBytes != 0 || now - lastWrite < thresholdMillis) return false;
+        try {
+            return reader == null || reader.available() == 0;
+        } catch (IOException e){
+            return false;    //the destination closed its input
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isElastic() {
+        return elastic;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public long getPeakBufferedBytes() {
+        if(!elastic) return 0;
+        synchronized (queue){
+            return peakBufferedBytes;
+        }
+    }
+
+    /**
+     * isSpilled
+     * whether the queue of this elastic edge has spilled to file at some point
+     */
+    public boolean isSpilled() {
+        if(!elastic) return false;
+        synchronized (queue){
+            return spilled;
+        }
+    }
+}
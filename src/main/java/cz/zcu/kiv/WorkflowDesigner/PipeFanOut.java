@@ -0,0 +1,79 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * PipeFanOut
+ *
+ * PipedOutputStream put in place of a block's @BlockOutput when the workflow runs with direct pipes.
+ * Everything the block writes goes straight into the piped inputs of all its destination blocks
+ * from the block's own thread, so no PipeTransitThread is needed to copy the stream.
+ **********************************************************************************************************************/
+
+public class PipeFanOut extends PipedOutputStream {
+
+    private final List<PipedOutputStream> destinations; //connected to the destination blocks' @BlockInput PipedInputStreams
+    private boolean closed = false;
+
+    public PipeFanOut(List<PipedOutputStream> destinations) {
+        this.destinations = destinations;
+    }
+
+    @Override
+    public void connect(PipedInputStream snk) throws IOException {
+        throw new IOException("PipeFanOut is already connected to its destinations");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        for(PipedOutputStream destination : destinations){
+            destination.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for(PipedOutputStream destination : destinations){
+            destination.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for(PipedOutputStream destination : destinations){
+            destination.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed) return;
+        closed = true;
+        for(PipedOutputStream destination : destinations){
+            destination.close();
+        }
+    }
+}
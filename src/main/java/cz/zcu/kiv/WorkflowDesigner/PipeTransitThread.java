@@ -1,13 +1,11 @@
 package cz.zcu.kiv.WorkflowDesigner;
 
-import com.sun.org.apache.xpath.internal.operations.Bool;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import static cz.zcu.kiv.WorkflowDesigner.BlockObservation.MIX;
 
@@ -23,6 +21,7 @@ public class PipeTransitThread implements Runnable {
 
     private PipedInputStream pipedInTransit;                //connect to one of the source block's output (pipedOutputStream),  to read data from the output
     private List<PipedOutputStream> pipedOutTransitsList;   //connect to all its destination blocks' inputs (pipedInputStream), to write data (b) to all its destination inputs of different blocks
+    private int spillThreshold = SpillBuffer.DEFAULT_THRESHOLD; //bytes held in memory for MIX destinations before spilling to a temp file
 
 
     public PipeTransitThread(BlockObservation block, String outputName, PipedInputStream pipedInTransit, List<PipedOutputStream> pipedOutTransitsList) {
@@ -37,63 +36,41 @@ public class PipeTransitThread implements Runnable {
         logger.info(" block id: "+block.getId()+", output: "+outputName+", pipedInTransit reads this output's data, use pipedOutTransit to write byte to all its destination inputs.");
 
         try{
-            boolean MIXFlag = false;
+            List<BlockObservation> mixDestinations = new ArrayList<>();
             for(BlockObservation destBlock: block.getDestinationObservers()){
-                if ( destBlock.getBlockModel() == MIX ) {
-                    MIXFlag = true;
-                    break;
-                }
+                if ( destBlock.getBlockModel() == MIX ) mixDestinations.add(destBlock);
             }
 
-            // if some of this block's destination blocks are MIX
-            if(MIXFlag){
-                int random = (int)(Math.random()*100000);
-                String fileName = random+"_JID"+block.getJobID()+"_ID"+block.getId()+" "+block.getName()+" "+outputName+"_";
-
-                File tmpFile = File.createTempFile(fileName, ".tmp");
-
-                FileOutputStream fileOut = new FileOutputStream(tmpFile);
-
-                byte[] bytes= new byte[1];
-                while(pipedInTransit.read(bytes)!=-1){
-                    fileOut.write(bytes);
-                    fileOut.flush();
-                }
-                fileOut.close();
-                logger.info(" block id: "+block.getId()+", output: "+outputName+"all ready store data to file to avoid block");
-
-                //check all the sourceBlocks of its Destination Block is Complete
-                for(BlockObservation destBlock: block.getDestinationObservers()){
-                   if ( destBlock.checkSourcePrepared() ) {
-                       logger.error("source block error"); return;
-                   }
-                }
-
-                logger.info(" block id: "+block.getId()+", output: "+outputName+"destination prepared, ready to send stream");
-                FileInputStream fileIn = new FileInputStream(tmpFile);
-                byte[] bytes2= new byte[1];
-                while(fileIn.read(bytes2)!=-1){
-                    for(PipedOutputStream pipedOutTransit:  pipedOutTransitsList){
-                        pipedOutTransit.write(bytes2);
+            byte[] bytes = new byte[SpillBuffer.IO_BUFFER_SIZE];
+            int n;
+
+            // if some of this block's destination blocks are MIX, hold the stream back until they are ready
+            if(!mixDestinations.isEmpty()){
+                String filePrefix = "JID"+block.getJobID()+"_ID"+block.getId()+"_"+outputName+"_";
+                SpillBuffer buffer = new SpillBuffer(spillThreshold, filePrefix);
+                try {
+                    boolean prepared = false;
+                    while(!prepared && (n = pipedInTransit.read(bytes)) != -1){
+                        buffer.write(bytes, 0, n);
+                        prepared = destinationsPrepared(mixDestinations);
+                    }
+                    if(!prepared && waitDestinationsPrepared(mixDestinations)){
+                        logger.error("source block error"); return;
                     }
+                    logger.info(" block id: "+block.getId()+", output: "+outputName+" destination prepared, replay "+buffer.size()+" buffered bytes, spilled: "+buffer.isSpilled());
+                    buffer.replayTo(pipedOutTransitsList);
+                } finally {
+                    buffer.close();
                 }
-                fileIn.close();
-
-                tmpFile.deleteOnExit();
             }
 
-            // All of this blocks'destinations are PIPE
-            else {
-                int b = 0;
-                while ((b = pipedInTransit.read()) != -1) {
-
-                    for(PipedOutputStream pipedOutTransit:  pipedOutTransitsList){
-                        pipedOutTransit.write(b);
-                    }
+            // the rest of the stream goes straight to the destinations
+            while ((n = pipedInTransit.read(bytes)) != -1) {
+                for(PipedOutputStream pipedOutTransit:  pipedOutTransitsList){
+                    pipedOutTransit.write(bytes, 0, n);
                 }
             }
 
-
             pipedInTransit.close();
             for(PipedOutputStream pipedOutTransit:  pipedOutTransitsList){
                 pipedOutTransit.close();
@@ -106,5 +83,34 @@ public class PipeTransitThread implements Runnable {
         }
     }
 
+    private boolean destinationsPrepared(List<BlockObservation> destinations) {
+        for(BlockObservation destBlock: destinations){
+            if(!destBlock.isSourcePrepared()) return false;
+        }
+        return true;
+    }
 
+    // return error flag, woken by the completion of the destinations' sources instead of polling
+    private boolean waitDestinationsPrepared(List<BlockObservation> destinations) {
+        try {
+            for(BlockObservation destBlock: destinations){
+                for(BlockObservation sourceBlock: destBlock.getSourceObservables()){
+                    if(!sourceBlock.awaitFinished(block.getErrorFlag())) return true;
+                }
+            }
+        } catch (InterruptedException e){
+            logger.error(e);
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        return block.getErrorFlag()[0];
+    }
+
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
 }
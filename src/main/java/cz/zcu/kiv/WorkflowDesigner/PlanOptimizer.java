@@ -0,0 +1,215 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * PlanOptimizer
+ *
+ * Rewrites a workflow before its blocks are created (BlockWorkFlow.setOptimizePlan):
+ *  - a block is eliminated when it has outputs, its @BlockExecute method returns nothing to show and none of its
+ *    outputs reaches, directly or through other blocks, a block with a result or without outputs (a sink);
+ *  - a deterministic block (@BlockType(deterministic = true)) with outputs is merged into an earlier block of the same
+ *    class and module with the same property values and the same inputs; its destinations read the outputs of that
+ *    block instead. Merging in topological order also merges the identical blocks downstream of merged ones.
+ * The optimized workflow shares the JSON objects of the blocks it keeps; annotate reports the eliminated and merged
+ * blocks in the original blocks array after the execution.
+ **********************************************************************************************************************/
+
+public final class PlanOptimizer {
+
+    private static Log logger = LogFactory.getLog(PlanOptimizer.class);
+
+    private static final String[] RESULT_KEYS = {"error", "stderr", "stdout", "completed", "output"};
+
+    private final JSONObject workflow;
+    private final Set<Integer> eliminatedBlocks = new TreeSet<>();
+    private final Map<Integer, Integer> mergedBlocks = new TreeMap<>();    //block id to the id of the block executed instead
+    private final List<String> reports = new ArrayList<>();
+
+    public PlanOptimizer(ExecutionPlan plan, JSONObject jObject) {
+        JSONArray blocksArray = jObject.getJSONArray("blocks");
+        JSONArray edgesArray  = jObject.getJSONArray("edges");
+        WorkflowGraph graph = plan.getGraph();
+        int n = plan.getBlocksNum();
+
+        //live blocks, from the last blocks back
+        boolean[] live = new boolean[n];
+        for(int i = n - 1; i >= 0; i--){
+            ExecutionPlan.BlockDescriptor block = plan.getBlock(i);
+            live[i] = block.getOutputNames().isEmpty() || returnsResult(block.getBlockClass());
+            for(int successor : graph.getSuccessors(i)){
+                live[i] |= live[successor];
+            }
+            if(!live[i]){
+                eliminatedBlocks.add(block.getId());
+                report("Eliminated block "+block.getId()+" "+block.getType()+", its outputs reach no block with a result");
+            }
+        }
+
+        //incoming edges of each block
+        List<List<Integer>> inEdges = new ArrayList<>();
+        for(int i = 0; i < n; i++) inEdges.add(new ArrayList<Integer>());
+        for(int e = 0; e < graph.getEdgesNum(); e++) inEdges.get(graph.getEdgeDestination(e)).add(e);
+
+        int[] representative = new int[n];
+        Map<String, Integer> signatures = new HashMap<>();
+        for(int i = 0; i < n; i++){
+            representative[i] = i;
+            ExecutionPlan.BlockDescriptor block = plan.getBlock(i);
+            if(!live[i] || !block.isDeterministic() || block.getOutputNames().isEmpty()) continue;
+
+            List<String> inputs = new ArrayList<>();
+            for(int e : inEdges.get(i)){
+                inputs.add(representative[graph.getEdgeSource(e)]+"."+graph.getEdgeSourcePort(e)+">"+graph.getEdgeDestinationPort(e));
+            }
+            Collections.sort(inputs);
+            String signature = block.getBlockClass().getName()+'\u0000'+block.getModule()+'\u0000'
+                    +values(blocksArray.getJSONObject(block.getJsonIndex()))+'\u0000'+inputs;
+
+            Integer first = signatures.get(signature);
+            if(first == null){
+                signatures.put(signature, i);
+                continue;
+            }
+            representative[i] = first;
+            int firstId = plan.getBlock(first).getId();
+            mergedBlocks.put(block.getId(), firstId);
+            report("Merged block "+block.getId()+" "+block.getType()+" into block "+firstId+", same properties and inputs");
+        }
+
+        JSONArray blocks = new JSONArray();
+        for(int j = 0; j < blocksArray.length(); j++){
+            int id = blocksArray.getJSONObject(j).getInt("id");
+            if(!eliminatedBlocks.contains(id) && !mergedBlocks.containsKey(id)) blocks.put(blocksArray.getJSONObject(j));
+        }
+        JSONArray edges = new JSONArray();
+        for(int e = 0; e < edgesArray.length(); e++){
+            JSONObject edge = edgesArray.getJSONObject(e);
+            int destination = edge.getInt("block2");
+            if(eliminatedBlocks.contains(destination) || mergedBlocks.containsKey(destination)) continue;
+
+            Integer source = mergedBlocks.get(edge.getInt("block1"));
+            if(source != null){
+                edge = new JSONObject(edge.toString());
+                edge.put("block1", source.intValue());
+            }
+            edges.put(edge);
+        }
+
+        workflow = JSONObject.getNames(jObject) == null ? new JSONObject() : new JSONObject(jObject, JSONObject.getNames(jObject));
+        workflow.put("blocks", blocks);
+        workflow.put("edges", edges);
+        if(isOptimized())
+            logger.info("Optimized plan "+plan.getStructuralHash()+": "+eliminatedBlocks.size()+" blocks eliminated, "+mergedBlocks.size()+" merged");
+    }
+
+    /**
+     * annotate
+     * mark the eliminated blocks and give the merged blocks the results of the blocks executed instead,
+     * in the blocks array of the original workflow
+     */
+    public void annotate(JSONArray blocksArray) {
+        Map<Integer, JSONObject> blockObjects = new HashMap<>();
+        for(int j = 0; j < blocksArray.length(); j++){
+            blockObjects.put(blocksArray.getJSONObject(j).getInt("id"), blocksArray.getJSONObject(j));
+        }
+        for(int id : eliminatedBlocks){
+            blockObjects.get(id).put("eliminated", true);
+        }
+        for(Map.Entry<Integer, Integer> merged : mergedBlocks.entrySet()){
+            JSONObject blockObject = blockObjects.get(merged.getKey());
+            JSONObject executed = blockObjects.get(merged.getValue());
+            for(String key : RESULT_KEYS){
+                if(executed.has(key)) blockObject.put(key, executed.get(key));
+            }
+            blockObject.put("mergedInto", merged.getValue().intValue());
+        }
+    }
+
+    private void report(String report) {
+        reports.add(report);
+        logger.info(report);
+    }
+
+    /**
+     * returnsResult
+     * whether the @BlockExecute method returns a value, shown as the output of the block
+     */
+    private static boolean returnsResult(Class blockClass) {
+        for(Method method : blockClass.getDeclaredMethods()){
+            if(method.getAnnotation(BlockExecute.class) != null) return method.getReturnType() != void.class;
+        }
+        return false;
+    }
+
+    /**
+     * values
+     * the property values of the block in a canonical order
+     */
+    private static String values(JSONObject blockObject) {
+        JSONObject values = blockObject.optJSONObject("values");
+        Map<String, String> sorted = new TreeMap<>();
+        if(values != null){
+            for(String key : values.keySet()) sorted.put(key, String.valueOf(values.get(key)));
+        }
+        return sorted.toString();
+    }
+
+    public boolean isOptimized() {
+        return !eliminatedBlocks.isEmpty() || !mergedBlocks.isEmpty();
+    }
+
+    /**
+     * getWorkflow
+     * the workflow without the eliminated and merged blocks
+     */
+    public JSONObject getWorkflow() {
+        return workflow;
+    }
+
+    public Set<Integer> getEliminatedBlocks() {
+        return Collections.unmodifiableSet(eliminatedBlocks);
+    }
+
+    public Map<Integer, Integer> getMergedBlocks() {
+        return Collections.unmodifiableMap(mergedBlocks);
+    }
+
+    public List<String> getReports() {
+        return Collections.unmodifiableList(reports);
+    }
+}
@@ -0,0 +1,85 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * RecordBatch
+ *
+ * Batch of records sent through a RecordChannel at once.
+ * The same batch is shared by all the destinations of a channel, it is read only for them and has to be
+ * released by each of them when it is consumed; once the last destination releases it, its array is given back
+ * to the writing channel and reused for the next batch.
+ **********************************************************************************************************************/
+
+public class RecordBatch<T> {
+
+    private final Object[] records;
+    private int size = 0;
+    private final AtomicInteger references = new AtomicInteger();
+    private final RecordChannel<T> owner;    //channel which reuses this batch
+
+    RecordBatch(int capacity, RecordChannel<T> owner) {
+        this.records = new Object[capacity];
+        this.owner = owner;
+    }
+
+    boolean add(T record) {
+        records[size++] = record;
+        return size == records.length;
+    }
+
+    void share(int destinations) {
+        references.set(destinations);
+    }
+
+    /**
+     * release
+     * tell the batch this destination has finished reading it
+     */
+    public void release() {
+        if(references.decrementAndGet() == 0){
+            Arrays.fill(records, 0, size, null);
+            size = 0;
+            owner.recycle(this);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if(index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return (T) records[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    int capacity() {
+        return records.length;
+    }
+}
@@ -0,0 +1,428 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * RecordChannel
+ *
+ * Typed stream of records between blocks running in the same JVM, used in continuous workflows
+ * instead of PipedOutputStream/PipedInputStream wrapped in Object streams.
+ * Records are passed by reference without serialization, in RecordBatches of batchSize records.
+ * A batch is sent once it is full or once its first record has waited lingerMillis, so a slow source
+ * does not hold its records back; the batch arrays are reused once all the destinations have released them.
+ *
+ * A @BlockOutput RecordChannel is written by its block (write, flush, close), the workflow connects it
+ * to the @BlockInput RecordChannel of every destination block, which is read by iterating over it.
+ * The end of the stream is signalled explicitly by close(), once all the writers of an input are closed
+ * its iteration ends. An input queues at most capacity batches, a writer waits while any of its
+ * destinations is full, so a slow consumer slows its producers down instead of filling the heap.
+ *
+ *     @BlockOutput(name = "pets", type = STREAM)
+ *     RecordChannel<Pet> petsOut = new RecordChannel<>();
+ *
+ *     @BlockInput(name = "pets", type = STREAM)
+ *     RecordChannel<Pet> petsIn = new RecordChannel<>();
+ *     ...
+ *     for(Pet pet : petsIn) petsOut.write(pet);
+ *     petsOut.close();
+ *
+ * Blocks handling many records at once can read whole batches instead, releasing each one when done:
+ *
+ *     RecordBatch<Pet> batch;
+ *     while((batch = petsIn.readBatch()) != null){
+ *         for(int i = 0; i < batch.size(); i++) petsOut.write(batch.get(i));
+ *         batch.release();
+ *     }
+ **********************************************************************************************************************/
+
+public class RecordChannel<T> implements Iterable<T> {
+
+    private static Log logger = LogFactory.getLog(RecordChannel.class);
+
+    public static final int  DEFAULT_BATCH_SIZE    = 64;   //records in one batch
+    public static final int  DEFAULT_CAPACITY      = 16;   //batches queued in one input
+    public static final long DEFAULT_LINGER_MILLIS = 5;    //longest time a record waits for its batch to fill, 0 waits until full
+
+    private static final RecordBatch END_OF_STREAM = new RecordBatch(0, null);
+
+    //flushes the batches of the writers which stopped writing before their batch was full
+    private static final ScheduledExecutorService lingerTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "RecordChannel-linger");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    //writer side (@BlockOutput)
+    private final List<RecordChannel<T>> destinations = new CopyOnWriteArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Queue<RecordBatch<T>> freeBatches = new ConcurrentLinkedQueue<>();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long lingerMillis = DEFAULT_LINGER_MILLIS;
+    private RecordBatch<T> writeBatch;
+    private long batchStartTime;                                                        //System.nanoTime() of the first record of writeBatch
+    private volatile ScheduledFuture<?> lingerTask;                                    //one-shot flush of writeBatch or the pending batch
+    private final Runnable lingerFlush = new Runnable() {
+        @Override
+        public void run() {
+            flushLingering();
+        }
+    };
+    private RecordBatch<T> pendingBatch;                                                //sent by the linger timer, not yet queued everywhere
+    private final List<RecordChannel<T>> pendingDestinations = new ArrayList<>();     //destinations still waiting for the pending batch
+    private boolean closed = false;
+
+    //reader side (@BlockInput)
+    private BlockingQueue<RecordBatch<T>> queue = new LinkedBlockingQueue<>(DEFAULT_CAPACITY);
+    private final AtomicInteger writers = new AtomicInteger();
+    private RecordBatch<T> readBatch;
+    private int readIndex = 0;
+    private boolean endOfStream = false;
+
+    public RecordChannel() {
+    }
+
+    public RecordChannel(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public RecordChannel(int batchSize, long lingerMillis) {
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * connect
+     * send all the records written to this channel to the destination channel as well
+     */
+    public void connect(RecordChannel<T> destination) {
+        destination.writers.incrementAndGet();
+        destinations.add(destination);
+    }
+
+    /**
+     * write
+     * add one record to the current batch, the batch is sent to the destinations once it is full
+     */
+    public void write(T record) throws InterruptedException {
+        writeLock.lock();
+        try {
+            if(closed) throw new IllegalStateException("RecordChannel is closed");
+            if(writeBatch == null) startBatch();
+            if(writeBatch.add(record)) sendBatch();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * flush
+     * send the current batch to all the destinations, waiting while one of them is full
+     */
+    public void flush() throws InterruptedException {
+        writeLock.lock();
+        try {
+            sendBatch();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * close
+     * flush the rest of the records and signal the end of this writer's stream to all the destinations
+     */
+    @SuppressWarnings("unchecked")
+    public void close() throws InterruptedException {
+        writeLock.lock();
+        try {
+            if(closed) return;
+            sendBatch();
+            closed = true;
+            cancelLinger();
+        } finally {
+            writeLock.unlock();
+        }
+        for(RecordChannel<T> destination : destinations){
+            if(destination.writers.decrementAndGet() <= 0)
+                destination.queue.put(END_OF_STREAM);
+        }
+    }
+
+    private void startBatch() {
+        writeBatch = freeBatches.poll();
+        if(writeBatch == null) writeBatch = new RecordBatch<>(batchSize, this);
+        batchStartTime = System.nanoTime();
+        if(lingerMillis > 0) scheduleLinger(TimeUnit.MILLISECONDS.toNanos(lingerMillis));
+    }
+
+    /**
+     * scheduleLinger
+     * flush the current batch once, after the given delay; nothing is scheduled while the channel has no records waiting
+     */
+    private void scheduleLinger(long delayNanos) {
+        lingerTask = lingerTimer.schedule(lingerFlush, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void cancelLinger() {
+        ScheduledFuture<?> task = lingerTask;
+        if(task != null) task.cancel(false);
+        lingerTask = null;
+    }
+
+    private void sendBatch() throws InterruptedException {
+        sendPending();
+        cancelLinger();
+        if(writeBatch == null || writeBatch.isEmpty()) return;
+        RecordBatch<T> batch = writeBatch;
+        writeBatch = null;
+        if(destinations.isEmpty()){
+            batch.share(1);
+            batch.release();
+            return;
+        }
+        batch.share(destinations.size());
+        for(RecordChannel<T> destination : destinations){
+            destination.queue.put(batch);
+        }
+    }
+
+    /**
+     * sendPending
+     * queue the batch the linger timer could not queue everywhere in the destinations still waiting for it,
+     * before any later batch so the records stay in order
+     */
+    private void sendPending() throws InterruptedException {
+        if(pendingBatch == null) return;
+        for(RecordChannel<T> destination : pendingDestinations){
+            destination.queue.put(pendingBatch);
+        }
+        pendingDestinations.clear();
+        pendingBatch = null;
+    }
+
+    /**
+     * offerPending
+     * queue the pending batch in the destinations which have room for it without waiting
+     */
+    private void offerPending() {
+        for(Iterator<RecordChannel<T>> iterator = pendingDestinations.iterator(); iterator.hasNext();){
+            if(iterator.next().queue.offer(pendingBatch)) iterator.remove();
+        }
+        if(pendingDestinations.isEmpty()) pendingBatch = null;
+    }
+
+    /**
+     * flushLingering
+     * run by the linger timer lingerMillis after a batch is started, sends the batch unless the writer has sent it.
+     * The timer is shared by all the channels and never waits: while the writer holds the channel the flush is tried
+     * again later, a batch a full destination does not accept stays pending for it until the next try or the next send
+     * of the writer
+     */
+    private void flushLingering() {
+        if(!writeLock.tryLock()){
+            scheduleLinger(TimeUnit.MILLISECONDS.toNanos(lingerMillis));
+            return;
+        }
+        try {
+            if(pendingBatch != null){
+                offerPending();
+                if(pendingBatch != null) scheduleLinger(TimeUnit.MILLISECONDS.toNanos(lingerMillis));
+                return;
+            }
+            if(writeBatch == null || writeBatch.isEmpty()) return;
+            if(System.nanoTime() - batchStartTime < TimeUnit.MILLISECONDS.toNanos(lingerMillis)) return;  //a later batch, flushed by its own task
+            RecordBatch<T> batch = writeBatch;
+            writeBatch = null;
+            if(destinations.isEmpty()){
+                batch.share(1);
+                batch.release();
+                return;
+            }
+            batch.share(destinations.size());
+            pendingBatch = batch;
+            pendingDestinations.addAll(destinations);
+            offerPending();
+            if(pendingBatch != null) scheduleLinger(TimeUnit.MILLISECONDS.toNanos(lingerMillis));
+        } catch (Exception e) {
+            logger.error("Linger flush of RecordChannel failed", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void recycle(RecordBatch<T> batch) {
+        if(batch.capacity() == batchSize) freeBatches.offer(batch);
+    }
+
+    /**
+     * closeIfUnconnected
+     * end the stream of an input nobody writes to, so its block reads an empty stream
+     */
+    @SuppressWarnings("unchecked")
+    public void closeIfUnconnected() throws InterruptedException {
+        if(writers.get() == 0) queue.put(END_OF_STREAM);
+    }
+
+    /**
+     * readBatch
+     * wait for the next batch of records, null once all the writers are closed,
+     * the batch has to be released once its records are read
+     */
+    public RecordBatch<T> readBatch() throws InterruptedException {
+        if(readBatch != null){
+            if(readIndex < readBatch.size())
+                throw new IllegalStateException("Records of the current batch are still being read one by one");
+            readBatch.release();
+            readBatch = null;
+        }
+        if(endOfStream) return null;
+        RecordBatch<T> batch = queue.take();
+        if(batch == END_OF_STREAM){
+            endOfStream = true;
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * hasNext
+     * wait until a record is available or all the writers are closed
+     */
+    public boolean hasNext() throws InterruptedException {
+        while(readBatch == null || readIndex >= readBatch.size()){
+            if(readBatch != null){
+                readBatch.release();
+                readBatch = null;
+            }
+            if(endOfStream) return false;
+            RecordBatch<T> batch = queue.take();
+            if(batch == END_OF_STREAM){
+                endOfStream = true;
+            } else {
+                readBatch = batch;
+            }
+            readIndex = 0;
+        }
+        return true;
+    }
+
+    /**
+     * read
+     * return the next record, or null once the end of the stream is reached
+     */
+    public T read() throws InterruptedException {
+        if(!hasNext()) return null;
+        return readBatch.get(readIndex++);
+    }
+
+    public boolean isEndOfStream() {
+        return endOfStream && (readBatch == null || readIndex >= readBatch.size());
+    }
+
+    /**
+     * iterator
+     * iterate over the records until the end of the stream, interruption ends the iteration with an IllegalStateException
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return RecordChannel.this.hasNext();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for records", e);
+                }
+            }
+
+            @Override
+            public T next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                return readBatch.get(readIndex++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * setBatchSize
+     * change the number of records in one batch, only before anything is written to the channel
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * setCapacity
+     * change the number of batches this input can queue, only before anything is written to it
+     */
+    public void setCapacity(int capacity) {
+        this.queue = new LinkedBlockingQueue<>(capacity);
+    }
+
+    public int getDestinationsNum() {
+        return destinations.size();
+    }
+
+    public int getWritersNum() {
+        return writers.get();
+    }
+}
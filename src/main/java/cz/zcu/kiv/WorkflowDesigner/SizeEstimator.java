@@ -0,0 +1,139 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * SizeEstimator
+ *
+ * Rough heap size of block output values, without walking arbitrary object graphs: primitive arrays, Strings,
+ * boxed numbers, Object arrays, Collections and Maps of those, and Tables are measured, any other object counts as
+ * OBJECT_BYTES. Values reached twice are counted once, except the elements of Collections and Object arrays holding
+ * boxed values of one class only, which are counted without recording each of them.
+ **********************************************************************************************************************/
+
+public final class SizeEstimator {
+
+    public static final long HEADER_BYTES    = 16;
+    public static final long REFERENCE_BYTES = 8;
+    public static final long OBJECT_BYTES    = 64;   //any object of an unknown class
+
+    private SizeEstimator() {
+    }
+
+    public static long estimate(Object value) {
+        long bytes = leafBytes(value);
+        if(bytes >= 0) return bytes;
+        return estimate(value, new IdentityHashMap<Object, Boolean>());
+    }
+
+    private static long estimate(Object value, IdentityHashMap<Object, Boolean> seen) {
+        if(value == null || seen.put(value, Boolean.TRUE) != null) return 0;
+
+        long bytes = leafBytes(value);
+        if(bytes >= 0) return bytes;
+
+        if(value instanceof Object[]){
+            long size = HEADER_BYTES + REFERENCE_BYTES * ((Object[]) value).length;
+            long boxed = boxedBytes(Arrays.asList((Object[]) value));
+            if(boxed >= 0) return size + boxed;
+            for(Object component : (Object[]) value) size += estimate(component, seen);
+            return size;
+        }
+        if(value instanceof Collection){
+            long size = 2 * HEADER_BYTES + REFERENCE_BYTES * ((Collection) value).size();
+            long boxed = boxedBytes((Collection) value);
+            if(boxed >= 0) return size + boxed;
+            for(Object component : (Collection) value) size += estimate(component, seen);
+            return size;
+        }
+        if(value instanceof Map){
+            long size = 2 * HEADER_BYTES + 4 * REFERENCE_BYTES * ((Map) value).size();
+            for(Object entry : ((Map) value).entrySet()){
+                size += estimate(((Map.Entry) entry).getKey(), seen) + estimate(((Map.Entry) entry).getValue(), seen);
+            }
+            return size;
+        }
+        if(value instanceof Table){
+            Table table = (Table) value;
+            return HEADER_BYTES + 4 * REFERENCE_BYTES + estimate(table.getCaption(), seen) + estimate(table.getColumnHeaders(), seen)
+                    + estimate(table.getRowHeaders(), seen) + estimate(table.getRows(), seen);
+        }
+        return OBJECT_BYTES;
+    }
+
+    /**
+     * leafBytes
+     * size of a value without references to other values, -1 for any other value
+     */
+    private static long leafBytes(Object value) {
+        if(value == null) return 0;
+        if(value instanceof byte[])    return HEADER_BYTES + ((byte[]) value).length;
+        if(value instanceof boolean[]) return HEADER_BYTES + ((boolean[]) value).length;
+        if(value instanceof char[])    return HEADER_BYTES + 2L * ((char[]) value).length;
+        if(value instanceof short[])   return HEADER_BYTES + 2L * ((short[]) value).length;
+        if(value instanceof int[])     return HEADER_BYTES + 4L * ((int[]) value).length;
+        if(value instanceof float[])   return HEADER_BYTES + 4L * ((float[]) value).length;
+        if(value instanceof long[])    return HEADER_BYTES + 8L * ((long[]) value).length;
+        if(value instanceof double[])  return HEADER_BYTES + 8L * ((double[]) value).length;
+
+        if(value instanceof String)    return 2 * HEADER_BYTES + 2L * ((String) value).length();
+        if(isBoxed(value.getClass())) return HEADER_BYTES + 8;
+        return -1;
+    }
+
+    /**
+     * boxedBytes
+     * size of the elements when all of them are boxed values of one class (or null), -1 otherwise;
+     * a boxed value shared by several elements is counted for each of them
+     */
+    private static long boxedBytes(Collection<?> elements) {
+        Class boxedClass = null;
+        long count = 0;
+        for(Object element : elements){
+            if(element == null) continue;
+            if(element.getClass() != boxedClass){
+                if(boxedClass != null || !isBoxed(element.getClass())) return -1;
+                boxedClass = element.getClass();
+            }
+            count++;
+        }
+        return count * (HEADER_BYTES + 8);
+    }
+
+    private static boolean isBoxed(Class valueClass) {
+        return Number.class.isAssignableFrom(valueClass) || valueClass == Boolean.class || valueClass == Character.class;
+    }
+
+    /**
+     * estimateField
+     * size of the value of one field, 0 for a field holding a primitive value itself
+     */
+    static long estimateField(Class fieldType, Object value) {
+        return fieldType.isPrimitive() ? 0 : estimate(value);
+    }
+}
@@ -0,0 +1,191 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * SpillBuffer
+ *
+ * Queue of stream bytes kept in memory up to threshold bytes and spilled to a temp file beyond, used by a
+ * PipeTransitThread to hold back the stream while its MIX destinations are not ready and by an elastic PipeEdge
+ * between its writer and its drain thread. Bytes are read in the order they were written: once the memory part is
+ * full, the following bytes go to the file until it is read completely, then the file is deleted and the memory is
+ * used again. replayTo writes everything queued to the destinations, close drops it and deletes the temp file.
+ * A SpillBuffer is not thread-safe, a writer and a reader on different threads share one lock.
+ **********************************************************************************************************************/
+
+public class SpillBuffer extends OutputStream {
+
+    public static final int DEFAULT_THRESHOLD = 8 * 1024 * 1024;   //bytes kept in memory before spilling to file
+    public static final int IO_BUFFER_SIZE    = 64 * 1024;
+
+    private final int threshold;
+    private final String filePrefix;
+
+    private byte[] memory = new byte[0];    //ring of the bytes queued in memory, grown up to threshold
+    private int memoryHead = 0;
+    private int memorySize = 0;
+
+    private File spillFile;
+    private OutputStream spillOut;
+    private InputStream spillIn;
+    private long spillWritten = 0;
+    private long spillFlushed = 0;          //bytes of the file readable through spillIn
+    private long spillRead = 0;
+
+    public SpillBuffer(int threshold, String filePrefix) {
+        this.threshold = threshold;
+        this.filePrefix = filePrefix;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(spillOut == null){
+            int inMemory = Math.max(0, Math.min(len, threshold - memorySize));
+            if(inMemory > 0){
+                ensureCapacity(memorySize + inMemory);
+                int tail = (memoryHead + memorySize) % memory.length;
+                int first = Math.min(inMemory, memory.length - tail);
+                System.arraycopy(b, off, memory, tail, first);
+                System.arraycopy(b, off + first, memory, 0, inMemory - first);
+                memorySize += inMemory;
+                off += inMemory;
+                len -= inMemory;
+            }
+            if(len == 0) return;
+            spillFile = File.createTempFile(filePrefix, ".tmp");
+            spillOut  = new BufferedOutputStream(new FileOutputStream(spillFile), IO_BUFFER_SIZE);
+            spillIn   = new FileInputStream(spillFile);
+        }
+        spillOut.write(b, off, len);
+        spillWritten += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity <= memory.length) return;
+        byte[] grown = new byte[Math.min(threshold, Math.max(capacity, Math.max(IO_BUFFER_SIZE, memory.length * 2)))];
+        int first = Math.min(memorySize, memory.length - memoryHead);
+        System.arraycopy(memory, memoryHead, grown, 0, first);
+        System.arraycopy(memory, 0, grown, first, memorySize - first);
+        memory = grown;
+        memoryHead = 0;
+    }
+
+    /**
+     * read
+     * move up to len of the oldest queued bytes to b, returns the number of bytes moved, 0 when nothing is queued
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(memorySize > 0){
+            int n = Math.min(len, memorySize);
+            int first = Math.min(n, memory.length - memoryHead);
+            System.arraycopy(memory, memoryHead, b, off, first);
+            System.arraycopy(memory, 0, b, off + first, n - first);
+            memoryHead = (memoryHead + n) % memory.length;
+            memorySize -= n;
+            return n;
+        }
+        if(spillOut == null || len == 0) return 0;
+
+        if(spillRead == spillFlushed){
+            spillOut.flush();
+            spillFlushed = spillWritten;
+        }
+        int n = spillIn.read(b, off, (int) Math.min(len, spillFlushed - spillRead));
+        if(n < 0) throw new EOFException("Spill file " + spillFile.getAbsolutePath() + " ended before its queued bytes");
+        spillRead += n;
+        if(spillRead == spillWritten) closeSpillFile();   //drained, the following bytes are queued in memory again
+        return n;
+    }
+
+    /**
+     * replayTo
+     * write everything buffered so far to all the destinations, the buffer is empty afterwards
+     */
+    public void replayTo(List<? extends OutputStream> destinations) throws IOException {
+        byte[] bytes = new byte[IO_BUFFER_SIZE];
+        int n;
+        while((n = read(bytes, 0, bytes.length)) > 0){
+            for(OutputStream destination : destinations){
+                destination.write(bytes, 0, n);
+            }
+        }
+        memory = new byte[0];
+        memoryHead = 0;
+    }
+
+    /**
+     * close
+     * drop the buffered data and delete the temp file
+     */
+    @Override
+    public void close() throws IOException {
+        memory = new byte[0];
+        memoryHead = 0;
+        memorySize = 0;
+        closeSpillFile();
+    }
+
+    private void closeSpillFile() throws IOException {
+        if(spillFile == null) return;
+        File file = spillFile;
+        spillFile = null;
+        spillWritten = spillFlushed = spillRead = 0;
+        try {
+            spillOut.close();
+        } finally {
+            spillOut = null;
+            try {
+                spillIn.close();
+            } finally {
+                spillIn = null;
+                if(file.exists() && !file.delete())
+                    throw new IOException("Cannot delete spill file " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    public long size() {
+        return memorySize + spillWritten - spillRead;
+    }
+
+    /**
+     * isSpilled
+     * whether part of the queued bytes are in the spill file
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+}
@@ -0,0 +1,84 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * StallDetector
+ *
+ * Runs periodically while a continuous workflow executes (BlockWorkFlow.setStallThreshold) and reports the piped
+ * edges which have been full (their writer blocked on the destination) or empty (their destination starved) for
+ * longer than the threshold. Each stall is reported once, when it is first seen, as a warning naming the edge.
+ **********************************************************************************************************************/
+
+public class StallDetector implements Runnable {
+
+    private static Log logger = LogFactory.getLog(StallDetector.class);
+
+    public static final String FULL  = "full";
+    public static final String EMPTY = "empty";
+
+    private final List<PipeEdge> edges;
+    private final long thresholdMillis;
+    private final long jobID;
+    private final Map<PipeEdge, String> stalls = new HashMap<>();   //current state of the stalled edges
+    private final List<String> reports = new ArrayList<>();
+
+    public StallDetector(List<PipeEdge> edges, long thresholdMillis, long jobID) {
+        this.edges = edges;
+        this.thresholdMillis = thresholdMillis;
+        this.jobID = jobID;
+    }
+
+    @Override
+    public synchronized void run() {
+        long now = System.currentTimeMillis();
+        for(PipeEdge edge : edges){
+            String state = null;
+            if(edge.isFull(now, thresholdMillis)) state = FULL;
+            else if(edge.isEmpty(now, thresholdMillis)) state = EMPTY;
+
+            if(state == null){
+                stalls.remove(edge);
+            }
+            else if(!state.equals(stalls.put(edge, state))){
+                String report = "Edge " + edge.getName() + " has been " + state + " for more than " + thresholdMillis + " ms";
+                reports.add(report);
+                logger.warn(report + ", in jobID " + jobID);
+            }
+        }
+    }
+
+    public synchronized List<String> getReports() {
+        return new ArrayList<>(reports);
+    }
+
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+}
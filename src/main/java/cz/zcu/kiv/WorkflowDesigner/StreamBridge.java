@@ -0,0 +1,312 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * StreamBridge
+ *
+ * Carries the piped @BlockInput / @BlockOutput streams of a block executed in a forked JVM (BlockWorkFlow.setForkStreams)
+ * over loopback TCP sockets, one per port. The engine side (open) listens and pumps the block's PipedInputStreams, fed
+ * by its source blocks, to the child and the child's data into the block's PipedOutputStreams, read by its destinations.
+ * The child side (connect) replaces the piped fields of its block instance by new pipes and connects one socket per
+ * port, announcing the direction and name of the port. Data is copied in BUFFER_SIZE chunks and flushed once the
+ * source has nothing more available; a slow reader blocks its writer through the pipes and the TCP window.
+ **********************************************************************************************************************/
+
+public class StreamBridge implements Closeable {
+
+    private static Log logger = LogFactory.getLog(StreamBridge.class);
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+    public static final int PIPE_SIZE   = 64 * 1024;   //buffer of the pipes of the block in the child JVM
+    public static final long ACCEPT_TIMEOUT_MILLIS = 10000; //longest wait for the connections left in the backlog by an exited child
+    private static final String INPUT  = "INPUT";
+    private static final String OUTPUT = "OUTPUT";
+
+    private final String blockName;
+    private final Map<String, PipedInputStream>  inputs  = new HashMap<>();  //engine side: ports the child reads
+    private final Map<String, PipedOutputStream> outputs = new HashMap<>();  //engine side: ports the child writes
+    private final List<Pump> inputPumps  = new ArrayList<>();
+    private final List<Pump> outputPumps = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    private StreamBridge(String blockName) {
+        this.blockName = blockName;
+    }
+
+    /**
+     * isPiped
+     * whether the field is a piped stream carried by a bridge
+     */
+    static boolean isPiped(Field f) {
+        return PipedInputStream.class.isAssignableFrom(f.getType()) || PipedOutputStream.class.isAssignableFrom(f.getType());
+    }
+
+    /**
+     * open
+     * engine side: listen on a loopback port for the connections of the child executing the block
+     */
+    public static StreamBridge open(BlockObservation block) throws IOException, IllegalAccessException {
+        final StreamBridge bridge = new StreamBridge(block.getId() + " " + block.getName());
+        for (Field f : block.getContext().getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            if (f.getAnnotation(BlockInput.class) != null && PipedInputStream.class.isAssignableFrom(f.getType()))
+                bridge.inputs.put(f.getAnnotation(BlockInput.class).name(), (PipedInputStream) f.get(block.getContext()));
+            else if (f.getAnnotation(BlockOutput.class) != null && PipedOutputStream.class.isAssignableFrom(f.getType()))
+                bridge.outputs.put(f.getAnnotation(BlockOutput.class).name(), (PipedOutputStream) f.get(block.getContext()));
+        }
+
+        bridge.serverSocket = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+        bridge.acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                bridge.accept();
+            }
+        }, "StreamBridge accept " + bridge.blockName);
+        bridge.acceptor.setDaemon(true);
+        bridge.acceptor.start();
+        logger.info("Bridging " + bridge.inputs.size() + " piped inputs and " + bridge.outputs.size() + " piped outputs of block " + bridge.blockName + " on port " + bridge.getPort());
+        return bridge;
+    }
+
+    private void accept() {
+        int expected = inputs.size() + outputs.size();
+        try {
+            for (int i = 0; i < expected; i++) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream header = new DataInputStream(socket.getInputStream());
+                String direction = header.readUTF();
+                String port = header.readUTF();
+
+                Pump pump;
+                synchronized (this) {
+                    sockets.add(socket);
+                    if (INPUT.equals(direction) && inputs.containsKey(port)) {
+                        pump = new Pump(port, inputs.get(port), socket.getOutputStream(), socket);
+                        inputPumps.add(pump);
+                    } else if (OUTPUT.equals(direction) && outputs.containsKey(port)) {
+                        pump = new Pump(port, socket.getInputStream(), outputs.remove(port), null);
+                        outputPumps.add(pump);
+                    } else {
+                        logger.warn("Block " + blockName + " has no piped " + direction.toLowerCase() + " " + port);
+                        socket.close();
+                        continue;
+                    }
+                }
+                pump.start();
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) logger.error("Error accepting the streams of block " + blockName, e);
+        }
+    }
+
+    /**
+     * connect
+     * child side: replace the piped fields of the block instance and connect them to the engine listening on the port
+     */
+    public static StreamBridge connect(Object block, int port) throws IOException, IllegalAccessException {
+        StreamBridge bridge = new StreamBridge(block.getClass().getSimpleName());
+        for (Field f : block.getClass().getDeclaredFields()) {
+            f.setAccessible(true);
+            if (f.getAnnotation(BlockInput.class) != null && PipedInputStream.class.isAssignableFrom(f.getType())) {
+                PipedInputStream pipedIn = new PipedInputStream(PIPE_SIZE);
+                PipedOutputStream feed = new PipedOutputStream(pipedIn);
+                f.set(block, pipedIn);
+                Socket socket = bridge.connectPort(port, INPUT, f.getAnnotation(BlockInput.class).name());
+                Pump pump = new Pump(f.getAnnotation(BlockInput.class).name(), socket.getInputStream(), feed, null);
+                bridge.inputPumps.add(pump);
+                pump.start();
+            } else if (f.getAnnotation(BlockOutput.class) != null && PipedOutputStream.class.isAssignableFrom(f.getType())) {
+                PipedInputStream drain = new PipedInputStream(PIPE_SIZE);
+                PipedOutputStream pipedOut = new PipedOutputStream(drain);
+                f.set(block, pipedOut);
+                bridge.outputs.put(f.getAnnotation(BlockOutput.class).name(), pipedOut);
+                Socket socket = bridge.connectPort(port, OUTPUT, f.getAnnotation(BlockOutput.class).name());
+                Pump pump = new Pump(f.getAnnotation(BlockOutput.class).name(), drain, socket.getOutputStream(), socket);
+                bridge.outputPumps.add(pump);
+                pump.start();
+            }
+        }
+        return bridge;
+    }
+
+    private Socket connectPort(int port, String direction, String name) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        sockets.add(socket);
+        DataOutputStream header = new DataOutputStream(socket.getOutputStream());
+        header.writeUTF(direction);
+        header.writeUTF(name);
+        header.flush();
+        return socket;
+    }
+
+    /**
+     * finish
+     * child side, after the block executed: close the outputs it left open and wait until they are sent
+     */
+    public void finish() throws InterruptedException {
+        for (PipedOutputStream pipedOut : outputs.values()) {
+            try {
+                pipedOut.close();
+            } catch (IOException e) {
+                //already closed by the block
+            }
+        }
+        for (Pump pump : outputPumps) {
+            pump.join();
+        }
+        close();
+    }
+
+    /**
+     * awaitOutputs
+     * engine side, after the child exited: wait until its output streams are delivered to the destination blocks,
+     * accepting first the connections the child left in the backlog of the server socket, so the pumps of all
+     * its outputs are started before they are joined
+     */
+    public void awaitOutputs() throws InterruptedException {
+        acceptor.join(ACCEPT_TIMEOUT_MILLIS);
+        if (acceptor.isAlive())
+            logger.warn("Block " + blockName + " did not connect all its piped streams within " + ACCEPT_TIMEOUT_MILLIS + " ms");
+        List<Pump> pumps;
+        synchronized (this) {
+            pumps = new ArrayList<>(outputPumps);
+        }
+        for (Pump pump : pumps) {
+            pump.join();
+        }
+    }
+
+    /**
+     * close
+     * stop listening and pumping; the outputs the child never connected are closed, so their destinations end
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing the server socket of block " + blockName, e);
+        }
+        for (Pump pump : inputPumps) {
+            pump.interrupt();      //may wait for its source block
+        }
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Error closing a stream socket of block " + blockName, e);
+            }
+        }
+        if (serverSocket != null) {
+            for (Map.Entry<String, PipedOutputStream> output : outputs.entrySet()) {
+                try {
+                    output.getValue().close();
+                } catch (IOException e) {
+                    logger.debug("Error closing piped output " + output.getKey() + " of block " + blockName, e);
+                }
+            }
+            outputs.clear();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public synchronized long getTransferredBytes() {
+        long bytes = 0;
+        for (Pump pump : inputPumps) bytes += pump.bytes;
+        for (Pump pump : outputPumps) bytes += pump.bytes;
+        return bytes;
+    }
+
+    /**
+     * Pump
+     * copies one port in bulk until its end of stream, then closes the destination (or shuts down the socket's output)
+     */
+    private static final class Pump extends Thread {
+        private final String port;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Socket socket;    //set when out is the socket's stream
+        private volatile long bytes = 0;
+
+        private Pump(String port, InputStream in, OutputStream out, Socket socket) {
+            super("StreamBridge " + port);
+            setDaemon(true);
+            this.port = port;
+            this.in = in;
+            this.out = out;
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    bytes += read;
+                    if (in.available() == 0) out.flush();
+                }
+            } catch (IOException e) {
+                //a writer which died without closing its pipe ends its stream too
+                logger.debug("Stream " + port + " ended after " + bytes + " bytes: " + e);
+            } finally {
+                try {
+                    out.flush();
+                    if (socket != null) socket.shutdownOutput();
+                    else out.close();
+                } catch (IOException e) {
+                    logger.debug("Error closing stream " + port, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * StreamDiamonds
+ *
+ * Plan-time analysis of the streamed edges (pipes and RecordChannels) of a continuous workflow. A block with two
+ * streamed inputs which are both fed, directly or through other streaming blocks, by the same upstream block closes
+ * a fan-out / fan-in diamond: if the block reads one input to its end before the other (like PetFilter), the other
+ * input's bounded pipe fills, the shared upstream block waits on it and the first input never ends. The inputs of
+ * such blocks need elastic buffers.
+ **********************************************************************************************************************/
+
+public final class StreamDiamonds {
+
+    private StreamDiamonds() {
+    }
+
+    /**
+     * find
+     * @param sources       source block id of every streamed edge
+     * @param destinations  destination block id of every streamed edge
+     * @return indices of the edges into the fan-in block of a diamond
+     */
+    public static Set<Integer> find(int[] sources, int[] destinations) {
+        Map<Integer, List<Integer>> inEdges = new HashMap<>();   //by destination block
+        for (int e = 0; e < sources.length; e++) {
+            List<Integer> edges = inEdges.get(destinations[e]);
+            if (edges == null) {
+                edges = new ArrayList<>();
+                inEdges.put(destinations[e], edges);
+            }
+            edges.add(e);
+        }
+
+        Map<Integer, BitSet> upstream = new HashMap<>();
+        Map<Integer, Integer> bits = new HashMap<>();            //bit of each block id
+        Set<Integer> diamondEdges = new TreeSet<>();
+        for (Map.Entry<Integer, List<Integer>> fanIn : inEdges.entrySet()) {
+            List<Integer> edges = fanIn.getValue();
+            if (edges.size() < 2) continue;
+
+            for (int i = 0; i < edges.size(); i++) {
+                BitSet feeding = upstreamOf(sources[edges.get(i)], inEdges, sources, upstream, bits, new BitSet());
+                for (int j = i + 1; j < edges.size(); j++) {
+                    if (feeding.intersects(upstreamOf(sources[edges.get(j)], inEdges, sources, upstream, bits, new BitSet()))) {
+                        diamondEdges.add(edges.get(i));
+                        diamondEdges.add(edges.get(j));
+                    }
+                }
+            }
+        }
+        return diamondEdges;
+    }
+
+    /**
+     * upstreamOf
+     * the block itself and all the blocks streaming into it, memoized; visiting guards against cycles
+     */
+    private static BitSet upstreamOf(int block, Map<Integer, List<Integer>> inEdges, int[] sources,
+                                     Map<Integer, BitSet> upstream, Map<Integer, Integer> bits, BitSet visiting) {
+        BitSet known = upstream.get(block);
+        if (known != null) return known;
+
+        Integer bit = bits.get(block);
+        if (bit == null) {
+            bit = bits.size();
+            bits.put(block, bit);
+        }
+        BitSet blocks = new BitSet();
+        blocks.set(bit);
+        if (visiting.get(bit)) return blocks;
+        visiting.set(bit);
+
+        List<Integer> edges = inEdges.get(block);
+        if (edges != null) {
+            for (int e : edges) {
+                blocks.or(upstreamOf(sources[e], inEdges, sources, upstream, bits, visiting));
+            }
+        }
+        upstream.put(block, blocks);
+        return blocks;
+    }
+}
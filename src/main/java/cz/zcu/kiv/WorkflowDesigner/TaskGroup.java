@@ -0,0 +1,128 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * TaskGroup
+ *
+ * The tasks of one workflow on an executor shared by many workflows (BlockWorkFlow.setBlockExecutor).
+ * Shutting the group down only stops accepting its own tasks, awaitTermination waits for them and shutdownNow
+ * interrupts them, the shared executor keeps running the tasks of the other workflows.
+ **********************************************************************************************************************/
+
+final class TaskGroup extends AbstractExecutorService {
+
+    private final Executor executor;
+    private final Set<FutureTask<Void>> tasks = new HashSet<>();   //submitted and not finished yet
+    private boolean shutdown = false;
+    private int largestSize = 0;
+
+    TaskGroup(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        FutureTask<Void> task = new FutureTask<Void>(command, null) {
+            @Override
+            protected void done() {
+                finished(this);
+            }
+        };
+        synchronized (this) {
+            if (shutdown) throw new RejectedExecutionException("Task group is shut down");
+            tasks.add(task);
+            largestSize = Math.max(largestSize, tasks.size());
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            finished(task);
+            throw e;
+        }
+    }
+
+    private synchronized void finished(FutureTask<Void> task) {
+        tasks.remove(task);
+        if (tasks.isEmpty()) notifyAll();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * shutdownNow
+     * stop accepting tasks and interrupt the running ones; the tasks still queued in the shared executor are cancelled
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<FutureTask<Void>> cancelled;
+        synchronized (this) {
+            shutdown = true;
+            cancelled = new ArrayList<>(tasks);
+        }
+        for (FutureTask<Void> task : cancelled) {
+            task.cancel(true);
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * getLargestSize
+     * the most tasks of this group running or queued at once
+     */
+    public synchronized int getLargestSize() {
+        return largestSize;
+    }
+}
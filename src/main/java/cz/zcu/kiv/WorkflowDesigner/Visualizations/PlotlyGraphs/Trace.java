@@ -25,10 +25,13 @@ package cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs;
  * This class hosts the data structure for a single trace of points/lines in a graph
  **********************************************************************************************************************/
 
+import cz.zcu.kiv.WorkflowDesigner.NumericVector;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.Serializable;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -38,6 +41,8 @@ public class Trace implements Serializable {
     GraphType graphType;
     String name;
     Marker marker;
+    NumericVector xValues, yValues;     //coordinates of a large trace, used instead of points
+
 
 
     public JSONObject toJSON() {
@@ -47,7 +52,10 @@ public class Trace implements Serializable {
         JSONArray z = new JSONArray();
         JSONArray labels = new JSONArray();
 
-        for(Point point:getPoints()){
+        if(xValues != null) putValues(x, xValues);
+        if(yValues != null) putValues(y, yValues);
+
+        for(Point point:getPoints() != null ? getPoints() : new ArrayList<Point>()){
             Coordinate coordinate = point.getCoordinate();
             if(coordinate.getX()!=null)
                 x.put(coordinate.getX());
@@ -88,6 +96,30 @@ public class Trace implements Serializable {
         return jsonObject;
     }
 
+    private static void putValues(JSONArray array, NumericVector vector) {
+        DoubleBuffer values = vector.asDoubleBuffer();
+        while(values.hasRemaining()){
+            array.put(values.get());
+        }
+    }
+
+    /**
+     * setValues
+     * x and y coordinates read straight from the vectors when exported, without Points
+     */
+    public void setValues(NumericVector xValues, NumericVector yValues) {
+        this.xValues = xValues;
+        this.yValues = yValues;
+    }
+
+    public NumericVector getXValues() {
+        return xValues;
+    }
+
+    public NumericVector getYValues() {
+        return yValues;
+    }
+
     public List<Point> getPoints() {
         return points;
     }
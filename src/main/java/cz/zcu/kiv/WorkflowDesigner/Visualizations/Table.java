@@ -1,9 +1,11 @@
 package cz.zcu.kiv.WorkflowDesigner.Visualizations;
 
+import cz.zcu.kiv.WorkflowDesigner.NumericVector;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /***********************************************************************************************************************
@@ -37,6 +39,7 @@ public class Table implements Serializable {
     private List<String> columnHeaders;
     private List<String> rowHeaders;
     private List<List<String>>rows;
+    private List<NumericVector> columns;    //numeric columns of a large table, used instead of rows
 
     public List<String> getColumnHeaders() {
         return columnHeaders ;
@@ -62,6 +65,36 @@ public class Table implements Serializable {
         this.rows = rows;
     }
 
+    public List<NumericVector> getColumns() {
+        return columns;
+    }
+
+    /**
+     * setColumns
+     * the values of the table as numeric columns, read straight from the vectors when exported
+     */
+    public void setColumns(List<NumericVector> columns) {
+        this.columns = columns;
+    }
+
+    private int rowCount() {
+        if(columns == null) return rows.size();
+        int count = 0;
+        for(NumericVector column : columns){
+            count = Math.max(count, column.length());
+        }
+        return count;
+    }
+
+    private List<String> row(int i) {
+        if(columns == null) return rows.get(i);
+        List<String> row = new ArrayList<>(columns.size());
+        for(NumericVector column : columns){
+            row.add(i < column.length() ? String.valueOf(column.get(i)) : "");
+        }
+        return row;
+    }
+
     public String getCaption() {
         return caption;
     }
@@ -95,12 +128,12 @@ public class Table implements Serializable {
             html.append("</tr>\n");
         }
 
-        for(int i=0;i<rows.size();i++){
+        for(int i=0;i<rowCount();i++){
             html.append("<tr>");
             if(hasRowHeaders){
                 html.append("<th>"+getRowHeaders().get(i)+"</th>");
             }
-            for(String col:rows.get(i)){
+            for(String col:row(i)){
                 html.append("<td>"+col+"</td>");
             }
             html.append("</tr>\n");
@@ -127,12 +160,12 @@ public class Table implements Serializable {
             data.put(headerRow);
         }
 
-        for(int i=0;i<rows.size();i++){
+        for(int i=0;i<rowCount();i++){
             JSONArray row = new JSONArray();
             if(hasRowHeaders){
                 row.put(getRowHeaders().get(i));
             }
-            for(String col:rows.get(i)){
+            for(String col:row(i)){
                 row.put(col);
             }
             data.put(row);
@@ -142,6 +175,7 @@ public class Table implements Serializable {
     }
 
     public String toCSV() {
+        if(columns!=null) return columnsToCSV();
         JSONArray rows=toJSON().getJSONArray("data");
         StringBuilder csv=new StringBuilder();
         for(int i=0;i<rows.length();i++){
@@ -154,4 +188,25 @@ public class Table implements Serializable {
         }
         return csv.toString();
     }
+
+    private String columnsToCSV() {
+        StringBuilder csv=new StringBuilder();
+        boolean hasRowHeaders = getRowHeaders()!=null&&getRowHeaders().size()>0;
+        if(getColumnHeaders()!=null&&getColumnHeaders().size()>0){
+            if(hasRowHeaders) csv.append(",");
+            for(int j=0;j<getColumnHeaders().size();j++){
+                csv.append(getColumnHeaders().get(j)).append(j<getColumnHeaders().size()-1 ? "," : "\n");
+            }
+        }
+        int rowCount = rowCount();
+        for(int i=0;i<rowCount;i++){
+            if(hasRowHeaders) csv.append(getRowHeaders().get(i)).append(",");
+            for(int j=0;j<columns.size();j++){
+                NumericVector column = columns.get(j);
+                if(i<column.length()) csv.append(column.get(i));
+                csv.append(j<columns.size()-1 ? "," : "\n");
+            }
+        }
+        return csv.toString();
+    }
 }
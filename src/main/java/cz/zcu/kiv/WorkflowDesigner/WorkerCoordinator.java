@@ -0,0 +1,185 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * WorkerCoordinator
+ *
+ * Places the cumulative blocks of BlockWorkFlows (setWorkerCoordinator) on remote WorkerNodes.
+ * A block goes to the worker with the lowest score: the blocks it is executing, minus the number of the block's
+ * sources executed on it (their outputs were produced there), the sources of FILE inputs counting FILE_LOCALITY times
+ * as their files would have to be read from another node. Ties go to the first worker.
+ * File inputs outside of the shared scratch directory are copied into it before they are sent.
+ **********************************************************************************************************************/
+
+public class WorkerCoordinator {
+
+    private static Log logger = LogFactory.getLog(WorkerCoordinator.class);
+
+    static final int FILE_LOCALITY = 2;    //weight of a source whose File output the block reads
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final File scratchDirectory;
+    private int connectTimeout = 10000;    //milliseconds
+
+    public WorkerCoordinator(String scratchDirectory) {
+        this.scratchDirectory = new File(scratchDirectory).getAbsoluteFile();
+        this.scratchDirectory.mkdirs();
+    }
+
+    public synchronized Worker addWorker(InetSocketAddress address) {
+        Worker worker = new Worker(address);
+        workers.add(worker);
+        logger.info("Added worker " + address + ", " + workers.size() + " workers");
+        return worker;
+    }
+
+    /**
+     * place
+     * choose the worker for the block with the given input values and count the block as running on it
+     */
+    synchronized Worker place(BlockObservation block, Map<String, Object> inputs) {
+        if(workers.isEmpty()) throw new IllegalStateException("No worker registered in the WorkerCoordinator");
+
+        Worker chosen = null;
+        int chosenScore = Integer.MAX_VALUE;
+        for(Worker worker : workers){
+            int score = worker.running;
+            for(Map.Entry<String, List<BlockSourceOutput>> input : block.getIOMap().entrySet()){
+                int weight = hasFile(inputs.get(input.getKey())) ? FILE_LOCALITY : 1;
+                for(BlockSourceOutput source : input.getValue()){
+                    if(source.getBlockObservation().getWorker() == worker) score -= weight;
+                }
+            }
+            if(score < chosenScore){
+                chosen = worker;
+                chosenScore = score;
+            }
+        }
+        chosen.running++;
+        return chosen;
+    }
+
+    private static boolean hasFile(Object value) {
+        if(value instanceof File) return true;
+        if(value instanceof List){
+            for(Object component : (List) value){
+                if(component instanceof File) return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void release(Worker worker) {
+        worker.running--;
+        worker.executed++;
+    }
+
+    /**
+     * execute
+     * execute the block with the given BlockData (properties and inputs) on a worker,
+     * return the BlockData with the outputs and remember the worker in the block
+     */
+    public BlockData execute(BlockObservation block, BlockData blockData) throws Exception {
+        for(Map.Entry<String, Object> input : blockData.getInput().entrySet()){
+            input.setValue(WorkerNode.stageFiles(input.getValue(), scratchDirectory, false));
+        }
+
+        Worker worker = place(block, blockData.getInput());
+        logger.info("Place block id = " + block.getId() + ", name = " + block.getName() + " on worker " + worker.address + ", in jobID " + block.getJobID());
+        try (Socket socket = new Socket()) {
+            socket.connect(worker.address, connectTimeout);
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(WorkerNode.EXECUTE);
+            out.writeUTF(block.getModule().split(":")[1]);
+            out.writeObject(blockData);
+            out.flush();
+
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            if(!in.readBoolean())
+                throw new Exception("Block " + block.getId() + " " + block.getName() + " failed on worker " + worker.address + ": " + in.readUTF());
+            block.setWorker(worker);
+            return (BlockData) in.readObject();
+        } catch (IOException e){
+            throw new IOException("Cannot execute block " + block.getId() + " " + block.getName() + " on worker " + worker.address, e);
+        } finally {
+            release(worker);
+        }
+    }
+
+    public synchronized List<Worker> getWorkers() {
+        return Collections.unmodifiableList(new ArrayList<>(workers));
+    }
+
+    public File getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Worker
+     * remote WorkerNode and the blocks placed on it
+     */
+    public static final class Worker {
+        private final InetSocketAddress address;
+        private volatile int running = 0;    //changed under the coordinator lock
+        private volatile int executed = 0;
+
+        private Worker(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public int getExecuted() {
+            return executed;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reflections.Reflections;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * WorkerNode
+ *
+ * Worker engine executing single blocks for a WorkerCoordinator over TCP.
+ * One request per connection: the coordinator writes EXECUTE, the package of the block's module and the BlockData
+ * with its properties and inputs, the worker executes the block (BlockObservation.executeBlockData) and answers
+ * true and the BlockData with the outputs, or false and the stack trace of the failure.
+ * FILE values are exchanged as paths in a scratch directory shared by the coordinator and all its workers,
+ * File outputs created elsewhere are moved into it. Workers can be started in this JVM (start), from the command
+ * line (main: port, scratch directory, slots) or as extra JVMs on this host (launchLocal).
+ **********************************************************************************************************************/
+
+public class WorkerNode implements Closeable {
+
+    private static Log logger = LogFactory.getLog(WorkerNode.class);
+
+    public static final String EXECUTE = "EXECUTE";
+    public static final String LISTENING = "WorkerNode listening on port ";
+
+    private final int port;
+    private final File scratchDirectory;
+    private final int slots;    //blocks executed at the same time
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private final Map<String, Map<String, Class>> packageTypes = new HashMap<>();   //block classes by package and type
+    private final AtomicLong executedBlocks = new AtomicLong();
+
+    public WorkerNode(int port, String scratchDirectory, int slots) {
+        this.port = port;
+        this.scratchDirectory = new File(scratchDirectory).getAbsoluteFile();
+        this.slots = slots;
+    }
+
+    /**
+     * start
+     * listen on the port (any free port if 0) and serve the requests in the background
+     */
+    public synchronized void start() throws IOException {
+        scratchDirectory.mkdirs();
+        serverSocket = new ServerSocket(port);
+        executor = Executors.newFixedThreadPool(slots);
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "WorkerNode-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        logger.info(LISTENING + getPort() + ", scratch directory " + scratchDirectory + ", " + slots + " slots");
+    }
+
+    private void accept() {
+        while(!serverSocket.isClosed()){
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (SocketException e){
+                //server socket closed
+            } catch (IOException e){
+                logger.error("Error accepting a connection on port " + getPort(), e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            String command = in.readUTF();
+            if(!EXECUTE.equals(command)) throw new IOException("Unknown command " + command);
+            String packageName = in.readUTF();
+            BlockData blockData = (BlockData) in.readObject();
+
+            try {
+                executeBlockData(packageName, blockData);
+                executedBlocks.incrementAndGet();
+                out.writeBoolean(true);
+                out.writeObject(blockData);
+            } catch (Exception e){
+                logger.error("Error executing block " + blockData.getName() + " on port " + getPort(), e);
+                out.writeBoolean(false);
+                out.writeUTF(ExceptionUtils.getStackTrace(e));
+            }
+            out.flush();
+        } catch (Exception e){
+            logger.error("Error serving a request on port " + getPort(), e);
+        } finally {
+            try { socket.close(); } catch (IOException e){ /* connection already gone */ }
+        }
+    }
+
+    private void executeBlockData(String packageName, BlockData blockData) throws Exception {
+        Class type = blockType(packageName, blockData.getName());
+        if(type == null) throw new Exception("Error Finding Annotated Class " + blockData.getName() + " in " + packageName);
+
+        BlockObservation.executeBlockData(type, blockData);
+        for(Map.Entry<String, Object> output : blockData.getOutput().entrySet()){
+            output.setValue(stageFiles(output.getValue(), scratchDirectory, true));
+        }
+        blockData.setProcessOutput(stageFiles(blockData.getProcessOutput(), scratchDirectory, true));
+    }
+
+    private Class blockType(String packageName, String typeName) {
+        synchronized (packageTypes){
+            Map<String, Class> types = packageTypes.get(packageName);
+            if(types == null){
+                types = new HashMap<>();
+                for(Class<?> blockClass : new Reflections(packageName).getTypesAnnotatedWith(BlockType.class)){
+                    types.put(blockClass.getAnnotation(BlockType.class).type(), blockClass);
+                }
+                packageTypes.put(packageName, types);
+            }
+            return types.get(typeName);
+        }
+    }
+
+    /**
+     * stageFiles
+     * make the File values (also inside Lists) available in the scratch directory: Files outside of it are
+     * moved (move = true) or copied there, other values are returned unchanged
+     */
+    static Object stageFiles(Object value, File scratchDirectory, boolean move) throws IOException {
+        if(value instanceof File){
+            File file = ((File) value).getAbsoluteFile();
+            if(!file.exists() || file.toPath().startsWith(scratchDirectory.toPath())) return value;
+
+            File staged = File.createTempFile("staged_", "_" + file.getName(), scratchDirectory);
+            if(move){
+                FileUtils.deleteQuietly(staged);
+                FileUtils.moveFile(file, staged);
+            } else
+                FileUtils.copyFile(file, staged);
+            return staged;
+        }
+        if(value instanceof List){
+            List<Object> staged = new ArrayList<>();
+            for(Object component : (List) value){
+                staged.add(stageFiles(component, scratchDirectory, move));
+            }
+            return staged;
+        }
+        return value;
+    }
+
+    /**
+     * close
+     * stop accepting requests, the requests being served are finished
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(serverSocket == null) return;
+        serverSocket.close();
+        executor.shutdown();
+    }
+
+    /**
+     * launchLocal
+     * start a worker in a new JVM on this host with the given classpath (which must contain the block classes)
+     * and wait until it listens
+     */
+    public static LocalWorker launchLocal(String classPath, String scratchDirectory, int slots) throws IOException {
+        String vmargs = System.getProperty("workflow.designer.vm.args", "-Xmx1G");
+        ProcessBuilder pb = new ProcessBuilder("java", vmargs, "-cp", classPath, WorkerNode.class.getName(),
+                "0", new File(scratchDirectory).getAbsolutePath(), String.valueOf(slots));
+        pb.redirectErrorStream(true);
+        final Process process = pb.start();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while((line = reader.readLine()) != null){
+            if(line.startsWith(LISTENING)) break;
+        }
+        if(line == null){
+            process.destroy();
+            throw new IOException("Worker JVM exited before listening");
+        }
+        int port = Integer.parseInt(line.substring(LISTENING.length()).trim());
+
+        //keep draining the worker's output so it never blocks on a full pipe
+        final BufferedReader output = reader;
+        Thread drain = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while(output.readLine() != null);
+                } catch (IOException e){
+                    //worker stopped
+                }
+            }
+        }, "WorkerNode-output-" + port);
+        drain.setDaemon(true);
+        drain.start();
+
+        return new LocalWorker(process, new InetSocketAddress("localhost", port));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        String scratchDirectory = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        int slots = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        WorkerNode workerNode = new WorkerNode(port, scratchDirectory, slots);
+        workerNode.start();
+        System.out.println(LISTENING + workerNode.getPort());
+        System.out.flush();
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress("localhost", getPort());
+    }
+
+    public File getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    public long getExecutedBlocks() {
+        return executedBlocks.get();
+    }
+
+    /**
+     * LocalWorker
+     * worker JVM started by launchLocal, close stops it
+     */
+    public static final class LocalWorker implements Closeable {
+        private final Process process;
+        private final InetSocketAddress address;
+
+        private LocalWorker(Process process, InetSocketAddress address) {
+            this.process = process;
+            this.address = address;
+        }
+
+        @Override
+        public void close() {
+            process.destroy();
+        }
+
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * WorkflowCodeGenerator
+ *
+ * Generates the Java source of a GeneratedPlan for the plan of a compiled workflow whose blocks all execute natively,
+ * compiles it in memory with the compiler of the running JDK (javax.tools) and loads it in its own class loader.
+ * The generated classes are cached by the structural hash of the plan, so compiling the same workflow again reuses its
+ * class. Without a Java compiler (a JRE) nothing is generated and the compiled workflow executes its blocks
+ * reflectively, as it does when a block would execute from its jar (BlockWorkFlow.compile).
+ **********************************************************************************************************************/
+
+public final class WorkflowCodeGenerator {
+
+    private static Log logger = LogFactory.getLog(WorkflowCodeGenerator.class);
+
+    public static final String PACKAGE = "cz.zcu.kiv.WorkflowDesigner.generated";
+    public static final int CACHE_SIZE = 256;
+
+    private static final Map<String, GeneratedPlan> cache = new LinkedHashMap<String, GeneratedPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, GeneratedPlan> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private static final AtomicLong generatedClasses = new AtomicLong();
+
+    private WorkflowCodeGenerator() {
+    }
+
+    /**
+     * generate
+     * the cached GeneratedPlan of the plan or a newly generated one, null when it cannot be generated
+     * @param bindings connected inputs of each block, as CompiledWorkflow assigns them
+     */
+    static GeneratedPlan generate(ExecutionPlan plan, Class[] blockClasses, Method[] executeMethods,
+                                  CompiledWorkflow.InputBinding[][] bindings) {
+        synchronized (cache){
+            GeneratedPlan generated = cache.get(plan.getStructuralHash());
+            if(generated != null && Arrays.equals(generated.getBlockClasses(), blockClasses)) return generated;
+
+            long start = System.currentTimeMillis();
+            try {
+                generated = compile(plan, blockClasses, executeMethods, bindings);
+            } catch (ReflectiveOperationException | IOException e){
+                logger.error("Error generating the code of plan "+plan.getStructuralHash(), e);
+                return null;
+            }
+            if(generated == null) return null;
+
+            generated.init(plan.getStructuralHash(), blockClasses.clone());
+            cache.put(plan.getStructuralHash(), generated);
+            generatedClasses.incrementAndGet();
+            logger.info("Generated "+generated.getClass().getName()+" for "+blockClasses.length+" blocks in "+(System.currentTimeMillis() - start)+" ms");
+            return generated;
+        }
+    }
+
+    private static GeneratedPlan compile(ExecutionPlan plan, Class[] blockClasses, Method[] executeMethods,
+                                         CompiledWorkflow.InputBinding[][] bindings) throws ReflectiveOperationException, IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if(compiler == null){
+            logger.warn("No Java compiler in this runtime, the blocks of plan "+plan.getStructuralHash()+" execute reflectively");
+            return null;
+        }
+
+        String simpleName = "Plan_" + plan.getStructuralHash().replaceAll("[^A-Za-z0-9]", "").substring(0, 16);
+        String className = PACKAGE + "." + simpleName;
+        List<MethodHandle> handles = new ArrayList<>();
+        String source = source(simpleName, plan.getGraph(), blockClasses, executeMethods, bindings, handles);
+        if(logger.isDebugEnabled()) logger.debug("Code of plan "+plan.getStructuralHash()+":\n"+source);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final Map<String, ByteArrayOutputStream> classFiles = new HashMap<>();
+        StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, null);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standardManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, final String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("memory:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+                        classFiles.put(name, classFile);
+                        return classFile;
+                    }
+                };
+            }
+        };
+        JavaFileObject sourceFile = new SourceFile(className, source);
+        List<String> options = Arrays.asList("-classpath", classPath(blockClasses), "-proc:none", "-nowarn");
+        boolean compiled;
+        try {
+            compiled = compiler.getTask(null, fileManager, diagnostics, options, null, Collections.singletonList(sourceFile)).call();
+        } finally {
+            fileManager.close();
+        }
+        if(!compiled){
+            logger.error("Generated code of plan "+plan.getStructuralHash()+" does not compile: "+diagnostics.getDiagnostics()+"\n"+source);
+            return null;
+        }
+
+        Map<String, byte[]> classes = new HashMap<>();
+        for(Map.Entry<String, ByteArrayOutputStream> classFile : classFiles.entrySet()){
+            classes.put(classFile.getKey(), classFile.getValue().toByteArray());
+        }
+        Set<ClassLoader> loaders = new LinkedHashSet<>();
+        for(Class blockClass : blockClasses){
+            if(blockClass.getClassLoader() != null) loaders.add(blockClass.getClassLoader());
+        }
+        loaders.add(GeneratedPlan.class.getClassLoader());
+        PlanClassLoader loader = new PlanClassLoader(classes, loaders.toArray(new ClassLoader[loaders.size()]),
+                handles.toArray(new MethodHandle[handles.size()]));
+        return loader.loadClass(className).asSubclass(GeneratedPlan.class).newInstance();
+    }
+
+    /**
+     * source
+     * the Java source of the GeneratedPlan; the method handles its static fields read are added to handles
+     */
+    static String source(String simpleName, WorkflowGraph graph, Class[] blockClasses, Method[] executeMethods,
+                         CompiledWorkflow.InputBinding[][] bindings, List<MethodHandle> handles) throws IllegalAccessException {
+        int blocksNum = blockClasses.length;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        StringBuilder blockMethods = new StringBuilder();
+        for(int i = 0; i < blocksNum; i++){
+            String owner = visibleName(blockClasses[i]);
+            blockMethods.append("\n    // ").append(blockClasses[i].getName()).append('\n')
+                    .append("    private static void block").append(i).append("(Object[] c, Object[] r, Connector connector) throws Throwable {\n")
+                    .append("        ").append(owner).append(" b = (").append(owner).append(") c[").append(i).append("];\n");
+
+            boolean direct = true;
+            for(CompiledWorkflow.InputBinding binding : bindings[i]){
+                direct &= isDirect(binding);
+            }
+            if(direct){
+                for(CompiledWorkflow.InputBinding binding : bindings[i]){
+                    Field input = binding.field;
+                    Field output = binding.sourceFields[0];
+                    String type = visibleName(input.getType());
+                    String sourceOwner = visibleName(blockClasses[binding.sources[0]]);
+                    String sourceContext = sourceOwner.equals("Object") ? "c[" + binding.sources[0] + "]"
+                            : "((" + sourceOwner + ") c[" + binding.sources[0] + "])";
+
+                    String value;
+                    if(isPlain(output)){
+                        value = "(" + type + ") " + sourceContext + "." + output.getName();
+                    }
+                    else {
+                        handles.add(lookup.unreflectGetter(output).asType(MethodType.methodType(visible(input.getType()), visible(output.getDeclaringClass()))));
+                        value = "(" + type + ") H" + (handles.size() - 1) + ".invokeExact(" + sourceContext + ")";
+                    }
+
+                    if(isPlain(input) && !Modifier.isFinal(input.getModifiers())){
+                        blockMethods.append("        b.").append(input.getName()).append(" = ").append(value).append(";\n");
+                    }
+                    else {
+                        handles.add(lookup.unreflectSetter(input).asType(MethodType.methodType(void.class, visible(input.getDeclaringClass()), visible(input.getType()))));
+                        blockMethods.append("        H").append(handles.size() - 1).append(".invokeExact(b, ").append(value).append(");\n");
+                    }
+                }
+            }
+            else {
+                blockMethods.append("        connector.connect(").append(i).append(", c);\n");
+            }
+
+            Method execute = executeMethods[i];
+            if(execute != null){
+                Class returnType = execute.getReturnType();
+                String call;
+                if(isPlain(execute) && (returnType == void.class || isVisible(returnType))){
+                    call = "b." + execute.getName() + "()";
+                }
+                else {
+                    Class visibleReturn = returnType == void.class ? void.class : visible(returnType);
+                    handles.add(lookup.unreflect(execute).asType(MethodType.methodType(visibleReturn, visible(execute.getDeclaringClass()))));
+                    call = (returnType == void.class ? "" : "(" + visibleName(returnType) + ") ") + "H" + (handles.size() - 1) + ".invokeExact(b)";
+                }
+                blockMethods.append("        ").append(returnType == void.class ? "" : "r[" + i + "] = ").append(call).append(";\n");
+            }
+            blockMethods.append("    }\n");
+        }
+
+        //blocks of the same level do not depend on each other
+        int[] level = new int[blocksNum];
+        int levels = 0;
+        for(int i = 0; i < blocksNum; i++){
+            for(int predecessor : graph.getPredecessors(i)){
+                level[i] = Math.max(level[i], level[predecessor] + 1);
+            }
+            levels = Math.max(levels, level[i] + 1);
+        }
+        StringBuilder execute = new StringBuilder();
+        for(int l = 0; l < levels; l++){
+            List<Integer> levelBlocks = new ArrayList<>();
+            for(int i = 0; i < blocksNum; i++){
+                if(level[i] == l) levelBlocks.add(i);
+            }
+            if(levelBlocks.size() == 1){
+                execute.append("        block").append(levelBlocks.get(0)).append("(c, r, connector);\n");
+                continue;
+            }
+            execute.append("        if(executor == null){\n");
+            for(int i : levelBlocks){
+                execute.append("            block").append(i).append("(c, r, connector);\n");
+            }
+            execute.append("        }\n        else {\n");
+            for(int i : levelBlocks.subList(1, levelBlocks.size())){
+                execute.append("            FutureTask<Void> t").append(i).append(" = branch(").append(i).append(", c, r, connector, executor);\n");
+            }
+            execute.append("            block").append(levelBlocks.get(0)).append("(c, r, connector);\n");
+            for(int i : levelBlocks.subList(1, levelBlocks.size())){
+                execute.append("            join(t").append(i).append(");\n");
+            }
+            execute.append("        }\n");
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n")
+                .append("import java.lang.invoke.MethodHandle;\n")
+                .append("import java.util.concurrent.Executor;\n")
+                .append("import java.util.concurrent.FutureTask;\n\n")
+                .append("public final class ").append(simpleName).append(" extends cz.zcu.kiv.WorkflowDesigner.GeneratedPlan {\n\n");
+        for(int h = 0; h < handles.size(); h++){
+            source.append("    private static final MethodHandle H").append(h).append(" = handle(").append(simpleName).append(".class, ").append(h).append(");\n");
+        }
+        source.append("\n    @Override\n")
+                .append("    public void execute(Object[] c, Object[] r, Connector connector, Executor executor) throws Throwable {\n")
+                .append(execute)
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    protected void executeBlock(int block, Object[] c, Object[] r, Connector connector) throws Throwable {\n")
+                .append("        switch(block){\n");
+        for(int i = 0; i < blocksNum; i++){
+            source.append("            case ").append(i).append(": block").append(i).append("(c, r, connector); return;\n");
+        }
+        source.append("            default: throw new IllegalArgumentException(\"No block \" + block);\n")
+                .append("        }\n    }\n")
+                .append(blockMethods)
+                .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * isDirect
+     * whether the input takes the output of its single source as it is, which the generated code assigns itself
+     */
+    private static boolean isDirect(CompiledWorkflow.InputBinding binding) {
+        return binding.sources.length == 1 && binding.sourceFields[0] != null && !binding.input.type().endsWith("[]")
+                && binding.field.getType().isAssignableFrom(binding.sourceFields[0].getType());
+    }
+
+    /**
+     * isPlain
+     * whether the generated code can access the member in plain Java
+     */
+    private static boolean isPlain(Field field) {
+        return Modifier.isPublic(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())
+                && isVisible(field.getDeclaringClass()) && isVisible(field.getType());
+    }
+
+    private static boolean isPlain(Method method) {
+        return Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers()) && isVisible(method.getDeclaringClass());
+    }
+
+    private static boolean isVisible(Class type) {
+        while(type.isArray()) type = type.getComponentType();
+        if(type.isPrimitive()) return true;
+        for(Class c = type; c != null; c = c.getEnclosingClass()){
+            if(!Modifier.isPublic(c.getModifiers())) return false;
+        }
+        return type.getCanonicalName() != null;
+    }
+
+    /**
+     * visible
+     * the type the generated code declares for a value of the given type, Object when it cannot name it
+     */
+    private static Class visible(Class type) {
+        return isVisible(type) ? type : Object.class;
+    }
+
+    private static String visibleName(Class type) {
+        return isVisible(type) ? type.getCanonicalName() : "Object";
+    }
+
+    /**
+     * classPath
+     * the locations of the block classes and of this library, the generated code is compiled against them
+     */
+    private static String classPath(Class[] blockClasses) {
+        Set<String> entries = new LinkedHashSet<>();
+        List<Class> classes = new ArrayList<>(Arrays.asList(blockClasses));
+        classes.add(GeneratedPlan.class);
+        for(Class c : classes){
+            CodeSource codeSource = c.getProtectionDomain().getCodeSource();
+            URL location = codeSource == null ? null : codeSource.getLocation();
+            if(location == null) continue;
+            try {
+                entries.add(new File(location.toURI()).getPath());
+            } catch (URISyntaxException | IllegalArgumentException e){
+                logger.debug("Class location "+location+" is not a file", e);
+            }
+        }
+        entries.addAll(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator)));
+        StringBuilder classPath = new StringBuilder();
+        for(String entry : entries){
+            if(classPath.length() > 0) classPath.append(File.pathSeparator);
+            classPath.append(entry);
+        }
+        return classPath.toString();
+    }
+
+    public static long getGeneratedClasses() {
+        return generatedClasses.get();
+    }
+
+    public static void clearCache() {
+        synchronized (cache){
+            cache.clear();
+        }
+    }
+
+    /**
+     * SourceFile
+     * generated source in memory
+     */
+    private static final class SourceFile extends SimpleJavaFileObject {
+        private final String source;
+
+        private SourceFile(String className, String source) {
+            super(URI.create("memory:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    /**
+     * PlanClassLoader
+     * defines the generated classes of one plan, resolves the block classes through their own loaders and holds
+     * the method handles of the generated class
+     */
+    static final class PlanClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+        private final ClassLoader[] loaders;
+        private final MethodHandle[] handles;
+
+        private PlanClassLoader(Map<String, byte[]> classes, ClassLoader[] loaders, MethodHandle[] handles) {
+            super(null);
+            this.classes = classes;
+            this.loaders = loaders;
+            this.handles = handles;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] classFile = classes.get(name);
+            if(classFile != null) return defineClass(name, classFile, 0, classFile.length);
+            for(ClassLoader loader : loaders){
+                try {
+                    return Class.forName(name, false, loader);
+                } catch (ClassNotFoundException e){
+                    //next loader
+                }
+            }
+            throw new ClassNotFoundException(name);
+        }
+
+        MethodHandle getHandle(int index) {
+            return handles[index];
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * WorkflowEngine
+ *
+ * Service running many workflow jobs in one JVM.
+ * All the jobs share one budget of worker threads and memory: a job is only started when its estimated
+ * JobRequirements fit into what is left of the budget, jobs which can never fit are rejected on submission.
+ * The blocks of all the jobs run on one pool of workerBudget threads, so a job using more threads than estimated
+ * waits for free workers instead of exceeding the budget.
+ * Waiting jobs are kept in one queue per tenant and the tenant with the fewest running jobs is served first,
+ * so one tenant submitting many jobs cannot starve the others.
+ **********************************************************************************************************************/
+
+public class WorkflowEngine {
+
+    private static Log logger = LogFactory.getLog(WorkflowEngine.class);
+
+    private ClassLoader classLoader;
+    private String jarDirectory;
+    private String remoteDirectory;
+
+    private final int  workerBudget;     //threads all the running jobs may use together
+    private final long memoryBudget;     //bytes all the running jobs may use together
+    private int  maxQueuedJobs = 1000;
+    private long memoryPerBlock = 64 * JobRequirements.MB;
+    private boolean directPipes = false;   //run continuous jobs with direct pipes (BlockWorkFlow.setDirectPipes)
+    private boolean spillOutputs = false;  //spill block outputs of a job above its estimated memory to disk (BlockWorkFlow.setMemoryBudget)
+
+    private final Map<String, Deque<WorkflowJob>> tenantQueues = new LinkedHashMap<>(); //tenants with waiting jobs
+    private final Map<String, Integer> tenantRunning    = new HashMap<>();  //running jobs of each tenant
+    private final Map<String, Integer> tenantLastServed = new HashMap<>();  //start sequence of the last job of each tenant
+    private int startSequence = 0;
+
+    private int  usedWorkers = 0;
+    private long usedMemory  = 0;
+    private int  queuedJobs  = 0;
+    private int  runningJobs = 0;
+    private boolean shutdown = false;
+
+    private final AtomicLong submittedJobs = new AtomicLong();
+    private final AtomicLong rejectedJobs  = new AtomicLong();
+    private final AtomicLong completedJobs = new AtomicLong();
+    private final AtomicLong failedJobs    = new AtomicLong();
+    private final AtomicLong jobIDs;
+
+    private final ExecutorService jobExecutor = Executors.newCachedThreadPool();   //one thread per running job, waiting for its workflow
+    private final ThreadPoolExecutor blockExecutor;                                 //workerBudget threads running the blocks of all the jobs
+
+    public WorkflowEngine(ClassLoader classLoader, String jarDirectory, String remoteDirectory, int workerBudget, long memoryBudget) {
+        this.classLoader = classLoader;
+        this.jarDirectory = jarDirectory;
+        this.remoteDirectory = remoteDirectory;
+        this.workerBudget = workerBudget;
+        this.memoryBudget = memoryBudget;
+        this.jobIDs = new AtomicLong(System.currentTimeMillis());
+        this.blockExecutor = new ThreadPoolExecutor(workerBudget, workerBudget, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        this.blockExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * submit
+     * estimate the requirements of the workflow and queue it for its tenant.
+     * The returned job is already REJECTED when the engine is shut down, the queue is full
+     * or the job needs more than the whole budget.
+     */
+    public WorkflowJob submit(String tenant, JSONObject jObject, Map<Class, String> moduleSource, String outputFolder, String workflowOutputFile) {
+        long jobID = jobIDs.incrementAndGet();
+        submittedJobs.incrementAndGet();
+
+        JobRequirements requirements;
+        try{
+            requirements = JobRequirements.estimate(jObject, moduleSource, jarDirectory != null, directPipes, memoryPerBlock, JobRequirements.forkedJvmMemory());
+        } catch (Exception e){
+            WorkflowJob job = new WorkflowJob(jobID, tenant, jObject, moduleSource, outputFolder, workflowOutputFile, null);
+            reject(job, "workflow cannot be estimated: " + e.getMessage());
+            return job;
+        }
+
+        WorkflowJob job = new WorkflowJob(jobID, tenant, jObject, moduleSource, outputFolder, workflowOutputFile, requirements);
+        logger.info("Submitted jobID " + jobID + " of tenant " + tenant + ", " + requirements);
+
+        if(requirements.getThreads() > workerBudget || requirements.getMemory() > memoryBudget){
+            reject(job, "requirements (" + requirements + ") exceed the engine budget");
+            return job;
+        }
+
+        synchronized (this){
+            if(shutdown){
+                reject(job, "engine is shut down");
+                return job;
+            }
+            if(queuedJobs >= maxQueuedJobs){
+                reject(job, "queue is full (" + queuedJobs + " jobs)");
+                return job;
+            }
+
+            Deque<WorkflowJob> queue = tenantQueues.get(tenant);
+            if(queue == null){
+                queue = new ArrayDeque<>();
+                tenantQueues.put(tenant, queue);
+            }
+            queue.addLast(job);
+            queuedJobs++;
+
+            dispatch();
+        }
+        return job;
+    }
+
+    private void reject(WorkflowJob job, String reason){
+        logger.warn("Rejected jobID " + job.getJobID() + " of tenant " + job.getTenant() + ": " + reason);
+        rejectedJobs.incrementAndGet();
+        job.rejected(reason);
+    }
+
+    /**
+     * dispatch
+     * start waiting jobs while the head job of some tenant fits into the budget.
+     * Among the tenants whose head job fits, the one with the fewest running jobs is served first,
+     * ties are broken by serving the tenant which waits the longest since its last start.
+     */
+    private synchronized void dispatch(){
+        while(true){
+            String bestTenant = null;
+            for(String tenant : tenantQueues.keySet()){
+                JobRequirements requirements = tenantQueues.get(tenant).peekFirst().getRequirements();
+                if(usedWorkers + requirements.getThreads() > workerBudget || usedMemory + requirements.getMemory() > memoryBudget)
+                    continue;
+
+                if(bestTenant == null || fairer(tenant, bestTenant))
+                    bestTenant = tenant;
+            }
+            if(bestTenant == null) return;
+
+            Deque<WorkflowJob> queue = tenantQueues.get(bestTenant);
+            WorkflowJob job = queue.pollFirst();
+            if(queue.isEmpty()) tenantQueues.remove(bestTenant);
+            queuedJobs--;
+            start(job);
+        }
+    }
+
+    private boolean fairer(String tenant, String other){
+        int running = count(tenantRunning, tenant), otherRunning = count(tenantRunning, other);
+        if(running != otherRunning) return running < otherRunning;
+        return count(tenantLastServed, tenant) < count(tenantLastServed, other);
+    }
+
+    private static int count(Map<String, Integer> counters, String tenant){
+        Integer count = counters.get(tenant);
+        return count == null ? 0 : count;
+    }
+
+    private void start(final WorkflowJob job){
+        JobRequirements requirements = job.getRequirements();
+        usedWorkers += requirements.getThreads();
+        usedMemory  += requirements.getMemory();
+        runningJobs++;
+        tenantRunning.put(job.getTenant(), count(tenantRunning, job.getTenant()) + 1);
+        tenantLastServed.put(job.getTenant(), ++startSequence);
+        job.started();
+        logger.info("Start jobID " + job.getJobID() + " of tenant " + job.getTenant() + ", used workers " + usedWorkers + "/" + workerBudget);
+
+        jobExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                JSONArray blocksArray = null;
+                Exception error = null;
+                try{
+                    BlockWorkFlow blockWorkFlow = new BlockWorkFlow(classLoader, job.getModuleSource(), jarDirectory, remoteDirectory, job.getJobID());
+                    blockWorkFlow.setDirectPipes(directPipes);
+                    blockWorkFlow.setBlockExecutor(blockExecutor);
+                    if(spillOutputs) blockWorkFlow.setMemoryBudget(job.getRequirements().getMemory());
+                    blocksArray = blockWorkFlow.execute(job.getWorkflow(), job.getOutputFolder(), job.getWorkflowOutputFile());
+                    job.setPeakLiveBytes(blockWorkFlow.getPeakLiveOutputBytes());
+                } catch (Exception e){
+                    logger.error("Error executing jobID " + job.getJobID(), e);
+                    error = e;
+                }
+                finish(job, blocksArray, error);
+            }
+        });
+    }
+
+    /**
+     * finish
+     * release the budget of the job and start the waiting jobs; get() of the job only returns afterwards,
+     * so the metrics read by its caller already count it as finished
+     */
+    private void finish(WorkflowJob job, JSONArray blocksArray, Exception error){
+        try{
+            job.finished(blocksArray, error);
+            if(WorkflowJob.COMPLETED.equals(job.getStatus())) completedJobs.incrementAndGet();
+            else failedJobs.incrementAndGet();
+
+            synchronized (this){
+                usedWorkers -= job.getRequirements().getThreads();
+                usedMemory  -= job.getRequirements().getMemory();
+                runningJobs--;
+                int running = count(tenantRunning, job.getTenant()) - 1;
+                if(running == 0) tenantRunning.remove(job.getTenant());
+                else tenantRunning.put(job.getTenant(), running);
+                dispatch();
+            }
+            logger.info("Finished jobID " + job.getJobID() + " of tenant " + job.getTenant() + " with status " + job.getStatus());
+        } finally {
+            job.signalDone();
+        }
+    }
+
+    /**
+     * shutdown
+     * reject all the waiting jobs and wait for the running ones to finish
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this){
+            shutdown = true;
+            for(Deque<WorkflowJob> queue : tenantQueues.values()){
+                for(WorkflowJob job : queue) reject(job, "engine is shut down");
+            }
+            tenantQueues.clear();
+            queuedJobs = 0;
+        }
+        jobExecutor.shutdown();
+        //the blocks of jobs still running after the timeout keep their workers, idle workers time out
+        if(jobExecutor.awaitTermination(timeout, unit)) blockExecutor.shutdown();
+    }
+
+    /**
+     * getMetrics
+     * snapshot of the engine state: queue depth, running jobs, used budget and job counters
+     */
+    public synchronized JSONObject getMetrics(){
+        JSONObject metrics = new JSONObject();
+        metrics.put("queueDepth", queuedJobs);
+        metrics.put("runningJobs", runningJobs);
+        metrics.put("usedWorkers", usedWorkers);
+        metrics.put("workerBudget", workerBudget);
+        metrics.put("activeWorkers", blockExecutor.getActiveCount());
+        metrics.put("largestWorkers", blockExecutor.getLargestPoolSize());
+        metrics.put("usedMemory", usedMemory);
+        metrics.put("memoryBudget", memoryBudget);
+        metrics.put("submittedJobs", submittedJobs.get());
+        metrics.put("rejectedJobs", rejectedJobs.get());
+        metrics.put("completedJobs", completedJobs.get());
+        metrics.put("failedJobs", failedJobs.get());
+        return metrics;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queuedJobs;
+    }
+
+    public synchronized int getRunningJobs() {
+        return runningJobs;
+    }
+
+    public synchronized int getUsedWorkers() {
+        return usedWorkers;
+    }
+
+    public synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    public long getRejectedJobs() {
+        return rejectedJobs.get();
+    }
+
+    public long getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    public long getFailedJobs() {
+        return failedJobs.get();
+    }
+
+    public int getWorkerBudget() {
+        return workerBudget;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public synchronized int getMaxQueuedJobs() {
+        return maxQueuedJobs;
+    }
+
+    public synchronized void setMaxQueuedJobs(int maxQueuedJobs) {
+        this.maxQueuedJobs = maxQueuedJobs;
+    }
+
+    public boolean isDirectPipes() {
+        return directPipes;
+    }
+
+    public void setDirectPipes(boolean directPipes) {
+        this.directPipes = directPipes;
+    }
+
+    public boolean isSpillOutputs() {
+        return spillOutputs;
+    }
+
+    public void setSpillOutputs(boolean spillOutputs) {
+        this.spillOutputs = spillOutputs;
+    }
+
+    public long getMemoryPerBlock() {
+        return memoryPerBlock;
+    }
+
+    public void setMemoryPerBlock(long memoryPerBlock) {
+        this.memoryPerBlock = memoryPerBlock;
+    }
+}
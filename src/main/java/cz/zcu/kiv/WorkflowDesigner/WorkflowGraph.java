@@ -0,0 +1,191 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import java.util.Arrays;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * WorkflowGraph
+ *
+ * Compact block graph of an ExecutionPlan in compressed sparse row form: the distinct successors of block i are
+ * successors[successorOffsets[i] .. successorOffsets[i+1]), likewise for the predecessors, and every edge keeps
+ * the indices of its source and destination blocks and ports. Only int arrays are used, so building and walking
+ * the graph stays linear in the number of blocks and edges.
+ **********************************************************************************************************************/
+
+public final class WorkflowGraph {
+
+    private final int blocksNum;
+    private final int[] successorOffsets;
+    private final int[] successors;
+    private final int[] predecessorOffsets;
+    private final int[] predecessors;
+
+    private final int[] edgeSources;
+    private final int[] edgeDestinations;
+    private final int[] edgeSourcePorts;        //indices into portNames
+    private final int[] edgeDestinationPorts;   //indices into portNames
+    private final String[] portNames;
+
+    private WorkflowGraph(int blocksNum, int[] edgeSources, int[] edgeDestinations,
+                          int[] edgeSourcePorts, int[] edgeDestinationPorts, String[] portNames) {
+        this.blocksNum = blocksNum;
+        this.edgeSources = edgeSources;
+        this.edgeDestinations = edgeDestinations;
+        this.edgeSourcePorts = edgeSourcePorts;
+        this.edgeDestinationPorts = edgeDestinationPorts;
+        this.portNames = portNames;
+
+        this.successorOffsets = new int[blocksNum + 1];
+        this.successors = adjacency(blocksNum, edgeSources, edgeDestinations, successorOffsets);
+        this.predecessorOffsets = new int[blocksNum + 1];
+        this.predecessors = adjacency(blocksNum, edgeDestinations, edgeSources, predecessorOffsets);
+    }
+
+    /**
+     * build
+     * graph of blocksNum blocks with one edge from edgeSources[e] to edgeDestinations[e] for every e,
+     * the port arrays may be null when the ports are not needed
+     */
+    public static WorkflowGraph build(int blocksNum, int[] edgeSources, int[] edgeDestinations,
+                                      int[] edgeSourcePorts, int[] edgeDestinationPorts, String[] portNames) {
+        int edgesNum = edgeSources.length;
+        return new WorkflowGraph(blocksNum, edgeSources, edgeDestinations,
+                edgeSourcePorts != null ? edgeSourcePorts : new int[edgesNum],
+                edgeDestinationPorts != null ? edgeDestinationPorts : new int[edgesNum],
+                portNames != null ? portNames : new String[0]);
+    }
+
+    /**
+     * adjacency
+     * counting sort of the edges by their "from" block, then the neighbours of every block are sorted and
+     * duplicates (several edges between the same two blocks) removed in place
+     */
+    private static int[] adjacency(int blocksNum, int[] from, int[] to, int[] offsets) {
+        int[] counts = new int[blocksNum + 1];
+        for(int f : from) counts[f + 1]++;
+        for(int i = 0; i < blocksNum; i++) counts[i + 1] += counts[i];
+
+        int[] neighbours = new int[from.length];
+        int[] next = Arrays.copyOf(counts, blocksNum);
+        for(int e = 0; e < from.length; e++){
+            neighbours[next[from[e]]++] = to[e];
+        }
+
+        int size = 0;
+        for(int i = 0; i < blocksNum; i++){
+            offsets[i] = size;
+            int start = counts[i], end = counts[i + 1];
+            Arrays.sort(neighbours, start, end);
+            for(int k = start; k < end; k++){
+                if(k > start && neighbours[k] == neighbours[k - 1]) continue;
+                neighbours[size++] = neighbours[k];
+            }
+        }
+        offsets[blocksNum] = size;
+        return size == neighbours.length ? neighbours : Arrays.copyOf(neighbours, size);
+    }
+
+    /**
+     * topologicalOrder
+     * blocks in topological order, blocks ready at the same time keep their index order,
+     * null when the graph has a cycle
+     */
+    public int[] topologicalOrder() {
+        int[] inDegree = new int[blocksNum];
+        for(int i = 0; i < blocksNum; i++) inDegree[i] = getPredecessorsNum(i);
+
+        int[] order = new int[blocksNum];
+        int head = 0, tail = 0;
+        for(int i = 0; i < blocksNum; i++){
+            if(inDegree[i] == 0) order[tail++] = i;
+        }
+        while(head < tail){
+            int current = order[head++];
+            for(int k = successorOffsets[current]; k < successorOffsets[current + 1]; k++){
+                if(--inDegree[successors[k]] == 0) order[tail++] = successors[k];
+            }
+        }
+        return tail == blocksNum ? order : null;
+    }
+
+    /**
+     * relabel
+     * the same graph with block i renamed to newIndex[i]
+     */
+    public WorkflowGraph relabel(int[] newIndex) {
+        int[] sources = new int[edgeSources.length];
+        int[] destinations = new int[edgeDestinations.length];
+        for(int e = 0; e < sources.length; e++){
+            sources[e] = newIndex[edgeSources[e]];
+            destinations[e] = newIndex[edgeDestinations[e]];
+        }
+        return new WorkflowGraph(blocksNum, sources, destinations, edgeSourcePorts, edgeDestinationPorts, portNames);
+    }
+
+    public int getBlocksNum() {
+        return blocksNum;
+    }
+
+    public int getEdgesNum() {
+        return edgeSources.length;
+    }
+
+    public int getSuccessorsNum(int block) {
+        return successorOffsets[block + 1] - successorOffsets[block];
+    }
+
+    public int getSuccessor(int block, int k) {
+        return successors[successorOffsets[block] + k];
+    }
+
+    public int[] getSuccessors(int block) {
+        return Arrays.copyOfRange(successors, successorOffsets[block], successorOffsets[block + 1]);
+    }
+
+    public int getPredecessorsNum(int block) {
+        return predecessorOffsets[block + 1] - predecessorOffsets[block];
+    }
+
+    public int getPredecessor(int block, int k) {
+        return predecessors[predecessorOffsets[block] + k];
+    }
+
+    public int[] getPredecessors(int block) {
+        return Arrays.copyOfRange(predecessors, predecessorOffsets[block], predecessorOffsets[block + 1]);
+    }
+
+    public int getEdgeSource(int edge) {
+        return edgeSources[edge];
+    }
+
+    public int getEdgeDestination(int edge) {
+        return edgeDestinations[edge];
+    }
+
+    public String getEdgeSourcePort(int edge) {
+        return portNames[edgeSourcePorts[edge]];
+    }
+
+    public String getEdgeDestinationPort(int edge) {
+        return portNames[edgeDestinationPorts[edge]];
+    }
+}
@@ -0,0 +1,196 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * WorkflowJob
+ *
+ * Handle of one workflow submitted to the WorkflowEngine.
+ * It is used to follow the status of the job and to wait for its blocks JSONArray.
+ **********************************************************************************************************************/
+
+public class WorkflowJob {
+
+    public static final String QUEUED    = "QUEUED";
+    public static final String RUNNING   = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED    = "FAILED";
+    public static final String REJECTED  = "REJECTED";
+
+    private final long jobID;
+    private final String tenant;
+    private final JSONObject workflow;
+    private final Map<Class, String> moduleSource;
+    private final String outputFolder;
+    private final String workflowOutputFile;
+    private final JobRequirements requirements;
+
+    private volatile String status = QUEUED;
+    private volatile JSONArray result;
+    private volatile Exception error;
+    private volatile String rejectionReason;
+    private volatile long submitTime;
+    private volatile long startTime;
+    private volatile long finishTime;
+    private volatile long peakLiveBytes;     //estimated peak size of the block outputs held at once
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    public WorkflowJob(long jobID, String tenant, JSONObject workflow, Map<Class, String> moduleSource,
+                       String outputFolder, String workflowOutputFile, JobRequirements requirements) {
+        this.jobID = jobID;
+        this.tenant = tenant;
+        this.workflow = workflow;
+        this.moduleSource = moduleSource;
+        this.outputFolder = outputFolder;
+        this.workflowOutputFile = workflowOutputFile;
+        this.requirements = requirements;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    /**
+     * get
+     * wait until the job is finished and return its blocks JSONArray
+     * @throws ExecutionException when the job was rejected or the workflow could not be executed
+     */
+    public JSONArray get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    public JSONArray get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if(!done.await(timeout, unit))
+            throw new TimeoutException("Job " + jobID + " is still " + status);
+        return report();
+    }
+
+    private JSONArray report() throws ExecutionException {
+        if(REJECTED.equals(status))
+            throw new ExecutionException(new IllegalStateException("Job " + jobID + " rejected: " + rejectionReason));
+        if(error != null)
+            throw new ExecutionException(error);
+        return result;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    void started() {
+        startTime = System.currentTimeMillis();
+        status = RUNNING;
+    }
+
+    void finished(JSONArray result, Exception error) {
+        this.result = result;
+        this.error = error;
+        this.finishTime = System.currentTimeMillis();
+        this.status = error == null && !hasBlockError(result) ? COMPLETED : FAILED;
+    }
+
+    void setPeakLiveBytes(long peakLiveBytes) {
+        this.peakLiveBytes = peakLiveBytes;
+    }
+
+    void signalDone() {
+        done.countDown();
+    }
+
+    void rejected(String reason) {
+        this.rejectionReason = reason;
+        this.finishTime = System.currentTimeMillis();
+        this.status = REJECTED;
+        done.countDown();
+    }
+
+    private static boolean hasBlockError(JSONArray blocksArray) {
+        if(blocksArray == null) return true;
+        for(int i = 0; i < blocksArray.length(); i++){
+            if(blocksArray.getJSONObject(i).optBoolean("error", false)) return true;
+        }
+        return false;
+    }
+
+    public long getJobID() {
+        return jobID;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public JSONObject getWorkflow() {
+        return workflow;
+    }
+
+    public Map<Class, String> getModuleSource() {
+        return moduleSource;
+    }
+
+    public String getOutputFolder() {
+        return outputFolder;
+    }
+
+    public String getWorkflowOutputFile() {
+        return workflowOutputFile;
+    }
+
+    public JobRequirements getRequirements() {
+        return requirements;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public String getRejectionReason() {
+        return rejectionReason;
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getPeakLiveBytes() {
+        return peakLiveBytes;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+}
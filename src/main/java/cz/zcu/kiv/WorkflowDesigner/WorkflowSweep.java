@@ -0,0 +1,197 @@
+package cz.zcu.kiv.WorkflowDesigner;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/***********************************************************************************************************************
+ *
+ * This file is part of the Workflow Designer project
+
+ * ==========================================
+ *
+ * Copyright (C) 2019 by University of West Bohemia (http://www.zcu.cz/en/)
+ *
+ ***********************************************************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *
+ ***********************************************************************************************************************
+ *
+ * WorkflowSweep
+ *
+ * Parameter sweep: one workflow executed with several property assignments.
+ * Every assignment is a JSONObject {"<block id>": {"<property name>": value, ...}, ...}. The blocks which are neither
+ * assigned a property by any variant nor downstream of such a block form the shared prefix, it is executed only once
+ * and the rest of the workflow is executed for all the variants in parallel, reusing the results of the prefix.
+ * Prefix outputs are shared by all the variants, so blocks of the suffix must not modify their inputs.
+ * Continuous workflows cannot share results between runs, their variants are executed completely.
+ **********************************************************************************************************************/
+
+public class WorkflowSweep {
+
+    private static Log logger = LogFactory.getLog(WorkflowSweep.class);
+
+    private ClassLoader classLoader;
+    private Map<Class, String> moduleSource;
+    private String jarDirectory;
+    private String remoteDirectory;
+    private long jobID;     //jobID of the shared prefix, variant i runs as jobID + 1 + i
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private Set<Integer> sharedBlocks = Collections.emptySet();    //ids of the blocks executed once in the last sweep
+
+    public WorkflowSweep(ClassLoader classLoader, Map<Class, String> moduleSource, String jarDirectory, String remoteDirectory, long jobID) {
+        this.classLoader = classLoader;
+        this.moduleSource = moduleSource;
+        this.jarDirectory = jarDirectory;
+        this.remoteDirectory = remoteDirectory;
+        this.jobID = jobID;
+    }
+
+    /**
+     * execute
+     *
+     * @param jObject       JSONObject contains Blocks and Edges info, its property values are the defaults of all variants
+     * @param assignments   property values of each variant by block id
+     * @param outputFolder  Folder to save the output Files
+     * @return              blocks JSONArray of each variant, in the order of the assignments
+     */
+    public List<JSONArray> execute(JSONObject jObject, List<JSONObject> assignments, final String outputFolder) throws WrongTypeException, IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException, FieldMismatchException, InterruptedException, ExecutionException {
+        ExecutionPlan plan = ExecutionPlan.compile(jObject, moduleSource);
+        WorkflowGraph graph = plan.getGraph();
+
+        //blocks assigned a property by any variant, and everything downstream of them depend on the assignments
+        boolean[] dependent = new boolean[plan.getBlocksNum()];
+        for(JSONObject assignment : assignments){
+            for(String blockID : assignment.keySet()){
+                int index = plan.indexOf(Integer.parseInt(blockID));
+                if(index < 0) throw new IllegalArgumentException("Sweep assigns properties of unknown block " + blockID);
+                dependent[index] = true;
+            }
+        }
+        for(int i = 0; i<plan.getBlocksNum(); i++){   //plan blocks are in topological order
+            if(!dependent[i]) continue;
+            for(int k = 0; k<graph.getSuccessorsNum(i); k++) dependent[graph.getSuccessor(i, k)] = true;
+        }
+
+        sharedBlocks = new LinkedHashSet<>();
+        boolean continuous = JobRequirements.estimate(jObject, moduleSource, false, false, 0, 0).isContinuous();
+        if(!continuous){
+            for(int i = 0; i<plan.getBlocksNum(); i++){
+                if(!dependent[i]) sharedBlocks.add(plan.getBlock(i).getId());
+            }
+        }
+
+        final Map<Integer, BlockObservation> completedBlocks = new HashMap<>();
+        if(!sharedBlocks.isEmpty()){
+            logger.info("Sweep of "+assignments.size()+" variants, execute the "+sharedBlocks.size()+" shared blocks once in jobID "+jobID);
+            BlockWorkFlow prefixFlow = newWorkFlow(jobID);
+            prefixFlow.setReleaseOutputs(false);    //the variants read the prefix outputs as well
+            prefixFlow.execute(subWorkflow(jObject, sharedBlocks), outputFolder, null);
+            completedBlocks.putAll(prefixFlow.getIndexBlocksMap());
+        }
+
+        List<Future<JSONArray>> variants = new ArrayList<>(assignments.size());
+        ExecutorService variantPool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, assignments.size())));
+        try {
+            for(int i = 0; i<assignments.size(); i++){
+                final JSONObject variant = assign(jObject, assignments.get(i));
+                final BlockWorkFlow variantFlow = newWorkFlow(jobID + 1 + i);
+                variants.add(variantPool.submit(new Callable<JSONArray>() {
+                    @Override
+                    public JSONArray call() throws Exception {
+                        return variantFlow.execute(variant, outputFolder, null, completedBlocks);
+                    }
+                }));
+            }
+
+            List<JSONArray> results = new ArrayList<>(variants.size());
+            for(Future<JSONArray> variant : variants){
+                results.add(variant.get());
+            }
+            return results;
+        } finally {
+            variantPool.shutdownNow();
+        }
+    }
+
+    private BlockWorkFlow newWorkFlow(long workFlowJobID) {
+        return new BlockWorkFlow(classLoader, moduleSource, jarDirectory, remoteDirectory, workFlowJobID);
+    }
+
+    /**
+     * subWorkflow
+     * copy of the workflow with the given blocks and the edges between them only
+     */
+    private static JSONObject subWorkflow(JSONObject jObject, Set<Integer> blockIDs) {
+        JSONArray blocksArray = new JSONArray();
+        JSONArray allBlocks = jObject.getJSONArray("blocks");
+        for(int i = 0; i<allBlocks.length(); i++){
+            JSONObject block = allBlocks.getJSONObject(i);
+            if(blockIDs.contains(block.getInt("id"))) blocksArray.put(new JSONObject(block.toString()));
+        }
+
+        JSONArray edgesArray = new JSONArray();
+        JSONArray allEdges = jObject.getJSONArray("edges");
+        for(int i = 0; i<allEdges.length(); i++){
+            JSONObject edge = allEdges.getJSONObject(i);
+            if(blockIDs.contains(edge.getInt("block1")) && blockIDs.contains(edge.getInt("block2"))) edgesArray.put(edge);
+        }
+        return new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+    }
+
+    /**
+     * assign
+     * copy of the workflow with the property values of one variant
+     */
+    private static JSONObject assign(JSONObject jObject, JSONObject assignment) {
+        JSONObject variant = new JSONObject(jObject.toString());
+        JSONArray blocksArray = variant.getJSONArray("blocks");
+        for(int i = 0; i<blocksArray.length(); i++){
+            JSONObject block = blocksArray.getJSONObject(i);
+            JSONObject values = assignment.optJSONObject(String.valueOf(block.getInt("id")));
+            if(values == null) continue;
+
+            if(!block.has("values")) block.put("values", new JSONObject());
+            for(String property : values.keySet()){
+                block.getJSONObject("values").put(property, values.get(property));
+            }
+        }
+        return variant;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public Set<Integer> getSharedBlocks() {
+        return sharedBlocks;
+    }
+}
@@ -9,7 +9,7 @@ import static cz.zcu.kiv.WorkflowDesigner.Type.STRING;
 import static cz.zcu.kiv.WorkflowDesigner.WorkflowCardinality.ONE_TO_MANY;
 import static cz.zcu.kiv.WorkflowDesigner.WorkflowCardinality.ONE_TO_ONE;
 
-@BlockType(type ="ARITHMETIC", family = "MATH")
+@BlockType(type ="ARITHMETIC", family = "MATH", deterministic = true)
 public class ArithmeticBlock implements Serializable {
 
     @BlockInput(name = "Operand1", type = NUMBER)
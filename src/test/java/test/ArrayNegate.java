@@ -0,0 +1,27 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+
+import java.io.Serializable;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
+
+@BlockType(type ="ARRAY_NEGATE", family = "MATH")
+public class ArrayNegate implements Serializable {
+
+    @BlockInput(name = "Values", type = NUMBER)
+    private int[] values;
+
+    //negates the values in place, in the array its source output as well
+    @BlockExecute
+    public String process(){
+        long sum = 0;
+        for(int i = 0; i < values.length; i++){
+            values[i] = -values[i];
+            sum += values[i];
+        }
+        return String.valueOf(sum);
+    }
+}
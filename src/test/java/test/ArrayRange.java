@@ -0,0 +1,28 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+
+import java.io.Serializable;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
+
+@BlockType(type ="ARRAY_RANGE", family = "MATH")
+public class ArrayRange implements Serializable {
+
+    @BlockProperty(name = "Length", type = NUMBER, defaultValue = "0")
+    private int length;
+
+    @BlockOutput(name = "Values", type = NUMBER)
+    private int[] values;
+
+    @BlockExecute
+    public void process(){
+        values = new int[length];
+        for(int i = 0; i < length; i++){
+            values[i] = i + 1;
+        }
+    }
+}
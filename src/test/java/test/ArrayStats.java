@@ -0,0 +1,42 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+
+import java.io.Serializable;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER_ARRAY;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STRING_ARRAY;
+
+@BlockType(type ="ARRAY_STATS", family = "MATH")
+public class ArrayStats implements Serializable {
+
+    @BlockInput(name = "Values", type = NUMBER_ARRAY)
+    private int[] values;
+
+    @BlockProperty(name = "Weights", type = NUMBER_ARRAY)
+    private double[] weights;
+
+    @BlockProperty(name = "Labels", type = STRING_ARRAY)
+    private String[] labels;
+
+    @BlockExecute
+    public String process(){
+        long sum = 0;
+        for(int value : values){
+            sum += value;
+        }
+        double weightSum = 0;
+        for(double weight : weights){
+            weightSum += weight;
+        }
+        StringBuilder joined = new StringBuilder();
+        for(String label : labels){
+            if(joined.length() > 0) joined.append("|");
+            joined.append(label);
+        }
+        return sum + ";" + weightSum + ";" + joined;
+    }
+}
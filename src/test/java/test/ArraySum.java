@@ -0,0 +1,25 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+
+import java.io.Serializable;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
+
+@BlockType(type ="ARRAY_SUM", family = "MATH")
+public class ArraySum implements Serializable {
+
+    @BlockInput(name = "Values", type = NUMBER)
+    private int[] values;
+
+    @BlockExecute
+    public String process(){
+        long sum = 0;
+        for(int value : values){
+            sum += value;
+        }
+        return String.valueOf(sum);
+    }
+}
@@ -7,7 +7,7 @@ import java.io.Serializable;
 import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
 import static cz.zcu.kiv.WorkflowDesigner.WorkflowCardinality.ONE_TO_ONE;
 
-@BlockType(type ="CONSTANT", family = "MATH")
+@BlockType(type ="CONSTANT", family = "MATH", deterministic = true)
 public class ConstantBlock implements Serializable {
 
 
@@ -0,0 +1,50 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockMerge;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER_ARRAY;
+
+@BlockType(type ="PARALLEL_SQUARES", family = "MATH", runAsJar = false, parallel = true, partitions = 3)
+public class ParallelSquares implements Serializable {
+
+    @BlockInput(name = "Numbers", type = NUMBER_ARRAY)
+    private List<Integer> numbers;
+
+    @BlockOutput(name = "Squares", type = NUMBER_ARRAY)
+    private List<Integer> squares;
+
+    @BlockExecute
+    public Integer process(){
+        squares = new ArrayList<>();
+        int sum = 0;
+        for(int number : numbers){
+            squares.add(number * number);
+            sum += number * number;
+        }
+        return sum;
+    }
+
+    @BlockMerge
+    public Object merge(String name, List<Object> partitionValues){
+        if(!BlockMerge.EXECUTE_RESULT.equals(name)){
+            List<Object> merged = new ArrayList<>();
+            for(Object value : partitionValues) merged.addAll((List) value);
+            return merged;
+        }
+        int sum = 0;
+        for(Object value : partitionValues) sum += (Integer) value;
+        return sum;
+    }
+
+    public List<Integer> getSquares() {
+        return squares;
+    }
+}
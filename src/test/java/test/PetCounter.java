@@ -0,0 +1,38 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+
+import java.io.ObjectInputStream;
+import java.io.PipedInputStream;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STREAM;
+
+@BlockType(type ="PetCounter", family = "PIPE")
+public class PetCounter {
+
+    @BlockInput(name = "Pets", type = STREAM)
+    PipedInputStream pipedIn = new PipedInputStream();
+
+    @BlockInput(name = "Offset", type = NUMBER)
+    private int offset = 0;
+
+
+    @BlockExecute
+    public String process() throws Exception{
+
+        ObjectInputStream objectInputStream = new ObjectInputStream(pipedIn);
+
+        int count = offset;
+        while(objectInputStream.readObject() != null){
+            count++;
+        }
+
+        pipedIn.close();
+        objectInputStream.close();
+        return String.valueOf(count);
+    }
+
+}
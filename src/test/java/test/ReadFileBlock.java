@@ -0,0 +1,23 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.FILE;
+
+@BlockType(type ="READ_FILE", family = "FILE")
+public class ReadFileBlock {
+
+    @BlockInput(name = "File", type = FILE)
+    private File file;
+
+    @BlockExecute
+    public String process() throws Exception {
+        return FileUtils.readFileToString(file, Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,36 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.*;
+import cz.zcu.kiv.WorkflowDesigner.RecordChannel;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.STREAM;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STRING;
+
+@BlockType(type ="RecordPetFilter", family = "CHANNEL", runAsJar = false)
+public class RecordPetFilter {
+
+    @BlockProperty(name = "targetPetType", type = STRING, description = "Enter the pet type you want to get(example: cat)")
+    String petType;
+
+    @BlockInput(name = "petsIn", type = STREAM)
+    RecordChannel<Pet> petsIn = new RecordChannel<>();
+
+    @BlockOutput(name = "targetPets", type = STREAM)
+    RecordChannel<Pet> petsOut = new RecordChannel<>();
+
+
+    @BlockExecute
+    public void process() throws Exception {
+        for(Pet pet : petsIn){
+            if (filter(pet) != null) {
+                petsOut.write(pet);
+            }
+        }
+        petsOut.close();
+    }
+
+    @BlockRecord
+    public Pet filter(Pet pet) {
+        return petType == null || petType.length() == 0 || petType.equals(pet.getType()) ? pet : null;
+    }
+}
@@ -0,0 +1,49 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import cz.zcu.kiv.WorkflowDesigner.RecordBatch;
+import cz.zcu.kiv.WorkflowDesigner.RecordChannel;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.STREAM;
+
+@BlockType(type ="RecordPetTarget", family = "CHANNEL", runAsJar = false)
+public class RecordPetTarget {
+
+    @BlockInput(name = "TargetPets", type = STREAM)
+    RecordChannel<Pet> petsIn = new RecordChannel<>();
+
+
+    @BlockExecute
+    public Table process() throws Exception{
+
+        String petType = null;
+        Table table = new Table();
+        List<List<String>> rows = new ArrayList<>();
+        List<String> colHead = new ArrayList<>();
+
+        RecordBatch<Pet> batch;
+        while((batch = petsIn.readBatch()) != null){
+            for(int i = 0; i < batch.size(); i++){
+                Pet pet = batch.get(i);
+                rows.add(Arrays.asList( pet.getName() ));
+
+                if(petType == null){
+                    petType = pet.getType();
+                    colHead.add("All "+petType+ "s name:");
+                }
+            }
+            batch.release();
+        }
+        table.setColumnHeaders(colHead);
+        table.setRows(rows);
+        table.setCaption(petType+ "s Table");
+        return table;
+    }
+}
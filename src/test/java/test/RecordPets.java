@@ -0,0 +1,40 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import cz.zcu.kiv.WorkflowDesigner.RecordChannel;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.STREAM;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STRING;
+
+@BlockType(type ="RecordPets", family = "CHANNEL", runAsJar = false)
+public class RecordPets {
+
+    @BlockProperty(name = "petsNames", type = STRING, description = "Enter all the pets name, separate input pets Name with ','")
+    String petsName;
+
+    @BlockProperty(name = "petsTypes", type = STRING, description = "Enter corresponding type, separate input pets Type with ','")
+    String petsType;
+
+    @BlockOutput(name = "mixedPets", type = STREAM)
+    RecordChannel<Pet> petsOut = new RecordChannel<>();
+
+
+    @BlockExecute
+    public void process() throws Exception {
+
+        String[] names = petsName.replaceAll("\\s*", "").split(",");
+        String[] types = petsType.replaceAll("\\s*", "").split(",");
+
+        if ( names.length == 0 || names.length != types.length ) {
+            throw new Exception("Lengths of Pets Names and Pets Types do not match.");
+        }
+
+        for(int i = 0; i < names.length; i++){
+            petsOut.write(new Pet(names[i], types[i]));
+        }
+        petsOut.close();
+    }
+}
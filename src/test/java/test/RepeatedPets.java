@@ -0,0 +1,42 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+
+import java.io.ObjectOutputStream;
+import java.io.PipedOutputStream;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STREAM;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STRING;
+
+@BlockType(type ="RepeatedPets", family = "PIPE")
+public class RepeatedPets {
+
+    @BlockProperty(name = "petType", type = STRING, defaultValue = "cat")
+    String petType;
+
+    @BlockProperty(name = "Count", type = NUMBER, defaultValue = "0")
+    int count;
+
+    @BlockOutput(name = "pets", type = STREAM)
+    PipedOutputStream pipedOut = new PipedOutputStream();
+
+
+    @BlockExecute
+    public void process() throws Exception {
+
+        ObjectOutputStream objectOut = new ObjectOutputStream( pipedOut );
+
+        for(int i = 0; i < count; i++){
+            objectOut.writeObject(new Pet(petType + i, petType));
+        }
+        objectOut.writeObject(null);
+        objectOut.flush();
+
+        objectOut.close();
+        pipedOut.close();
+    }
+}
@@ -0,0 +1,30 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import cz.zcu.kiv.WorkflowDesigner.NumericVector;
+
+import java.io.Serializable;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER_ARRAY;
+
+@BlockType(type ="VECTOR_RANGE", family = "MATH")
+public class VectorRange implements Serializable {
+
+    @BlockProperty(name = "Length", type = NUMBER, defaultValue = "0")
+    private int length;
+
+    @BlockOutput(name = "Samples", type = NUMBER_ARRAY)
+    private NumericVector samples;
+
+    @BlockExecute
+    public void process(){
+        samples = NumericVector.allocate(length);
+        for(int i = 0; i < length; i++){
+            samples.set(i, i + 1);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockInput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import cz.zcu.kiv.WorkflowDesigner.NumericVector;
+
+import java.io.Serializable;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER_ARRAY;
+
+@BlockType(type ="VECTOR_SUM", family = "MATH")
+public class VectorSum implements Serializable {
+
+    @BlockInput(name = "Samples", type = NUMBER_ARRAY)
+    private NumericVector samples;
+
+    @BlockExecute
+    public String process(){
+        double sum = 0;
+        for(int i = 0; i < samples.length(); i++){
+            sum += samples.get(i);
+        }
+        return String.valueOf((long) sum);
+    }
+}
@@ -1,22 +1,73 @@
 package test;
 import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import cz.zcu.kiv.WorkflowDesigner.ArrayFields;
+import cz.zcu.kiv.WorkflowDesigner.BlockObservation;
 import cz.zcu.kiv.WorkflowDesigner.BlockWorkFlow;
+import cz.zcu.kiv.WorkflowDesigner.CheckpointStore;
+import cz.zcu.kiv.WorkflowDesigner.ClassDataSharing;
+import cz.zcu.kiv.WorkflowDesigner.CompiledWorkflow;
+import cz.zcu.kiv.WorkflowDesigner.ExecutionPlan;
 import cz.zcu.kiv.WorkflowDesigner.FieldMismatchException;
+import cz.zcu.kiv.WorkflowDesigner.JobMemoryManager;
+import cz.zcu.kiv.WorkflowDesigner.JobRequirements;
+import cz.zcu.kiv.WorkflowDesigner.ModuleClassLoader;
+import cz.zcu.kiv.WorkflowDesigner.NumericVector;
+import cz.zcu.kiv.WorkflowDesigner.PipeEdge;
+import cz.zcu.kiv.WorkflowDesigner.PlanOptimizer;
+import cz.zcu.kiv.WorkflowDesigner.RecordChannel;
+import cz.zcu.kiv.WorkflowDesigner.SizeEstimator;
+import cz.zcu.kiv.WorkflowDesigner.SpillBuffer;
+import cz.zcu.kiv.WorkflowDesigner.StallDetector;
+import cz.zcu.kiv.WorkflowDesigner.StreamDiamonds;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.PlotlyGraphs.Trace;
+import cz.zcu.kiv.WorkflowDesigner.Visualizations.Table;
+import cz.zcu.kiv.WorkflowDesigner.WorkerCoordinator;
+import cz.zcu.kiv.WorkflowDesigner.WorkerNode;
+import cz.zcu.kiv.WorkflowDesigner.WorkflowCodeGenerator;
+import cz.zcu.kiv.WorkflowDesigner.WorkflowEngine;
+import cz.zcu.kiv.WorkflowDesigner.WorkflowJob;
+import cz.zcu.kiv.WorkflowDesigner.WorkflowSweep;
 import cz.zcu.kiv.WorkflowDesigner.WrongTypeException;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 
 
 /***********************************************************************************************************************
@@ -48,6 +99,8 @@ import java.util.Map;
  **********************************************************************************************************************/
 public class WorkflowDesignerTest {
 
+    private static Log logger = LogFactory.getLog(WorkflowDesignerTest.class);
+
    // @Test
     public void testBlock() throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
         JSONArray blocksArray=new BlockWorkFlow(ClassLoader.getSystemClassLoader(),":test",null,"").initializeBlocks();
@@ -156,6 +209,1450 @@ public class WorkflowDesignerTest {
         assert jsonArray.length() == 6;
     }
 
+    @Test
+    public void testDirectPipes() throws WrongTypeException, IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException, InterruptedException{
+        String json = FileUtils.readFileToString(new File("test_data/pipedStreamTest.json"), Charset.defaultCharset());
+
+        JSONObject jsonObject = new JSONObject(json);
+        File outputFile = File.createTempFile("testDirectPipes",".json");
+        outputFile.deleteOnExit();
+
+        JSONArray blocksArray = jsonObject.getJSONArray("blocks");
+        List<String> blockTypes = new ArrayList<>();
+        for (int i = 0; i < blocksArray.length(); i++) {
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            blockTypes.add(blockObject.getString("type"));
+        }
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, blockTypes);
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null,"test_data",5);
+        blockWorkFlow.setDirectPipes(true);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+        assert jsonArray !=null;
+        assert jsonArray.length() == 6;
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert jsonArray.getJSONObject(i).getBoolean("completed");
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+    }
+
+
+    @Test
+    public void testRecordChannels() throws WrongTypeException, IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException, InterruptedException{
+        String json = FileUtils.readFileToString(new File("test_data/recordChannelTest.json"), Charset.defaultCharset());
+
+        JSONObject jsonObject = new JSONObject(json);
+        File outputFile = File.createTempFile("testRecordChannels",".json");
+        outputFile.deleteOnExit();
+
+        JSONArray blocksArray = jsonObject.getJSONArray("blocks");
+        List<String> blockTypes = new ArrayList<>();
+        for (int i = 0; i < blocksArray.length(); i++) {
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            blockTypes.add(blockObject.getString("type"));
+        }
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, blockTypes);
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null,"test_data",6);
+        blockWorkFlow.setChannelBatchSize(2);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+        assert jsonArray !=null;
+        assert jsonArray.length() == 6;
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+
+        Table cats = (Table) blockWorkFlow.getIndexBlocksMap().get(3).getFinalOutputObject();
+        Table dogs = (Table) blockWorkFlow.getIndexBlocksMap().get(4).getFinalOutputObject();
+        assert cats.getRows().size() == 4;
+        assert dogs.getRows().size() == 5;
+    }
+
+    @Test
+    public void testRecordChannelLingerFullDestination() throws InterruptedException, NoSuchFieldException, IllegalAccessException{
+        //a destination filled by another writer
+        RecordChannel<Integer> full = new RecordChannel<>();
+        full.setCapacity(1);
+        RecordChannel<Integer> other = new RecordChannel<>(1, 0);
+        other.connect(full);
+        other.write(0);
+
+        RecordChannel<Integer> free = new RecordChannel<>();
+        RecordChannel<Integer> writer = new RecordChannel<>(8, 5);
+        writer.connect(free);
+        writer.connect(full);
+        writer.write(1);
+
+        //the linger timer must not wait for the full destination, the batches of other channels still flush
+        RecordChannel<Integer> independentOut = new RecordChannel<>();
+        RecordChannel<Integer> independent = new RecordChannel<>(8, 5);
+        independent.connect(independentOut);
+        independent.write(2);
+        assert independentOut.read() == 2;
+        assert free.read() == 1;
+
+        //the batch stays pending for the full destination and is queued after the record already there
+        other.close();
+        assert full.read() == 0;
+        assert full.read() == 1;
+        writer.write(3);
+        writer.flush();
+        assert full.read() == 3;
+        writer.close();
+        independent.close();
+        assert full.read() == null;
+        assert free.read() == 3;
+        assert free.read() == null;
+
+        //an idle channel which is never closed keeps no linger task once its batch is flushed
+        RecordChannel<Integer> idleOut = new RecordChannel<>();
+        RecordChannel<Integer> idle = new RecordChannel<>(8, 5);
+        idle.connect(idleOut);
+        idle.write(4);
+        assert idleOut.read() == 4;
+        Field lingerTask = RecordChannel.class.getDeclaredField("lingerTask");
+        lingerTask.setAccessible(true);
+        long deadline = System.currentTimeMillis() + 1000;
+        Future<?> task = (Future<?>) lingerTask.get(idle);
+        while(task != null && !task.isDone() && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        assert task == null || task.isDone();
+    }
+
+
+    @Test
+    public void testExecutionPlan() throws IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, FieldMismatchException {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+
+        JSONObject jsonObject = new JSONObject(json);
+        JSONArray blocksArray = jsonObject.getJSONArray("blocks");
+        List<String> blockTypes = new ArrayList<>();
+        for (int i = 0; i < blocksArray.length(); i++) {
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            blockTypes.add(blockObject.getString("type"));
+        }
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, blockTypes);
+
+        ExecutionPlan plan = ExecutionPlan.compile(jsonObject, moduleSource);
+        assert plan.getBlocksNum() == 3;
+        assert plan.getBlock(2).getId() == 1;   //the ARITHMETIC block comes after both its sources
+        assert plan.getStartBlocks().length == 2;
+        assert plan.getGraph().getPredecessorsNum(2) == 2;
+
+        //other property values reuse the plan
+        JSONObject resubmitted = new JSONObject(json);
+        resubmitted.getJSONArray("blocks").getJSONObject(1).getJSONObject("values").put("Value", "20");
+        assert ExecutionPlan.compile(resubmitted, moduleSource) == plan;
+
+        JSONObject cyclic = new JSONObject(json);
+        cyclic.getJSONArray("edges").put(new JSONObject("{block1: 1, connector1: [Operand3, output], block2: 1, connector2: [Operand1, input]}"));
+        try {
+            ExecutionPlan.compile(cyclic, moduleSource);
+            assert false;
+        } catch (IllegalArgumentException e){
+            assert e.getMessage().contains("cycle");
+        }
+
+        JSONObject mismatched = new JSONObject(json);
+        mismatched.getJSONArray("edges").getJSONObject(0).getJSONArray("connector2").put(0, "Operand9");
+        try {
+            ExecutionPlan.compile(mismatched, moduleSource);
+            assert false;
+        } catch (FieldMismatchException e){
+            assert e.getMessage().contains("Operand9");
+        }
+    }
+
+
+    @Test
+    public void testLargeWorkflowSetup() throws Exception {
+        //synthetic DAG: two CONSTANT blocks, then ARITHMETIC blocks each adding the outputs of the previous two
+        int blocksNum = 20000;
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for (int id = 1; id <= blocksNum; id++) {
+            JSONObject blockObject = new JSONObject().put("id", id).put("module", "test.jar:test");
+            if (id <= 2) {
+                blockObject.put("type", "CONSTANT").put("values", new JSONObject().put("Value", "1"));
+            } else {
+                blockObject.put("type", "ARITHMETIC").put("values", new JSONObject().put("Operation", "add"));
+                edgesArray.put(new JSONObject().put("block1", id - 1).put("connector1", new JSONArray().put(id - 1 <= 2 ? "Operand" : "Operand3").put("output"))
+                        .put("block2", id).put("connector2", new JSONArray().put("Operand1").put("input")));
+                edgesArray.put(new JSONObject().put("block1", id - 2).put("connector1", new JSONArray().put(id - 2 <= 2 ? "Operand" : "Operand3").put("output"))
+                        .put("block2", id).put("connector2", new JSONArray().put("Operand2").put("input")));
+            }
+            blocksArray.put(blockObject);
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("CONSTANT", "ARITHMETIC"));
+
+        long start = System.currentTimeMillis();
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 7);
+        blockWorkFlow.prepare(jsonObject, "test_data", null);
+        logger.info("Setup of a " + blocksNum + " blocks workflow: " + (System.currentTimeMillis() - start) + " ms");
+
+        assert blockWorkFlow.getStartBlocksSet().size() == 2;
+        assert blockWorkFlow.getIndexBlocksMap().get(blocksNum).getSourceObservables().size() == 2;
+        assert blockWorkFlow.getIndexBlocksMap().get(blocksNum - 2).getDestinationObservers().size() == 2;
+        assert blockWorkFlow.getExecutionPlan().getBlock(blocksNum - 1).getId() == blocksNum;
+
+        //fan-out: every ARITHMETIC block adds the outputs of the two CONSTANT blocks, each with blocksNum - 2 destinations
+        JSONArray fanEdges = new JSONArray();
+        for (int id = 3; id <= blocksNum; id++) {
+            fanEdges.put(new JSONObject().put("block1", 1).put("connector1", new JSONArray().put("Operand").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("Operand1").put("input")));
+            fanEdges.put(new JSONObject().put("block1", 2).put("connector1", new JSONArray().put("Operand").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("Operand2").put("input")));
+        }
+        JSONObject fanObject = new JSONObject().put("blocks", blocksArray).put("edges", fanEdges);
+
+        start = System.currentTimeMillis();
+        BlockWorkFlow fanWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 8);
+        fanWorkFlow.prepare(fanObject, "test_data", null);
+        logger.info("Setup of a " + blocksNum + " blocks fan-out workflow: " + (System.currentTimeMillis() - start) + " ms");
+
+        assert fanWorkFlow.getStartBlocksSet().size() == 2;
+        assert fanWorkFlow.getIndexBlocksMap().get(1).getDestinationObservers().size() == blocksNum - 2;
+        assert fanWorkFlow.getIndexBlocksMap().get(2).getDestinationObservers().size() == blocksNum - 2;
+        assert fanWorkFlow.getIndexBlocksMap().get(blocksNum).getSourceObservables().size() == 2;
+        assert fanWorkFlow.getIndexBlocksMap().get(blocksNum).getIOMap().get("Operand2").get(0).getSourceBlockID() == 2;
+    }
+
+
+    @Test
+    public void testParallelBlock() throws Exception {
+        //eight CONSTANT blocks feed the list input of a PARALLEL_SQUARES block split into three partitions
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for (int id = 1; id <= 8; id++) {
+            blocksArray.put(new JSONObject().put("id", id).put("type", "CONSTANT").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("Value", String.valueOf(id))));
+            edgesArray.put(new JSONObject().put("block1", id).put("connector1", new JSONArray().put("Operand").put("output"))
+                    .put("block2", 9).put("connector2", new JSONArray().put("Numbers").put("input")));
+        }
+        blocksArray.put(new JSONObject().put("id", 9).put("type", "PARALLEL_SQUARES").put("module", "test.jar:test")
+                .put("values", new JSONObject()));
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+        File outputFile = File.createTempFile("testParallelBlock",".json");
+        outputFile.deleteOnExit();
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("CONSTANT", "PARALLEL_SQUARES"));
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null,"test_data",8);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+
+        BlockObservation squaresBlock = blockWorkFlow.getIndexBlocksMap().get(9);
+        assert squaresBlock.getFinalOutputObject().equals(204);
+        assert ((ParallelSquares) squaresBlock.getContext()).getSquares().equals(Arrays.asList(1, 4, 9, 16, 25, 36, 49, 64));
+    }
+
+
+    @Test
+    public void testWorkflowSweep() throws Exception {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+
+        JSONObject jsonObject = new JSONObject(json);
+        List<String> blockTypes = Arrays.asList("ARITHMETIC", "CONSTANT");
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, blockTypes);
+
+        List<JSONObject> assignments = new ArrayList<>();
+        for(int value = 1; value <= 4; value++){
+            assignments.add(new JSONObject().put("3", new JSONObject().put("Value", String.valueOf(value))));
+        }
+
+        WorkflowSweep sweep = new WorkflowSweep(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 20);
+        List<JSONArray> variants = sweep.execute(jsonObject, assignments, "test_data");
+
+        assert sweep.getSharedBlocks().equals(Collections.singleton(2));   //only the first constant is independent of Value
+        assert variants.size() == 4;
+        for(int i = 0; i < variants.size(); i++){
+            JSONObject arithmetic = variants.get(i).getJSONObject(0);
+            assert !arithmetic.getBoolean("error");
+            assert arithmetic.getJSONObject("output").getString("value").equals(String.valueOf(10 + i + 1));
+            assert variants.get(i).getJSONObject(1).getBoolean("completed");
+        }
+    }
+
+    @Test
+    public void testWorkerNodes() throws Exception {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+
+        JSONObject jsonObject = new JSONObject(json);
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARITHMETIC", "CONSTANT"));
+
+        WorkerNode inProcessWorker = new WorkerNode(0, "test_data/scratch", 2);
+        inProcessWorker.start();
+        WorkerNode.LocalWorker forkedWorker = WorkerNode.launchLocal(System.getProperty("java.class.path"), "test_data/scratch", 2);
+        try {
+            WorkerCoordinator coordinator = new WorkerCoordinator("test_data/scratch");
+            coordinator.addWorker(inProcessWorker.getAddress());
+            coordinator.addWorker(forkedWorker.getAddress());
+
+            BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 30);
+            blockWorkFlow.setWorkerCoordinator(coordinator);
+            JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", null);
+
+            assert !jsonArray.getJSONObject(0).getBoolean("error");
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getString("value").equals("15");
+            int executed = 0;
+            for(WorkerCoordinator.Worker worker : coordinator.getWorkers()){
+                executed += worker.getExecuted();
+                assert worker.getRunning() == 0;
+            }
+            assert executed == 3;
+        } finally {
+            forkedWorker.close();
+            inProcessWorker.close();
+            FileUtils.deleteQuietly(new File("test_data/scratch"));
+        }
+    }
+
+    @Test
+    public void testWorkerPlacement() throws Exception {
+        //four slow WRITE_FILE blocks running at once, each feeding its file to a READ_FILE block
+        int width = 4;
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for (int id = 1; id <= width; id++) {
+            blocksArray.put(new JSONObject().put("id", id).put("type", "WRITE_FILE").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("Text", "text" + id).put("Delay", "300")));
+            blocksArray.put(new JSONObject().put("id", id + width).put("type", "READ_FILE").put("module", "test.jar:test").put("values", new JSONObject()));
+            edgesArray.put(new JSONObject().put("block1", id).put("connector1", new JSONArray().put("File").put("output"))
+                    .put("block2", id + width).put("connector2", new JSONArray().put("File").put("input")));
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("WRITE_FILE", "READ_FILE"));
+
+        WorkerNode firstWorker = new WorkerNode(0, "test_data/scratch", width);
+        firstWorker.start();
+        WorkerNode secondWorker = new WorkerNode(0, "test_data/scratch", width);
+        secondWorker.start();
+        try {
+            for (int workersNum = 1; workersNum <= 2; workersNum++) {
+                WorkerCoordinator coordinator = new WorkerCoordinator("test_data/scratch");
+                coordinator.addWorker(firstWorker.getAddress());
+                if (workersNum == 2) coordinator.addWorker(secondWorker.getAddress());
+
+                BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 31 + workersNum);
+                blockWorkFlow.setWorkerCoordinator(coordinator);
+                JSONArray jsonArray = blockWorkFlow.execute(new JSONObject(jsonObject.toString()), "test_data", null);
+                for (int i = 0; i < jsonArray.length(); i++) {
+                    assert !jsonArray.getJSONObject(i).getBoolean("error");
+                }
+
+                //the blocks running at once are spread over all the workers
+                for (WorkerCoordinator.Worker worker : coordinator.getWorkers()) {
+                    assert worker.getRunning() == 0;
+                    assert worker.getExecuted() > 0;
+                }
+
+                //each READ_FILE block is placed on the worker which wrote its file
+                for (int id = 1; id <= width; id++) {
+                    BlockObservation writer = blockWorkFlow.getIndexBlocksMap().get(id);
+                    BlockObservation reader = blockWorkFlow.getIndexBlocksMap().get(id + width);
+                    assert reader.getWorker() == writer.getWorker();
+                    assert ("text" + id).equals(reader.getFinalOutputObject());
+                }
+            }
+        } finally {
+            firstWorker.close();
+            secondWorker.close();
+            FileUtils.deleteQuietly(new File("test_data/scratch"));
+        }
+    }
+
+    @Test
+    public void testCheckpointResume() throws Exception {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+
+        JSONObject jsonObject = new JSONObject(json);
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARITHMETIC", "CONSTANT"));
+
+        File checkpointDirectory = new File("test_data/checkpoints");
+        try {
+            BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 40);
+            blockWorkFlow.setCheckpointDirectory(checkpointDirectory.getPath());
+            blockWorkFlow.execute(jsonObject, "test_data", null);
+
+            CheckpointStore store = new CheckpointStore(new File(checkpointDirectory, "job_40"));
+            assert store.load().keySet().equals(new HashSet<>(Arrays.asList(1, 2, 3)));
+
+            //the last block did not complete, and the checkpointed constant must not be executed again
+            FileUtils.forceDelete(new File(store.getDirectory(), "block_1" + CheckpointStore.CHECKPOINT_SUFFIX));
+            JSONObject changed = store.loadWorkflow();
+            changed.getJSONArray("blocks").getJSONObject(2).getJSONObject("values").put("Value", "100");
+            store.saveWorkflow(changed);
+
+            BlockWorkFlow resumed = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 41);
+            resumed.setCheckpointDirectory(checkpointDirectory.getPath());
+            JSONArray jsonArray = resumed.resume(40, "test_data", null);
+
+            assert !jsonArray.getJSONObject(0).getBoolean("error");
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getString("value").equals("15");
+            assert jsonArray.getJSONObject(2).getBoolean("completed");
+            assert store.load().containsKey(1);
+        } finally {
+            FileUtils.deleteQuietly(checkpointDirectory);
+        }
+    }
+
+    @Test
+    public void testCheckpointResumeArrays() throws Exception {
+        int length = 100000;
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        blocksArray.put(new JSONObject().put("id", 1).put("type", "ARRAY_RANGE").put("module", "test.jar:test")
+                .put("values", new JSONObject().put("Length", String.valueOf(length))));
+        for(int id = 2; id <= 3; id++){
+            blocksArray.put(new JSONObject().put("id", id).put("type", "ARRAY_SUM").put("module", "test.jar:test").put("values", new JSONObject()));
+            edgesArray.put(new JSONObject().put("block1", 1).put("connector1", new JSONArray().put("Values").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("Values").put("input")));
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARRAY_RANGE", "ARRAY_SUM"));
+        String sum = String.valueOf((long) length * (length + 1) / 2);
+
+        File checkpointDirectory = new File("test_data/checkpoints");
+        try {
+            //the range is released after its last read and spilled before, its checkpoint still has the values
+            BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 42);
+            blockWorkFlow.setCheckpointDirectory(checkpointDirectory.getPath());
+            blockWorkFlow.setMemoryBudget(JobMemoryManager.MINIMUM_BYTES);
+            blockWorkFlow.setSpillDirectory("test_data");
+            blockWorkFlow.execute(jsonObject, "test_data", null);
+
+            CheckpointStore store = new CheckpointStore(new File(checkpointDirectory, "job_42"));
+            Object values = store.load().get(1).getBlockData().getOutput().get("Values");
+            assert values instanceof int[] && ((int[]) values).length == length;
+
+            FileUtils.forceDelete(new File(store.getDirectory(), "block_2" + CheckpointStore.CHECKPOINT_SUFFIX));
+            BlockWorkFlow resumed = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 43);
+            resumed.setCheckpointDirectory(checkpointDirectory.getPath());
+            JSONArray jsonArray = resumed.resume(42, "test_data", null);
+
+            assert !jsonArray.getJSONObject(1).getBoolean("error");
+            assert jsonArray.getJSONObject(1).getJSONObject("output").getString("value").equals(sum);
+            assert jsonArray.getJSONObject(2).getJSONObject("output").getString("value").equals(sum);
+        } finally {
+            FileUtils.deleteQuietly(checkpointDirectory);
+        }
+    }
+
+    @Test
+    public void testCheckpointSnapshot() throws Exception {
+        //ARRAY_NEGATE changes the array of the range in place, the checkpoint of the range keeps the values as executed
+        int length = 100000;
+        JSONObject jsonObject = new JSONObject().put("blocks", new JSONArray()
+                .put(new JSONObject().put("id", 1).put("type", "ARRAY_RANGE").put("module", "test.jar:test")
+                        .put("values", new JSONObject().put("Length", String.valueOf(length))))
+                .put(new JSONObject().put("id", 2).put("type", "ARRAY_NEGATE").put("module", "test.jar:test").put("values", new JSONObject())))
+                .put("edges", new JSONArray().put(new JSONObject().put("block1", 1).put("connector1", new JSONArray().put("Values").put("output"))
+                        .put("block2", 2).put("connector2", new JSONArray().put("Values").put("input"))));
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARRAY_RANGE", "ARRAY_NEGATE"));
+
+        File checkpointDirectory = new File("test_data/checkpoints");
+        try {
+            BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 44);
+            blockWorkFlow.setCheckpointDirectory(checkpointDirectory.getPath());
+            JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", null);
+            assert jsonArray.getJSONObject(1).getJSONObject("output").getString("value").equals(String.valueOf(-(long) length * (length + 1) / 2));
+
+            CheckpointStore store = new CheckpointStore(new File(checkpointDirectory, "job_44"));
+            int[] values = (int[]) store.load().get(1).getBlockData().getOutput().get("Values");
+            for(int i = 0; i < length; i++){
+                assert values[i] == i + 1;
+            }
+            assert !new File(store.getDirectory(), "block_1.tmp").exists();
+        } finally {
+            FileUtils.deleteQuietly(checkpointDirectory);
+        }
+    }
+
+    @Test
+    public void testOperatorFusion() throws Exception {
+        //10-stage filter chain between a RecordPets source and a RecordPetTarget
+        int pets = 20000, stages = 10;
+        StringBuilder names = new StringBuilder(), types = new StringBuilder();
+        for(int i = 0; i < pets; i++){
+            names.append(i == 0 ? "" : ",").append("pet").append(i);
+            types.append(i == 0 ? "" : ",").append(i % 4 == 0 ? "cat" : "dog");
+        }
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        blocksArray.put(new JSONObject().put("id", 1).put("type", "RecordPets").put("module", "test.jar:test")
+                .put("values", new JSONObject().put("petsNames", names.toString()).put("petsTypes", types.toString())));
+        for(int id = 2; id <= stages + 1; id++){
+            blocksArray.put(new JSONObject().put("id", id).put("type", "RecordPetFilter").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("targetPetType", id == 2 ? "cat" : "")));
+            edgesArray.put(new JSONObject().put("block1", id - 1).put("connector1", new JSONArray().put(id == 2 ? "mixedPets" : "targetPets").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("petsIn").put("input")));
+        }
+        blocksArray.put(new JSONObject().put("id", stages + 2).put("type", "RecordPetTarget").put("module", "test.jar:test").put("values", new JSONObject()));
+        edgesArray.put(new JSONObject().put("block1", stages + 1).put("connector1", new JSONArray().put("targetPets").put("output"))
+                .put("block2", stages + 2).put("connector2", new JSONArray().put("TargetPets").put("input")));
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("RecordPets", "RecordPetFilter", "RecordPetTarget"));
+
+        String[] outputs = new String[2];
+        for(int fused = 0; fused < 2; fused++){
+            BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 50 + fused);
+            blockWorkFlow.setOperatorFusion(fused == 1);
+            JSONArray jsonArray = blockWorkFlow.execute(new JSONObject(jsonObject.toString()), "test_data", null);
+
+            for (int i = 0; i < jsonArray.length(); i++) {
+                assert !jsonArray.getJSONObject(i).getBoolean("error");
+                assert jsonArray.getJSONObject(i).getBoolean("completed");
+            }
+            assert blockWorkFlow.getFusedBlocks().size() == (fused == 1 ? stages : 0);
+            Table cats = (Table) blockWorkFlow.getIndexBlocksMap().get(stages + 2).getFinalOutputObject();
+            assert cats.getRows().size() == pets / 4;
+            outputs[fused] = cats.toCSV();
+        }
+        assert outputs[1].equals(outputs[0]);
+    }
+
+    @Test
+    public void testReleaseOutputs() throws Exception {
+        int length = 100000;
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        blocksArray.put(new JSONObject().put("id", 1).put("type", "ARRAY_RANGE").put("module", "test.jar:test")
+                .put("values", new JSONObject().put("Length", String.valueOf(length))));
+        for(int id = 2; id <= 3; id++){
+            blocksArray.put(new JSONObject().put("id", id).put("type", "ARRAY_SUM").put("module", "test.jar:test").put("values", new JSONObject()));
+            edgesArray.put(new JSONObject().put("block1", 1).put("connector1", new JSONArray().put("Values").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("Values").put("input")));
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARRAY_RANGE", "ARRAY_SUM"));
+
+        for(int release = 0; release < 2; release++){
+            BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 60 + release);
+            blockWorkFlow.setReleaseOutputs(release == 1);
+            JSONArray jsonArray = blockWorkFlow.execute(new JSONObject(jsonObject.toString()), "test_data", null);
+
+            for(int i = 0; i < jsonArray.length(); i++){
+                assert !jsonArray.getJSONObject(i).getBoolean("error");
+            }
+            assert jsonArray.getJSONObject(1).getJSONObject("output").getString("value").equals(String.valueOf((long) length * (length + 1) / 2));
+            //the outputs are only measured when they are released
+            assert (blockWorkFlow.getPeakLiveOutputBytes() >= 4L * length) == (release == 1);
+
+            //both readers are done with the range, the sums have no readers and are kept
+            ArrayRange range = (ArrayRange) blockWorkFlow.getIndexBlocksMap().get(1).getContext();
+            Field values = ArrayRange.class.getDeclaredField("values");
+            values.setAccessible(true);
+            assert (values.get(range) == null) == (release == 1);
+            assert blockWorkFlow.getLiveOutputBytes() < 4L * length;
+            assert blockWorkFlow.getIndexBlocksMap().get(2).getFinalOutputObject() != null;
+        }
+    }
+
+    @Test
+    public void testSizeEstimator() {
+        List<Integer> numbers = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) numbers.add(i);
+        long boxed = SizeEstimator.HEADER_BYTES + 8;
+        assert SizeEstimator.estimate(numbers) == 2 * SizeEstimator.HEADER_BYTES + 1000 * (SizeEstimator.REFERENCE_BYTES + boxed);
+        assert SizeEstimator.estimate(numbers.toArray(new Integer[0])) == SizeEstimator.HEADER_BYTES + 1000 * (SizeEstimator.REFERENCE_BYTES + boxed);
+
+        //other elements are still counted once however often they are referenced
+        String name = "abc";
+        List<Object> mixed = new ArrayList<Object>(Arrays.asList(1, name, name));
+        assert SizeEstimator.estimate(mixed) == 2 * SizeEstimator.HEADER_BYTES + 3 * SizeEstimator.REFERENCE_BYTES + boxed + SizeEstimator.estimate(name);
+    }
+
+    @Test
+    public void testSpillOutputs() throws Exception {
+        int length = 400000;
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for(int range = 1; range <= 2; range++){
+            blocksArray.put(new JSONObject().put("id", range).put("type", "ARRAY_RANGE").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("Length", String.valueOf(range * length))));
+        }
+        for(int id = 3; id <= 5; id++){
+            blocksArray.put(new JSONObject().put("id", id).put("type", "ARRAY_SUM").put("module", "test.jar:test").put("values", new JSONObject()));
+            edgesArray.put(new JSONObject().put("block1", id == 5 ? 2 : 1).put("connector1", new JSONArray().put("Values").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("Values").put("input")));
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARRAY_RANGE", "ARRAY_SUM"));
+
+        //a budget below every output spills all of them, each is loaded back by its readers
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 62);
+        blockWorkFlow.setMemoryBudget(JobMemoryManager.MINIMUM_BYTES);
+        blockWorkFlow.setMemoryThreshold(0.95);
+        blockWorkFlow.setSpillDirectory("test_data");
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", null);
+
+        for(int i = 0; i < jsonArray.length(); i++){
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+        assert jsonArray.getJSONObject(2).getJSONObject("output").getString("value").equals(String.valueOf((long) length * (length + 1) / 2));
+        assert jsonArray.getJSONObject(3).getJSONObject("output").getString("value").equals(String.valueOf((long) length * (length + 1) / 2));
+        assert jsonArray.getJSONObject(4).getJSONObject("output").getString("value").equals(String.valueOf(2L * length * (2 * length + 1) / 2));
+
+        JobMemoryManager memoryManager = blockWorkFlow.getMemoryManager();
+        assert memoryManager.getSpilledOutputs() >= 2;
+        assert memoryManager.getReloadedOutputs() >= 2;
+        assert memoryManager.getWrittenBytes() >= 3L * 4 * length;
+        assert !memoryManager.getDirectory().exists();
+    }
+
+    @Test
+    public void testMemoryUsageThreshold() {
+        Map<String, Long> previous = new HashMap<>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.isCollectionUsageThresholdSupported()) previous.put(pool.getName(), pool.getCollectionUsageThreshold());
+        }
+
+        //the managers of concurrent jobs share the threshold, the lowest fraction applies while its manager is open
+        JobMemoryManager first  = new JobMemoryManager(new File("test_data", "spill_threshold_1"), 0, 0.95);
+        JobMemoryManager second = new JobMemoryManager(new File("test_data", "spill_threshold_2"), 0, 0.9);
+        List<Long> thresholds = new ArrayList<>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.isCollectionUsageThresholdSupported()) thresholds.add(pool.getCollectionUsageThreshold() - (long) (pool.getUsage().getMax() * 0.9));
+        }
+        assert thresholds.contains(0L);
+        second.close();
+        thresholds.clear();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.isCollectionUsageThresholdSupported()) thresholds.add(pool.getCollectionUsageThreshold() - (long) (pool.getUsage().getMax() * 0.95));
+        }
+        assert thresholds.contains(0L);
+
+        //the last manager restores the thresholds the pools had
+        first.close();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.isCollectionUsageThresholdSupported()) assert pool.getCollectionUsageThreshold() == previous.get(pool.getName());
+        }
+    }
+
+    @Test
+    public void testNumericVector() throws Exception {
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        blocksArray.put(new JSONObject().put("id", 1).put("type", "VECTOR_RANGE").put("module", "test.jar:test")
+                .put("values", new JSONObject().put("Length", "1000")));
+        blocksArray.put(new JSONObject().put("id", 2).put("type", "VECTOR_RANGE").put("module", "test.jar:test")
+                .put("values", new JSONObject().put("Length", "500")));
+        for(int id = 3; id <= 4; id++){
+            blocksArray.put(new JSONObject().put("id", id).put("type", "VECTOR_SUM").put("module", "test.jar:test").put("values", new JSONObject()));
+        }
+        int[][] edges = {{1, 3}, {2, 3}, {1, 4}};
+        for(int[] edge : edges){
+            edgesArray.put(new JSONObject().put("block1", edge[0]).put("connector1", new JSONArray().put("Samples").put("output"))
+                    .put("block2", edge[1]).put("connector2", new JSONArray().put("Samples").put("input")));
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("VECTOR_RANGE", "VECTOR_SUM"));
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 63);
+        blockWorkFlow.setReleaseOutputs(false);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", null);
+
+        //two sources are concatenated, a single source is handed over by reference
+        assert jsonArray.getJSONObject(2).getJSONObject("output").getString("value").equals(String.valueOf(500500 + 125250));
+        assert jsonArray.getJSONObject(3).getJSONObject("output").getString("value").equals("500500");
+        Field samples = VectorRange.class.getDeclaredField("samples");
+        samples.setAccessible(true);
+        Field input = VectorSum.class.getDeclaredField("samples");
+        input.setAccessible(true);
+        assert input.get(blockWorkFlow.getIndexBlocksMap().get(4).getContext()) == samples.get(blockWorkFlow.getIndexBlocksMap().get(1).getContext());
+
+        //a direct vector is serialized as its values, a mapped one as a handle to its file
+        NumericVector direct = NumericVector.copyOf(new double[]{1.5, 2.5, 3.5});
+        NumericVector copy = (NumericVector) SerializationUtils.deserialize(SerializationUtils.serialize(direct));
+        assert !copy.isMapped() && Arrays.equals(copy.toArray(), direct.toArray());
+
+        File vectorFile = new File("test_data", "vector_test.vec");
+        NumericVector mapped = direct.share(vectorFile);
+        NumericVector handle = (NumericVector) SerializationUtils.deserialize(SerializationUtils.serialize(mapped));
+        assert handle.isMapped() && handle.getFile().getAbsoluteFile().equals(vectorFile.getAbsoluteFile());
+        mapped.set(0, 9);
+        assert handle.get(0) == 9;
+        handle.unlink();
+        assert !vectorFile.exists() && handle.get(2) == 3.5;
+        NumericVector unlinked = (NumericVector) SerializationUtils.deserialize(SerializationUtils.serialize(handle));
+        assert !unlinked.isMapped() && unlinked.get(0) == 9;
+
+        Table table = new Table();
+        table.setColumnHeaders(Arrays.asList("a", "b"));
+        table.setColumns(Arrays.asList(NumericVector.copyOf(new double[]{1, 2}), NumericVector.copyOf(new double[]{3})));
+        assert table.toCSV().equals("a,b\n1.0,3.0\n2.0,\n");
+        assert table.toJSON().getJSONArray("data").length() == 3;
+
+        Trace trace = new Trace();
+        trace.setValues(NumericVector.copyOf(new double[]{0, 1}), NumericVector.copyOf(new double[]{4, 5}));
+        assert trace.toJSON().getJSONArray("y").getDouble(1) == 5;
+    }
+
+    @Test
+    public void testArrayFields() throws Exception {
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for(int id = 1; id <= 2; id++){
+            blocksArray.put(new JSONObject().put("id", id).put("type", "ARRAY_RANGE").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("Length", String.valueOf(4 - id))));
+            edgesArray.put(new JSONObject().put("block1", id).put("connector1", new JSONArray().put("Values").put("output"))
+                    .put("block2", 3).put("connector2", new JSONArray().put("Values").put("input")));
+        }
+        blocksArray.put(new JSONObject().put("id", 3).put("type", "ARRAY_STATS").put("module", "test.jar:test")
+                .put("values", new JSONObject().put("Weights", new JSONArray().put(0.5).put("1.5")).put("Labels", new JSONArray().put("a").put("b"))));
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARRAY_RANGE", "ARRAY_STATS"));
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 64);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", null);
+
+        //the int[] outputs of both sources are concatenated into the int[] input
+        assert jsonArray.getJSONObject(2).getJSONObject("output").getString("value").equals("9;2.0;a|b");
+        Field values = ArrayStats.class.getDeclaredField("values");
+        values.setAccessible(true);
+        assert Arrays.equals((int[]) values.get(blockWorkFlow.getIndexBlocksMap().get(3).getContext()), new int[]{1, 2, 3, 1, 2});
+
+        //arrays of another primitive type are converted element by element
+        assert Arrays.equals((long[]) ArrayFields.concat(long[].class, Arrays.asList(new int[]{1, 2}, 3L, new long[]{4})), new long[]{1, 2, 3, 4});
+        assert Arrays.equals((double[]) ArrayFields.concat(double[].class, Arrays.asList(new int[]{1}, new long[]{2, 3}, Arrays.asList(0.5))),
+                new double[]{1, 2, 3, 0.5});
+        assert Arrays.equals((double[]) ArrayFields.concat(double[].class, Collections.singletonList(new int[]{7, 8})), new double[]{7, 8});
+
+        //File names given as Strings become Files
+        File[] files = (File[]) ArrayFields.concat(File[].class, Arrays.asList(new File[]{new File("a")}, "b", Arrays.asList("c", new File("d")), new String[]{"e"}));
+        assert Arrays.equals(files, new File[]{new File("a"), new File("b"), new File("c"), new File("d"), new File("e")});
+    }
+
+    @Test
+    public void testInProcessJars() throws Exception {
+        //module jar with the compiled test blocks
+        File modules = new File("test_data", "modules");
+        FileUtils.deleteQuietly(modules);
+        modules.mkdirs();
+        File jar = new File(modules, "test.jar");
+        writeModuleJar(jar, false);
+
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+        JSONObject jsonObject = new JSONObject(json);
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("ARITHMETIC", "CONSTANT"));
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, modules.getPath(), "test_data", 65);
+        blockWorkFlow.setInProcessJars(true);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", null);
+        assert jsonArray.getJSONObject(0).getJSONObject("output").getString("value").equals("15");
+
+        //the module classes are loaded child-first, once per jar version
+        ModuleClassLoader loader = ModuleClassLoader.forJar(jar);
+        Class arithmetic = loader.blockType("test", "ARITHMETIC");
+        assert arithmetic != null && arithmetic != ArithmeticBlock.class && arithmetic.getClassLoader() == loader;
+
+        //the cached plan of the workflow is not reused once ARITHMETIC resolves to the class of the deployed module
+        ExecutionPlan plan = ExecutionPlan.compile(jsonObject, moduleSource);
+        Map<Class, String> deployed = new LinkedHashMap<>(moduleSource);
+        deployed.put(arithmetic, moduleSource.get(ArithmeticBlock.class));
+        ExecutionPlan deployedPlan = ExecutionPlan.compile(jsonObject, deployed);
+        assert deployedPlan != plan;
+        assert deployedPlan.getBlock(2).getBlockClass() == arithmetic;
+        assert ModuleClassLoader.forJar(jar) == loader;
+        assert loader.findResource("test/ArithmeticBlock.class") != null;
+        writeModuleJar(jar, true);
+        assert ModuleClassLoader.forJar(jar) != loader;
+        assert loader.findResource("test/ArithmeticBlock.class") == null;     //the loader of the replaced jar is closed
+
+        FileUtils.deleteQuietly(modules);
+    }
+
+    @Test
+    public void testClassDataSharing() throws IOException {
+        File modules = new File("test_data/cds_modules");
+        modules.mkdirs();
+        File jar = new File(modules, "test.jar");
+        writeModuleJar(jar, false);
+
+        //the first launch dumps the archive, reporting its startup time
+        ClassDataSharing.Launch first = ClassDataSharing.launch(jar, true);
+        assert !ClassDataSharing.isSupported() || first.isDumping();
+        if (ClassDataSharing.isSupported()) {
+            assert first.getOptions().contains("-XX:ArchiveClassesAtExit=" + first.getDumpFile().getAbsolutePath());
+            assert !ClassDataSharing.launch(jar, true).isDumping();   //only one launch dumps at a time
+            FileUtils.writeStringToFile(first.getDumpFile(), "archive", Charset.defaultCharset());
+        }
+        FileUtils.writeStringToFile(first.getStartupFile(), "300", Charset.defaultCharset());
+        assert first.finished(true) == 300;
+        assert !first.getStartupFile().exists();
+        assert ClassDataSharing.getStatistics(jar).getLaunches() == 1;
+        if (!ClassDataSharing.isSupported()) {
+            FileUtils.deleteQuietly(modules);
+            return;
+        }
+        File archive = ClassDataSharing.archiveFile(jar);
+        assert archive.isFile() && archive.equals(first.getArchive());
+
+        //later launches map it
+        ClassDataSharing.Launch second = ClassDataSharing.launch(jar, true);
+        assert second.isShared();
+        String[] command = second.command("-Xmx1G", "-cp", jar.getAbsolutePath());
+        assert command[0].equals("java") && command[1].equals("-Xmx1G");
+        assert Arrays.asList(command).contains("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        FileUtils.writeStringToFile(second.getStartupFile(), "100", Charset.defaultCharset());
+        second.finished(true);
+        ClassDataSharing.StartupStatistics statistics = ClassDataSharing.getStatistics(jar);
+        assert statistics.getSharedLaunches() == 1 && statistics.getMeanSharedStartupMillis() == 100;
+
+        //a replaced jar dumps a new archive and the stale one is deleted
+        writeModuleJar(jar, true);
+        assert !ClassDataSharing.archiveFile(jar).equals(archive);
+        ClassDataSharing.Launch third = ClassDataSharing.launch(jar, true);
+        assert third.isDumping();
+        FileUtils.writeStringToFile(third.getDumpFile(), "archive", Charset.defaultCharset());
+        third.finished(true);
+        assert ClassDataSharing.archiveFile(jar).isFile() && !archive.exists();
+
+        //a failed launch discards its dump
+        writeModuleJar(jar, false);
+        ClassDataSharing.Launch failed = ClassDataSharing.launch(jar, true);
+        FileUtils.writeStringToFile(failed.getDumpFile(), "archive", Charset.defaultCharset());
+        failed.close();
+        assert !failed.getDumpFile().exists() && !ClassDataSharing.archiveFile(jar).exists();
+
+        FileUtils.deleteQuietly(modules);
+    }
+
+    @Test
+    public void testForkStreams() throws WrongTypeException, IOException, NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException, FieldMismatchException, InterruptedException{
+        File modules = new File("test_data/stream_modules");
+        modules.mkdirs();
+        writeForkableModuleJar(new File(modules, "test.jar"));
+
+        String json = FileUtils.readFileToString(new File("test_data/pipedStreamTest.json"), Charset.defaultCharset());
+        JSONObject jsonObject = new JSONObject(json);
+        File outputFile = File.createTempFile("testForkStreams",".json");
+        outputFile.deleteOnExit();
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("MixedPets", "PetFilter", "TargetPet"));
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, modules.getPath(), "test_data", 66);
+        blockWorkFlow.setForkStreams(true);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+        assert jsonArray.length() == 6;
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject block = jsonArray.getJSONObject(i);
+            assert block.getBoolean("completed");
+            assert !block.getBoolean("error");
+
+            //the cats of both MixedPets reached TargetPet 3 through its forked PetFilter
+            if (block.getInt("id") == 3) {
+                String table = FileUtils.readFileToString(new File("test_data", block.getJSONObject("output").getJSONObject("value").getString("filename")), Charset.defaultCharset());
+                assert table.contains("meow") && table.contains("lucky") && table.contains("yoki") && table.contains("jiXiang");
+                assert !table.contains("apple");
+            }
+        }
+
+        FileUtils.deleteQuietly(modules);
+    }
+
+    /**
+     * writeForkableModuleJar
+     * module jar which a forked JVM can run: its manifest refers to the engine classes and dependencies of the tests
+     */
+    private static void writeForkableModuleJar(File jar) throws IOException {
+        String testClassPath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+        StringBuilder classPath = new StringBuilder();
+        for (String entry : testClassPath.split(File.pathSeparator)) {
+            if (entry.isEmpty()) continue;
+            classPath.append(classPath.length() == 0 ? "" : " ").append(new File(entry).toURI().toURL());
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath.toString());
+
+        File classes = new File(WorkflowDesignerTest.class.getProtectionDomain().getCodeSource().getLocation().getPath(), "test");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            for (File classFile : classes.listFiles()) {
+                out.putNextEntry(new JarEntry("test/" + classFile.getName()));
+                out.write(FileUtils.readFileToByteArray(classFile));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void writeModuleJar(File jar, boolean withReadme) throws IOException {
+        File classes = new File(WorkflowDesignerTest.class.getProtectionDomain().getCodeSource().getLocation().getPath(), "test");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (File classFile : classes.listFiles()) {
+                out.putNextEntry(new JarEntry("test/" + classFile.getName()));
+                out.write(FileUtils.readFileToByteArray(classFile));
+                out.closeEntry();
+            }
+            if (withReadme) {
+                out.putNextEntry(new JarEntry("README"));
+                out.write("version 2".getBytes());
+                out.closeEntry();
+            }
+        }
+    }
+
+    @Test
+    public void testStreamDiamonds() throws Exception {
+        //1 -> 2 -> 4 and 1 -> 3 -> 4 close a diamond at block 4, 5 -> 6 and 2 -> 6 do not share a source
+        int[] sources      = {1, 1, 2, 3, 5, 2};
+        int[] destinations = {2, 3, 4, 4, 6, 6};
+        assert StreamDiamonds.find(sources, destinations).equals(new HashSet<>(Arrays.asList(2, 3)));
+
+        //RepeatedPets feeds both inputs of PetFilter, which reads petsIn1 to its end before petsIn2
+        JSONObject jsonObject = new JSONObject("{blocks: ["
+                + "{id: 1, type: RepeatedPets, module: 'test.jar:test', values: {petType: cat, Count: 3000}},"
+                + "{id: 2, type: PetFilter, module: 'test.jar:test', values: {targetPetType: cat}},"
+                + "{id: 3, type: TargetPet, module: 'test.jar:test', values: {}}],"
+                + "edges: ["
+                + "{block1: 1, connector1: [pets, output], block2: 2, connector2: [petsIn1, input]},"
+                + "{block1: 1, connector1: [pets, output], block2: 2, connector2: [petsIn2, input]},"
+                + "{block1: 2, connector1: [targetPets, output], block2: 3, connector2: [TargetPets, input]}]}");
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("RepeatedPets", "PetFilter", "TargetPet"));
+
+        for(boolean directPipes : new boolean[]{false, true}){
+            File outputFile = File.createTempFile("testStreamDiamonds",".json");
+            outputFile.deleteOnExit();
+            BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null,"test_data",67);
+            blockWorkFlow.setDirectPipes(directPipes);
+            blockWorkFlow.setSpillThreshold(4096);
+            JSONArray jsonArray = blockWorkFlow.execute(new JSONObject(jsonObject.toString()), "test_data", outputFile.getAbsolutePath());
+            for (int i = 0; i < jsonArray.length(); i++) {
+                assert jsonArray.getJSONObject(i).getBoolean("completed");
+                assert !jsonArray.getJSONObject(i).getBoolean("error");
+            }
+            assert blockWorkFlow.getElasticEdges().equals(Arrays.asList("1.pets -> 2.petsIn1", "1.pets -> 2.petsIn2"));
+            assert blockWorkFlow.getStallReports().isEmpty();
+
+            Table cats = (Table) blockWorkFlow.getIndexBlocksMap().get(3).getFinalOutputObject();
+            assert cats.getRows().size() == 6000;
+        }
+    }
+
+    @Test
+    public void testMixDestination() throws Exception {
+        //the transit of the piped pets holds them back until both sources of the MIX block PetCounter are complete
+        JSONObject jsonObject = new JSONObject("{blocks: ["
+                + "{id: 1, type: RepeatedPets, module: 'test.jar:test', values: {petType: dog, Count: 3000}},"
+                + "{id: 2, type: CONSTANT, module: 'test.jar:test', values: {Value: 7}},"
+                + "{id: 3, type: PetCounter, module: 'test.jar:test', values: {}}],"
+                + "edges: ["
+                + "{block1: 1, connector1: [pets, output], block2: 3, connector2: [Pets, input]},"
+                + "{block1: 2, connector1: [Operand, output], block2: 3, connector2: [Offset, input]}]}");
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("RepeatedPets", "CONSTANT", "PetCounter"));
+
+        File outputFile = File.createTempFile("testMixDestination",".json");
+        outputFile.deleteOnExit();
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null,"test_data",69);
+        blockWorkFlow.setSpillThreshold(4096);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert jsonArray.getJSONObject(i).getBoolean("completed");
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+        assert blockWorkFlow.getIndexBlocksMap().get(3).getBlockModel() == BlockObservation.MIX;
+        assert "3007".equals(blockWorkFlow.getIndexBlocksMap().get(3).getFinalOutputObject());
+    }
+
+    @Test
+    public void testContinuousDependencies() throws Exception {
+        //Fibonacci chain of NORMAL blocks, each submitted once its two sources finished, next to a piped pair
+        int chainEnd = 32;
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for (int id = 1; id <= chainEnd; id++) {
+            JSONObject blockObject = new JSONObject().put("id", id).put("module", "test.jar:test");
+            if (id <= 2) {
+                blockObject.put("type", "CONSTANT").put("values", new JSONObject().put("Value", "1"));
+            } else {
+                blockObject.put("type", "ARITHMETIC").put("values", new JSONObject().put("Operation", "add"));
+                edgesArray.put(new JSONObject().put("block1", id - 1).put("connector1", new JSONArray().put(id - 1 <= 2 ? "Operand" : "Operand3").put("output"))
+                        .put("block2", id).put("connector2", new JSONArray().put("Operand1").put("input")));
+                edgesArray.put(new JSONObject().put("block1", id - 2).put("connector1", new JSONArray().put(id - 2 <= 2 ? "Operand" : "Operand3").put("output"))
+                        .put("block2", id).put("connector2", new JSONArray().put("Operand2").put("input")));
+            }
+            blocksArray.put(blockObject);
+        }
+        blocksArray.put(new JSONObject("{id: 100, type: RepeatedPets, module: 'test.jar:test', values: {petType: dog, Count: 10}}"));
+        blocksArray.put(new JSONObject("{id: 101, type: TargetPet, module: 'test.jar:test', values: {}}"));
+        edgesArray.put(new JSONObject("{block1: 100, connector1: [pets, output], block2: 101, connector2: [TargetPets, input]}"));
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("CONSTANT", "ARITHMETIC", "RepeatedPets", "TargetPet"));
+        File outputFile = File.createTempFile("testContinuousDependencies",".json");
+        outputFile.deleteOnExit();
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null,"test_data",68);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert jsonArray.getJSONObject(i).getBoolean("completed");
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+        //every block read the final outputs of both its sources, so none ran before them
+        int[] fibonacci = new int[chainEnd + 1];
+        fibonacci[1] = fibonacci[2] = 1;
+        for (int id = 3; id <= chainEnd; id++) {
+            fibonacci[id] = fibonacci[id - 1] + fibonacci[id - 2];
+            assert String.valueOf(fibonacci[id]).equals(blockWorkFlow.getIndexBlocksMap().get(id).getFinalOutputObject());
+        }
+        assert "2178309".equals(blockWorkFlow.getIndexBlocksMap().get(chainEnd).getFinalOutputObject());
+        assert ((Table) blockWorkFlow.getIndexBlocksMap().get(101).getFinalOutputObject()).getRows().size() == 10;
+    }
+
+    @Test
+    public void testInlineSuccessors() throws Exception {
+        //Fibonacci chain: each ARITHMETIC block makes exactly its next block ready
+        int chainEnd = 32;
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for (int id = 1; id <= chainEnd; id++) {
+            JSONObject blockObject = new JSONObject().put("id", id).put("module", "test.jar:test");
+            if (id <= 2) {
+                blockObject.put("type", "CONSTANT").put("values", new JSONObject().put("Value", "1"));
+            } else {
+                blockObject.put("type", "ARITHMETIC").put("values", new JSONObject().put("Operation", "add"));
+                edgesArray.put(new JSONObject().put("block1", id - 1).put("connector1", new JSONArray().put(id - 1 <= 2 ? "Operand" : "Operand3").put("output"))
+                        .put("block2", id).put("connector2", new JSONArray().put("Operand1").put("input")));
+                edgesArray.put(new JSONObject().put("block1", id - 2).put("connector1", new JSONArray().put(id - 2 <= 2 ? "Operand" : "Operand3").put("output"))
+                        .put("block2", id).put("connector2", new JSONArray().put("Operand2").put("input")));
+            }
+            blocksArray.put(blockObject);
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("CONSTANT", "ARITHMETIC"));
+        File outputFile = File.createTempFile("testInlineSuccessors",".json");
+        outputFile.deleteOnExit();
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null,"test_data",69);
+        blockWorkFlow.setInlineDepth(8);
+        blockWorkFlow.setInlineRuntimeMicros(100000);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", outputFile.getAbsolutePath());
+
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert jsonArray.getJSONObject(i).getBoolean("completed");
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+        assert "2178309".equals(blockWorkFlow.getIndexBlocksMap().get(chainEnd).getFinalOutputObject());
+        //every ninth block gets a thread again, the first ARITHMETIC block too unless an earlier one set its runtime
+        assert blockWorkFlow.getInlinedBlocks() >= 26 && blockWorkFlow.getInlinedBlocks() <= 27;
+        assert BlockObservation.getAverageExecuteNanos(ArithmeticBlock.class) != null;
+    }
+
+    @Test
+    public void testCompiledWorkflow() throws Exception {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("CONSTANT", "ARITHMETIC"));
+
+        final CompiledWorkflow workflow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 70)
+                .compile(new JSONObject(json));
+        assert workflow.getParameterNames().containsAll(Arrays.asList("1.Operation", "2.Value", "3.Value"));
+        assert workflow.getResultNames().equals(Collections.singleton("1.Operand3"));
+
+        Map<String, Object> results = workflow.invoke(new HashMap<String, Object>());
+        assert results.get("1.Operand3").equals(15);
+        assert results.get("1").equals("15");
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("2.Value", 20);
+        parameters.put("1.Operation", "multiply");
+        assert workflow.invoke(parameters).get("1.Operand3").equals(100);
+        assert workflow.invoke(new HashMap<String, Object>()).get("1.Operand3").equals(15);   //parameters last one invocation
+
+        //concurrent invocations take their own block instances
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> answers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            answers.add(requests.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    for (int i = 0; i < 2000; i++) {
+                        Map<String, Object> values = new HashMap<>();
+                        values.put("2.Value", thread * 10000 + i);
+                        if (!workflow.invoke(values).get("1.Operand3").equals(thread * 10000 + i + 5)) return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (Future<Boolean> answer : answers) {
+            assert answer.get();
+        }
+        requests.shutdown();
+        assert workflow.getInvocations() == 3 + 8000;
+        assert workflow.getInstanceSets() <= 4;
+
+        //an unconnected input left out of the parameters gets its compiled value again, not the previous one
+        JSONObject single = new JSONObject().put("edges", new JSONArray()).put("blocks", new JSONArray().put(new JSONObject()
+                .put("id", 1).put("type", "ARITHMETIC").put("module", "test.jar:test").put("values", new JSONObject().put("Operation", "add"))));
+        CompiledWorkflow adder = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 70).compile(single);
+        assert adder.getParameterNames().containsAll(Arrays.asList("1.Operand1", "1.Operand2"));
+        parameters = new HashMap<>();
+        parameters.put("1.Operand1", 4);
+        parameters.put("1.Operand2", 3);
+        assert adder.invoke(parameters).get("1.Operand3").equals(7);
+        parameters.remove("1.Operand1");
+        assert adder.invoke(parameters).get("1.Operand3").equals(3);
+
+        Pack.assignModuleSource(moduleSource, Arrays.asList("MixedPets", "PetFilter", "TargetPet"));
+        try {
+            new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 70)
+                    .compile(new JSONObject(FileUtils.readFileToString(new File("test_data/pipedStreamTest.json"), Charset.defaultCharset())));
+            assert false;
+        } catch (IllegalArgumentException e){
+            assert e.getMessage().contains("Continuous");
+        }
+    }
+
+    @Test
+    public void testGeneratedWorkflow() throws Exception {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("CONSTANT", "ARITHMETIC", "SUMMATION"));
+
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 71);
+        blockWorkFlow.setGenerateCode(true);
+        CompiledWorkflow workflow = blockWorkFlow.compile(new JSONObject(json));
+        assert workflow.getGeneratedPlan() != null;
+        assert workflow.invoke(new HashMap<String, Object>()).get("1.Operand3").equals(15);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("2.Value", 20);
+        parameters.put("1.Operation", "multiply");
+        Map<String, Object> results = workflow.invoke(parameters);
+        assert results.get("1.Operand3").equals(100);
+        assert results.get("1").equals("100");
+
+        //the class generated for the plan is reused
+        long generated = WorkflowCodeGenerator.getGeneratedClasses();
+        blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 72);
+        blockWorkFlow.setGenerateCode(true);
+        assert blockWorkFlow.compile(new JSONObject(json)).getGeneratedPlan() == workflow.getGeneratedPlan();
+        assert WorkflowCodeGenerator.getGeneratedClasses() == generated;
+
+        //three independent constants, a list input assigned reflectively and an arithmetic block
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for (int id = 1; id <= 3; id++) {
+            blocksArray.put(new JSONObject().put("id", id).put("type", "CONSTANT").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("Value", String.valueOf(id))));
+            edgesArray.put(new JSONObject().put("block1", id).put("connector1", new JSONArray().put("Operand").put("output"))
+                    .put("block2", 4).put("connector2", new JSONArray().put("Operand1").put("input")));
+        }
+        blocksArray.put(new JSONObject().put("id", 4).put("type", "SUMMATION").put("module", "test.jar:test").put("values", new JSONObject()));
+        blocksArray.put(new JSONObject().put("id", 5).put("type", "ARITHMETIC").put("module", "test.jar:test")
+                .put("values", new JSONObject().put("Operation", "subtract")));
+        edgesArray.put(new JSONObject().put("block1", 3).put("connector1", new JSONArray().put("Operand").put("output"))
+                .put("block2", 5).put("connector2", new JSONArray().put("Operand1").put("input")));
+        edgesArray.put(new JSONObject().put("block1", 1).put("connector1", new JSONArray().put("Operand").put("output"))
+                .put("block2", 5).put("connector2", new JSONArray().put("Operand2").put("input")));
+
+        blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 73);
+        blockWorkFlow.setGenerateCode(true);
+        final CompiledWorkflow branches = blockWorkFlow.compile(new JSONObject().put("blocks", blocksArray).put("edges", edgesArray));
+        assert branches.getGeneratedPlan() != null;
+        results = branches.invoke(new HashMap<String, Object>());
+        assert results.get("4").equals("6");
+        assert results.get("5.Operand3").equals(2);
+
+        ExecutorService branchPool = Executors.newFixedThreadPool(2);
+        branches.setBranchExecutor(branchPool);
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> answers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int thread = t;
+            answers.add(requests.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    for (int i = 0; i < 1000; i++) {
+                        Map<String, Object> values = new HashMap<>();
+                        values.put("3.Value", thread * 1000 + i);
+                        Map<String, Object> outputs = branches.invoke(values);
+                        if (!outputs.get("4").equals(String.valueOf(thread * 1000 + i + 3))) return false;
+                        if (!outputs.get("5.Operand3").equals(thread * 1000 + i - 1)) return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (Future<Boolean> answer : answers) {
+            assert answer.get();
+        }
+        requests.shutdown();
+        branchPool.shutdown();
+    }
+
+    @Test
+    public void testPlanOptimizer() throws Exception {
+        //constants 1 and 2 are the same, so are the additions 4 and 5 of their outputs; constant 3 leads nowhere
+        JSONArray blocksArray = new JSONArray();
+        JSONArray edgesArray = new JSONArray();
+        for (int id = 1; id <= 3; id++) {
+            blocksArray.put(new JSONObject().put("id", id).put("type", "CONSTANT").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("Value", id == 3 ? "9" : "5")));
+        }
+        for (int id = 4; id <= 5; id++) {
+            blocksArray.put(new JSONObject().put("id", id).put("type", "ARITHMETIC").put("module", "test.jar:test")
+                    .put("values", new JSONObject().put("Operation", "add")));
+            edgesArray.put(new JSONObject().put("block1", 1).put("connector1", new JSONArray().put("Operand").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("Operand1").put("input")));
+            edgesArray.put(new JSONObject().put("block1", 2).put("connector1", new JSONArray().put("Operand").put("output"))
+                    .put("block2", id).put("connector2", new JSONArray().put("Operand2").put("input")));
+        }
+        blocksArray.put(new JSONObject().put("id", 6).put("type", "SUMMATION").put("module", "test.jar:test").put("values", new JSONObject()));
+        for (int id = 1; id <= 2; id++) {
+            edgesArray.put(new JSONObject().put("block1", id).put("connector1", new JSONArray().put("Operand").put("output"))
+                    .put("block2", 6).put("connector2", new JSONArray().put("Operand1").put("input")));
+        }
+        JSONObject jsonObject = new JSONObject().put("blocks", blocksArray).put("edges", edgesArray);
+
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("CONSTANT", "ARITHMETIC", "SUMMATION"));
+        BlockWorkFlow blockWorkFlow = new BlockWorkFlow(ClassLoader.getSystemClassLoader(), moduleSource, null, "test_data", 74);
+        blockWorkFlow.setOptimizePlan(true);
+        JSONArray jsonArray = blockWorkFlow.execute(jsonObject, "test_data", null);
+
+        PlanOptimizer optimizer = blockWorkFlow.getPlanOptimizer();
+        assert optimizer.getEliminatedBlocks().equals(Collections.singleton(3));
+        assert optimizer.getMergedBlocks().size() == 2;
+        assert optimizer.getMergedBlocks().get(2) == 1 && optimizer.getMergedBlocks().get(5) == 4;
+        assert optimizer.getReports().size() == 3;
+        assert blockWorkFlow.getExecutionPlan().getBlocksNum() == 3;
+
+        assert jsonArray.length() == 6;
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert !jsonArray.getJSONObject(i).optBoolean("error", false);
+        }
+        assert jsonArray.getJSONObject(2).getBoolean("eliminated");
+        assert jsonArray.getJSONObject(1).getInt("mergedInto") == 1;
+        assert jsonArray.getJSONObject(3).getJSONObject("output").getString("value").equals("10");
+        assert jsonArray.getJSONObject(4).getInt("mergedInto") == 4;
+        assert jsonArray.getJSONObject(4).getJSONObject("output").getString("value").equals("10");
+        //the list input keeps one component for each of the merged sources
+        assert jsonArray.getJSONObject(5).getJSONObject("output").getString("value").equals("10");
+
+        //blocks which are not deterministic are never merged
+        String json = FileUtils.readFileToString(new File("test_data/pipedStreamTest.json"), Charset.defaultCharset());
+        JSONObject piped = new JSONObject(json);
+        piped.getJSONArray("blocks").getJSONObject(1).put("values", piped.getJSONArray("blocks").getJSONObject(0).getJSONObject("values"));
+        Pack.assignModuleSource(moduleSource, Arrays.asList("MixedPets", "PetFilter", "TargetPet"));
+        assert !new PlanOptimizer(ExecutionPlan.compile(piped, moduleSource), piped).isOptimized();
+    }
+
+    @Test
+    public void testStallDetector() throws Exception {
+        PipedInputStream fullIn = new PipedInputStream(16);
+        final PipeEdge full = new PipeEdge("1.out -> 2.in", new PipedOutputStream(fullIn), fullIn);
+        PipedInputStream emptyIn = new PipedInputStream(16);
+        PipeEdge empty = new PipeEdge("1.out -> 3.in", new PipedOutputStream(emptyIn), emptyIn);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    full.write(new byte[64]);
+                    full.close();
+                } catch (IOException e){
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        writer.start();
+
+        StallDetector detector = new StallDetector(Arrays.asList(full, empty), 100, 0);
+        Thread.sleep(300);
+        detector.run();
+        detector.run();     //each stall is reported once
+        assert detector.getReports().size() == 2;
+        assert detector.getReports().get(0).startsWith("Edge 1.out -> 2.in has been full");
+        assert detector.getReports().get(1).startsWith("Edge 1.out -> 3.in has been empty");
+
+        byte[] read = new byte[64];
+        int n = 0;
+        while(n < read.length) n += fullIn.read(read, n, read.length - n);
+        writer.join();
+        empty.close();
+        detector.run();
+        assert detector.getReports().size() == 2;
+    }
+
+    @Test
+    public void testSpillBuffer() throws IOException {
+        byte[] stream = new byte[100000];
+        new Random(7).nextBytes(stream);
+
+        SpillBuffer buffer = new SpillBuffer(1024, "testSpillBuffer_");
+        for(int off = 0; off < stream.length; off += 999){
+            buffer.write(stream, off, Math.min(999, stream.length - off));
+        }
+        assert buffer.size() == stream.length;
+        assert buffer.isSpilled();
+
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+        buffer.replayTo(Arrays.asList(out1, out2));
+        buffer.close();
+        assert Arrays.equals(out1.toByteArray(), stream);
+        assert Arrays.equals(out2.toByteArray(), stream);
+        assert !buffer.isSpilled();
+
+        //read while written: the bytes come out in order, the drained spill file is deleted and memory is used again
+        SpillBuffer queue = new SpillBuffer(1024, "testSpillBuffer_");
+        ByteArrayOutputStream queued = new ByteArrayOutputStream();
+        byte[] chunk = new byte[700];
+        for(int off = 0; off < stream.length; off += 999){
+            queue.write(stream, off, Math.min(999, stream.length - off));
+            int n = queue.read(chunk, 0, chunk.length);
+            queued.write(chunk, 0, n);
+        }
+        assert queue.isSpilled();
+        int n;
+        while((n = queue.read(chunk, 0, chunk.length)) > 0) queued.write(chunk, 0, n);
+        assert queue.size() == 0 && !queue.isSpilled();
+        assert Arrays.equals(queued.toByteArray(), stream);
+        queue.write(stream, 0, 10);
+        assert !queue.isSpilled();
+        queue.close();
+
+        //an elastic edge queues the stream for a destination which does not read yet, without blocking its writer
+        PipedInputStream destination = new PipedInputStream(1024);
+        PipeEdge edge = new PipeEdge("1.out -> 2.in", new PipedOutputStream(destination), destination, 4096, "testSpillBuffer_");
+        Thread drain = new Thread(edge);
+        drain.start();
+        for(int off = 0; off < stream.length; off += 999){
+            edge.write(stream, off, Math.min(999, stream.length - off));
+        }
+        edge.close();
+        assert edge.isSpilled();
+        ByteArrayOutputStream delivered = new ByteArrayOutputStream();
+        while((n = destination.read(chunk)) != -1) delivered.write(chunk, 0, n);
+        assert Arrays.equals(delivered.toByteArray(), stream);
+        assert edge.getBufferedBytes() == 0;
+    }
+
+
+    @Test
+    public void testWorkflowEngine() throws IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InterruptedException, ExecutionException, TimeoutException, FieldMismatchException {
+        String json = FileUtils.readFileToString(new File("test_data/test.json"), Charset.defaultCharset());
+
+        JSONObject jsonObject = new JSONObject(json);
+        JSONArray blocksArray = jsonObject.getJSONArray("blocks");
+        List<String> blockTypes = new ArrayList<>();
+        for (int i = 0; i < blocksArray.length(); i++) {
+            JSONObject blockObject = blocksArray.getJSONObject(i);
+            blockTypes.add(blockObject.getString("type"));
+        }
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, blockTypes);
+
+        //arithmetic workflow needs 2 threads (two CONSTANT blocks run at once) + 1 for the job itself
+        WorkflowEngine engine = new WorkflowEngine(ClassLoader.getSystemClassLoader(), null, "test_data", 3, 1024 * JobRequirements.MB);
+
+        WorkflowJob job1 = engine.submit("tenant1", new JSONObject(json), moduleSource, "test_data", null);
+        WorkflowJob job2 = engine.submit("tenant1", new JSONObject(json), moduleSource, "test_data", null);
+        WorkflowJob job3 = engine.submit("tenant2", new JSONObject(json), moduleSource, "test_data", null);
+        assert job1.getRequirements().getThreads() == 3;
+        assert engine.getQueueDepth() == 2;      //only one job fits into 3 workers
+        assert engine.getRunningJobs() == 1;
+
+        WorkflowEngine smallEngine = new WorkflowEngine(ClassLoader.getSystemClassLoader(), null, "test_data", 2, 1024 * JobRequirements.MB);
+        WorkflowJob tooBig = smallEngine.submit("tenant1", new JSONObject(json), moduleSource, "test_data", null);
+        assert WorkflowJob.REJECTED.equals(tooBig.getStatus());
+        assert smallEngine.getRejectedJobs() == 1;
+
+        for(WorkflowJob job : Arrays.asList(job1, job2, job3)){
+            JSONArray jsonArray = job.get();
+            assert WorkflowJob.COMPLETED.equals(job.getStatus());
+            assert jsonArray.getJSONObject(0).getJSONObject("output").getInt("value") == 15;
+        }
+        assert job3.getStartTime() <= job2.getStartTime(); //tenant2 is served before the second job of tenant1
+        assert engine.getCompletedJobs() == 3;
+        assert engine.getMetrics().getInt("queueDepth") == 0;
+        assert engine.getRunningJobs() == 0;     //get() returns once the engine released the budget of the job
+        assert engine.getUsedWorkers() == 0;
+        assert engine.getMetrics().getInt("largestWorkers") <= engine.getWorkerBudget();
+        engine.shutdown(10, TimeUnit.SECONDS);
+
+        //the blocks of a continuous job all wait for each other, the workers of an engine sized to its estimate suffice
+        String pipedJson = FileUtils.readFileToString(new File("test_data/pipedStreamTest.json"), Charset.defaultCharset());
+        JSONArray pipedBlocks = new JSONObject(pipedJson).getJSONArray("blocks");
+        List<String> pipedTypes = new ArrayList<>();
+        for (int i = 0; i < pipedBlocks.length(); i++) {
+            pipedTypes.add(pipedBlocks.getJSONObject(i).getString("type"));
+        }
+        Map<Class, String> pipedSource = new HashMap<>();
+        Pack.assignModuleSource(pipedSource, pipedTypes);
+        int streamThreads = JobRequirements.estimate(new JSONObject(pipedJson), pipedSource, false, false, 64 * JobRequirements.MB, JobRequirements.forkedJvmMemory()).getThreads();
+        WorkflowEngine streamEngine = new WorkflowEngine(ClassLoader.getSystemClassLoader(), null, "test_data", streamThreads, 1024 * JobRequirements.MB);
+        WorkflowJob streamJob = streamEngine.submit("tenant1", new JSONObject(pipedJson), pipedSource, "test_data", null);
+        JSONArray streamArray = streamJob.get(60, TimeUnit.SECONDS);
+        assert streamArray.length() == 6;
+        assert WorkflowJob.COMPLETED.equals(streamJob.getStatus());
+        assert streamEngine.getMetrics().getInt("largestWorkers") <= streamJob.getRequirements().getThreads();
+        streamEngine.shutdown(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testWorkflowEngineDiamond() throws Exception {
+        //RepeatedPets feeds both inputs of PetFilter, the two elastic edges are drained by tasks of their own
+        JSONObject jsonObject = new JSONObject("{blocks: ["
+                + "{id: 1, type: RepeatedPets, module: 'test.jar:test', values: {petType: cat, Count: 3000}},"
+                + "{id: 2, type: PetFilter, module: 'test.jar:test', values: {targetPetType: cat}},"
+                + "{id: 3, type: TargetPet, module: 'test.jar:test', values: {}}],"
+                + "edges: ["
+                + "{block1: 1, connector1: [pets, output], block2: 2, connector2: [petsIn1, input]},"
+                + "{block1: 1, connector1: [pets, output], block2: 2, connector2: [petsIn2, input]},"
+                + "{block1: 2, connector1: [targetPets, output], block2: 3, connector2: [TargetPets, input]}]}");
+        Map<Class, String> moduleSource = new HashMap<>();
+        Pack.assignModuleSource(moduleSource, Arrays.asList("RepeatedPets", "PetFilter", "TargetPet"));
+
+        //3 blocks, 2 transits of the piped outputs, 2 elastic edges and 1 for the job
+        JobRequirements requirements = JobRequirements.estimate(jsonObject, moduleSource, false, false, 64 * JobRequirements.MB, JobRequirements.forkedJvmMemory());
+        assert requirements.getThreads() == 8;
+
+        WorkflowEngine engine = new WorkflowEngine(ClassLoader.getSystemClassLoader(), null, "test_data", requirements.getThreads(), 1024 * JobRequirements.MB);
+        WorkflowJob job = engine.submit("tenant1", new JSONObject(jsonObject.toString()), moduleSource, "test_data", null);
+        JSONArray jsonArray = job.get(60, TimeUnit.SECONDS);
+        assert WorkflowJob.COMPLETED.equals(job.getStatus());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            assert jsonArray.getJSONObject(i).getBoolean("completed");
+            assert !jsonArray.getJSONObject(i).getBoolean("error");
+        }
+        assert engine.getMetrics().getInt("largestWorkers") <= requirements.getThreads();
+        engine.shutdown(10, TimeUnit.SECONDS);
+    }
+
     //@Test
     public void testPack() throws IOException, NoSuchMethodException, InvocationTargetException, IllegalAccessException{
 
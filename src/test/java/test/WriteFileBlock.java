@@ -0,0 +1,34 @@
+package test;
+
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockExecute;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockOutput;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockProperty;
+import cz.zcu.kiv.WorkflowDesigner.Annotations.BlockType;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import static cz.zcu.kiv.WorkflowDesigner.Type.FILE;
+import static cz.zcu.kiv.WorkflowDesigner.Type.NUMBER;
+import static cz.zcu.kiv.WorkflowDesigner.Type.STRING;
+
+@BlockType(type ="WRITE_FILE", family = "FILE")
+public class WriteFileBlock {
+
+    @BlockProperty(name = "Text", type = STRING, defaultValue = "")
+    private String text;
+
+    @BlockProperty(name = "Delay", type = NUMBER, defaultValue = "0")
+    private int delay;      //milliseconds the block takes before writing
+
+    @BlockOutput(name = "File", type = FILE)
+    private File file;
+
+    @BlockExecute
+    public void process() throws Exception {
+        Thread.sleep(delay);
+        file = File.createTempFile("write_file_", ".txt");
+        FileUtils.writeStringToFile(file, text, Charset.defaultCharset());
+    }
+}